@@ -0,0 +1,182 @@
+/****************************
+	j P D F i  -  A Java application to apply an imposition to a PDF document.
+
+	JPDIAppendOrderCheck.java - Checks the page order of streamed impositions with appended documents
+
+	Created by : Maurizio M. Gavioli 2026-10-18
+
+	This program is free software; you can redistribute it and/or modify
+	it under the terms of the GNU General Public License as published by
+	the Free Software Foundation; either version 2 of the License, or
+	(at your option) any later version.
+	This program is distributed in the hope that it will be useful,
+	but WITHOUT ANY WARRANTY; without even the implied warranty of
+	MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+	GNU General Public License for more details.
+	You should have received a copy of the GNU General Public License along
+	with this program; if not, write to the Free Software Foundation, Inc.,
+	51 Franklin Street, Fifth Floor, Boston, MA 02110-1301 USA.
+
+*****************************/
+
+package com.vistamaresoft.jpdfi.bench;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.PrintStream;
+import java.util.ArrayList;
+import java.util.Arrays;
+
+import com.vistamaresoft.jpdfi.JPDIDocument;
+
+import de.intarsys.pdf.cds.CDSRectangle;
+import de.intarsys.pdf.parser.COSLoadException;
+import de.intarsys.pdf.pd.PDDocument;
+import de.intarsys.pdf.pd.PDPage;
+import de.intarsys.tools.locator.FileLocator;
+
+/******************
+	CLASS JPDIAppendOrderCheck
+*******************
+
+Checks that a streaming save places the pages in the same order as a jPOD save when documents are
+appended to an imposition with fold-outs: the pages of the imposition, then its single pages (the
+fold-outs), then the pages of the appended documents.
+
+A booklet with fold-outs and a document to append are generated with JPDICorpusGenerator, imposed
+with a jPOD save and with a streaming save (with a flat and with a balanced page tree) and, page by
+page, the media box and the contents of the outputs are compared.
+
+Usage: JPDIAppendOrderCheck [-o dir]
+which works in <dir> (by default, a new temporary folder) and exits with 1 if the orders differ. */
+
+public class JPDIAppendOrderCheck
+{
+// PRIVATE DEFINITIONS
+
+private static final int	NUM_OF_PAGES	= 48;
+private static final int	APPEND_PAGES	= 7;
+private static final int	FOLDOUT_EVERY	= 10;
+private static final int	FAN_OUT			= 3;
+
+// To reach the protected parts of JPDIDocument
+
+private static class JPDICheckDocument extends JPDIDocument
+{
+	boolean imposeAndSave()								{ return impose() && save();		}
+}
+
+/******************
+	Main
+*******************/
+
+public static void main(String[] args) throws IOException
+{
+	File	dir	= args.length >= 2 && args[0].equals("-o") ? new File(args[1])
+			: File.createTempFile("jpdfi-check-", "");
+	if (!dir.isDirectory() && !(dir.delete() && dir.mkdirs()))
+	{
+		System.err.println("Cannot create the folder " + dir + ".");
+		System.exit(1);
+	}
+	// the documents: a booklet with fold-outs and a plain document to append
+	JPDICorpusGenerator	gen		= new JPDICorpusGenerator();
+	gen.setNumOfPages(NUM_OF_PAGES);
+	gen.setOpsPerPage(50);
+	gen.setFontBytes(1024);
+	gen.generateDocument(new File(dir, "source.pdf"));
+	gen.setSeed(2);
+	gen.setNumOfPages(APPEND_PAGES);
+	gen.generateDocument(new File(dir, "append.pdf"));
+
+	ArrayList<String>	expected	= impose(dir, "jpod", false, 0);
+	boolean				same		= true;
+	same &= check("streaming", expected, impose(dir, "streaming", true, 0));
+	same &= check("streaming, page tree fan-out " + FAN_OUT, expected,
+			impose(dir, "streaming-tree", true, FAN_OUT));
+	System.out.println(same ? "Same page order." : "Page order differs.");
+	System.exit(same ? 0 : 1);
+}
+
+/* Imposes the documents in dir into <name>.pdf, returning a description of each output page. */
+
+private static ArrayList<String> impose(File dir, String name, boolean streaming, int fanOut)
+		throws IOException
+{
+	File		paramFile	= new File(dir, name + ".xml");
+	PrintStream	out			= new PrintStream(paramFile, "UTF-8");
+	try {
+		out.println("<?xml version=\"1.0\" encoding=\"UTF-8\"?>");
+		out.println("<jpdfimposition value=\"\">");
+		out.println("\t<input value=\"source.pdf\" />");
+		out.println("\t<append value=\"append.pdf\" />");
+		out.println("\t<format value=\"booklet\" />");
+		out.println("\t<sheetsPerSign value=\"2\" />");
+		for (int pageNo = FOLDOUT_EVERY; pageNo < NUM_OF_PAGES; pageNo += FOLDOUT_EVERY)
+			out.println("\t<foldout value=\"" + pageNo + "\" />");
+		out.println("\t<streamingSave value=\"" + streaming + "\" />");
+		out.println("\t<pageTreeFanOut value=\"" + fanOut + "\" />");
+		out.println("\t<output value=\"" + name + ".pdf\" />");
+		out.println("</jpdfimposition>");
+	}
+	finally {
+		out.close();
+	}
+	JPDICheckDocument	doc	= new JPDICheckDocument();
+	try {
+		if (!doc.readParamFile(paramFile.getPath()) || !doc.imposeAndSave())
+			throw new IOException("imposition into " + name + ".pdf failed");
+	}
+	finally {
+		doc.closeSources();
+	}
+	return describePages(new File(dir, name + ".pdf"));
+}
+
+/* Returns a description of each page of a document: its media box and a hash of its contents. */
+
+private static ArrayList<String> describePages(File file) throws IOException
+{
+	ArrayList<String>	pages	= new ArrayList<String>();
+	PDDocument			doc;
+	try {
+		doc	= PDDocument.createFromLocator(new FileLocator(file));
+	}
+	catch (COSLoadException e) {
+		throw new IOException("cannot parse " + file + ": " + e.getMessage(), e);
+	}
+	try {
+		for (PDPage page = doc.getPageTree().getFirstPage(); page != null; page = page.getNextPage())
+		{
+			CDSRectangle	box	= page.getMediaBox();
+			pages.add(box.getWidth() + "x" + box.getHeight() + " "
+					+ Integer.toHexString(Arrays.hashCode(page.getContentStream().toByteArray())));
+		}
+	}
+	finally {
+		doc.close();
+	}
+	return pages;
+}
+
+/* Compares the pages of an output with the expected ones, reporting the first difference. */
+
+private static boolean check(String what, ArrayList<String> expected, ArrayList<String> pages)
+{
+	for (int i = 0; i < Math.min(expected.size(), pages.size()); i++)
+		if (!expected.get(i).equals(pages.get(i)))
+		{
+			System.out.println(what + ": page " + (i + 1) + " is " + pages.get(i) + ", expected "
+					+ expected.get(i) + ".");
+			return false;
+		}
+	if (expected.size() != pages.size())
+	{
+		System.out.println(what + ": " + pages.size() + " pages, expected " + expected.size() + ".");
+		return false;
+	}
+	System.out.println(what + ": " + pages.size() + " pages, as expected.");
+	return true;
+}
+
+}
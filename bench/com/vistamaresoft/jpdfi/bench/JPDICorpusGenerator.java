@@ -0,0 +1,415 @@
+/****************************
+	j P D F i  -  A Java application to apply an imposition to a PDF document.
+
+	JPDICorpusGenerator.java - Generates synthetic PDF documents for performance tests
+
+	Created by : Maurizio M. Gavioli 2026-10-18
+
+	This program is free software; you can redistribute it and/or modify
+	it under the terms of the GNU General Public License as published by
+	the Free Software Foundation; either version 2 of the License, or
+	(at your option) any later version.
+	This program is distributed in the hope that it will be useful,
+	but WITHOUT ANY WARRANTY; without even the implied warranty of
+	MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+	GNU General Public License for more details.
+	You should have received a copy of the GNU General Public License along
+	with this program; if not, write to the Free Software Foundation, Inc.,
+	51 Franklin Street, Fifth Floor, Boston, MA 02110-1301 USA.
+
+*****************************/
+
+package com.vistamaresoft.jpdfi.bench;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.PrintStream;
+import java.util.Random;
+import java.util.TreeSet;
+
+import de.intarsys.pdf.cds.CDSRectangle;
+import de.intarsys.pdf.cos.COSDictionary;
+import de.intarsys.pdf.cos.COSFixed;
+import de.intarsys.pdf.cos.COSInteger;
+import de.intarsys.pdf.cos.COSName;
+import de.intarsys.pdf.cos.COSStream;
+import de.intarsys.pdf.pd.PDDocument;
+import de.intarsys.pdf.pd.PDPage;
+import de.intarsys.pdf.pd.PDResources;
+import de.intarsys.tools.locator.FileLocator;
+
+/******************
+	CLASS JPDICorpusGenerator
+*******************
+
+Generates synthetic source documents looking like production ones, together with a jPDFImposition
+parameter file to impose them; the same parameters and seed always generate the same content.
+
+Each document has:
+- a few fonts shared by all the pages, each made large by a filler stream of the given size (under
+  a private key, ignored by PDF readers: the standard 14 fonts are used for rendering);
+- for each page, its own image XObjects of the given size (RGB noise), a number of graphic states,
+  half shared and half of its own, and a property list nested to the given depth;
+- a content stream with the given number of operators, mixing text, paths and images;
+- A4 pages, some of which (with the given probability) of Letter or A5 size instead.
+
+Usage: JPDICorpusGenerator [-o dir] [-n name] [-seed n] [-pages n] [-fonts n] [-fontkb n]
+		[-res n] [-depth n] [-images n] [-imagepx n] [-ops n] [-mixed p] [-format f] [-sheets n]
+		[-foldouts n,n,... | -foldoutevery n]
+which writes <dir>/<name>.pdf and <dir>/<name>.xml. */
+
+public class JPDICorpusGenerator
+{
+// PRIVATE DEFINITIONS
+
+private static final String[]	FONT_NAMES	= { "Times-Roman", "Helvetica", "Courier", "Times-Bold",
+		"Helvetica-Bold", "Courier-Bold", "Times-Italic", "Helvetica-Oblique" };
+private static final float[][]	PAGE_SIZES	= { { 595, 842 }, { 612, 792 }, { 420, 595 } };	// A4, Letter, A5
+private static final COSName	CN_Filler	= COSName.constant("JPDIFiller");
+
+// FIELDS
+
+private long				seed			= 1;
+private int					numOfPages		= 1000;
+private int					numOfFonts		= 4;
+private int					fontBytes		= 256 << 10;
+private int					resPerPage		= 20;
+private int					resDepth		= 4;
+private int					imagesPerPage	= 1;
+private int					imagePixels		= 128;		// the side of each (square) image
+private int					opsPerPage		= 500;
+private double				mixedSizes		= 0.1;		// the probability of a non-A4 page
+private String				format			= "booklet";
+private int					sheetsPerSign	= 4;
+private TreeSet<Integer>	foldOuts		= new TreeSet<Integer>();	// as 1-based page numbers
+private int					foldOutEvery	= 0;		// 0 = only the fold-outs in foldOuts
+
+/******************
+	Getters / Setters
+*******************/
+
+public int	numOfPages()								{ return numOfPages;					}
+
+public void setSeed(long seed)							{ this.seed = seed;						}
+public void setNumOfPages(int numOfPages)				{ this.numOfPages = numOfPages;			}
+public void setNumOfFonts(int numOfFonts)				{ this.numOfFonts = numOfFonts;			}
+public void setFontBytes(int fontBytes)					{ this.fontBytes = fontBytes;			}
+public void setResPerPage(int resPerPage)				{ this.resPerPage = resPerPage;			}
+public void setResDepth(int resDepth)					{ this.resDepth = resDepth;				}
+public void setImagesPerPage(int imagesPerPage)			{ this.imagesPerPage = imagesPerPage;	}
+public void setImagePixels(int imagePixels)				{ this.imagePixels = imagePixels;		}
+public void setOpsPerPage(int opsPerPage)				{ this.opsPerPage = opsPerPage;			}
+public void setMixedSizes(double mixedSizes)			{ this.mixedSizes = mixedSizes;			}
+public void setFormat(String format)					{ this.format = format;					}
+public void setSheetsPerSign(int sheetsPerSign)			{ this.sheetsPerSign = sheetsPerSign;	}
+public void addFoldOut(int pageNo)						{ foldOuts.add(pageNo);					}
+
+/* Adds a fold-out every so many pages (rounded down to even, as fold-outs are given as even,
+left-hand, page numbers); 0 = none. */
+
+public void setFoldOutEvery(int foldOutEvery)			{ this.foldOutEvery = foldOutEvery & 0xFFFE;	}
+
+/******************
+	Generate
+*******************
+
+Generates a document and its parameter file; the parameter file imposes the document into
+<name>-out.pdf, in the same folder.
+
+Parameters:	dir:	the folder to generate into
+			name:	the base name of the generated files
+Returns:	the generated document file */
+
+public File generate(File dir, String name) throws IOException
+{
+	File	pdfFile		= new File(dir, name + ".pdf");
+	generateDocument(pdfFile);
+	writeParamFile(new File(dir, name + ".xml"), pdfFile.getName(), name + "-out.pdf");
+	return pdfFile;
+}
+
+/******************
+	Generate the document
+*******************
+
+Parameters:	file:	the file to generate
+Returns:	none */
+
+public void generateDocument(File file) throws IOException
+{
+	Random			random	= new Random(seed);
+	PDDocument		doc		= PDDocument.createNew();
+	// shared resources
+	COSDictionary[]	fonts	= new COSDictionary[numOfFonts];
+	for (int i = 0; i < numOfFonts; i++)
+		fonts[i]	= createFont(FONT_NAMES[i % FONT_NAMES.length], random);
+	COSDictionary[]	gStates	= new COSDictionary[resPerPage];
+	for (int i = 0; i < resPerPage; i += 2)
+		gStates[i]	= createGState(random);
+
+	for (int pageNo = 0; pageNo < numOfPages; pageNo++)
+	{
+		// page size
+		float[]		size	= PAGE_SIZES[0];
+		if (random.nextDouble() < mixedSizes)
+			size	= PAGE_SIZES[1 + random.nextInt(PAGE_SIZES.length - 1)];
+		PDPage		page	= (PDPage) PDPage.META.createNew();
+		page.setMediaBox(new CDSRectangle(0, 0, size[0], size[1]));
+
+		// resources
+		COSDictionary	resDict		= COSDictionary.create();
+		COSDictionary	fontDict	= COSDictionary.create();
+		for (int i = 0; i < numOfFonts; i++)
+			fontDict.put(COSName.create("F" + i), fonts[i]);
+		resDict.put(COSName.constant("Font"), fontDict);
+		COSDictionary	xObjDict	= COSDictionary.create();
+		for (int i = 0; i < imagesPerPage; i++)
+			xObjDict.put(COSName.create("Im" + i), createImage(random));
+		resDict.put(COSName.constant("XObject"), xObjDict);
+		COSDictionary	gsDict		= COSDictionary.create();
+		for (int i = 0; i < resPerPage; i++)
+			gsDict.put(COSName.create("GS" + i), (i & 1) == 0 ? gStates[i] : createGState(random));
+		resDict.put(COSName.constant("ExtGState"), gsDict);
+		COSDictionary	propDict	= COSDictionary.create();
+		propDict.put(COSName.create("MC0"), createPropertyList(resDepth, pageNo));
+		resDict.put(COSName.constant("Properties"), propDict);
+		page.setResources((PDResources) PDResources.META.createFromCos(resDict));
+
+		// contents
+		COSStream	content	= COSStream.create(null);
+		content.setDecodedBytes(createContent(pageNo, size, random));
+		content.addFilter(COSName.constant("FlateDecode"));
+		page.cosAddContents(content);
+		doc.addPageNode(page);
+	}
+	doc.save(new FileLocator(file.getPath()), null);
+	doc.close();
+}
+
+/******************
+	Write the parameter file
+*******************
+
+Parameters:	file:		the file to write
+			input:		the input document, relative to the parameter file
+			output:		the output document, relative to the parameter file
+Returns:	none */
+
+public void writeParamFile(File file, String input, String output) throws IOException
+{
+	PrintStream	out	= new PrintStream(file, "UTF-8");
+	try {
+		out.println("<?xml version=\"1.0\" encoding=\"UTF-8\"?>");
+		out.println("<jpdfimposition value=\"\">");
+		out.println("\t<input value=\"" + input + "\" />");
+		out.println("\t<format value=\"" + format + "\" />");
+		out.println("\t<sheetsPerSign value=\"" + sheetsPerSign + "\" />");
+		if (format.equals("booklet"))
+		{
+			TreeSet<Integer>	pages	= new TreeSet<Integer>(foldOuts);
+			for (int pageNo = foldOutEvery; foldOutEvery > 0 && pageNo < numOfPages; pageNo += foldOutEvery)
+				pages.add(pageNo);
+			for (Integer pageNo : pages)
+				out.println("\t<foldout value=\"" + pageNo + "\" />");
+		}
+		out.println("\t<output value=\"" + output + "\" />");
+		out.println("</jpdfimposition>");
+	}
+	finally {
+		out.close();
+	}
+}
+
+/******************
+	Resources
+*******************/
+
+private COSDictionary createFont(String baseFont, Random random)
+{
+	COSDictionary	font	= COSDictionary.create();
+	font.put(COSName.constant("Type"), COSName.constant("Font"));
+	font.put(COSName.constant("Subtype"), COSName.constant("Type1"));
+	font.put(COSName.constant("BaseFont"), COSName.create(baseFont));
+	font.put(COSName.constant("Encoding"), COSName.constant("WinAnsiEncoding"));
+	COSStream		filler	= COSStream.create(null);
+	filler.setDecodedBytes(randomBytes(fontBytes, random));
+	font.put(CN_Filler, filler);
+	font.beIndirect();
+	return font;
+}
+
+private COSDictionary createGState(Random random)
+{
+	COSDictionary	gState	= COSDictionary.create();
+	gState.put(COSName.constant("Type"), COSName.constant("ExtGState"));
+	gState.put(COSName.constant("LW"), COSFixed.create(0.25f + random.nextInt(8) * 0.25f));
+	gState.put(COSName.constant("CA"), COSFixed.create(0.5f + random.nextInt(6) * 0.1f));
+	gState.beIndirect();
+	return gState;
+}
+
+private COSStream createImage(Random random)
+{
+	COSStream		image	= COSStream.create(null);
+	COSDictionary	dict	= image.getDict();
+	dict.put(COSName.constant("Type"), COSName.constant("XObject"));
+	dict.put(COSName.constant("Subtype"), COSName.constant("Image"));
+	dict.put(COSName.constant("Width"), COSInteger.create(imagePixels));
+	dict.put(COSName.constant("Height"), COSInteger.create(imagePixels));
+	dict.put(COSName.constant("ColorSpace"), COSName.constant("DeviceRGB"));
+	dict.put(COSName.constant("BitsPerComponent"), COSInteger.create(8));
+	image.setDecodedBytes(randomBytes(imagePixels * imagePixels * 3, random));
+	image.beIndirect();
+	return image;
+}
+
+/* Property lists may contain any data: used here to build deep resource dictionaries. */
+
+private COSDictionary createPropertyList(int depth, int pageNo)
+{
+	COSDictionary	prop	= COSDictionary.create();
+	prop.put(COSName.constant("Page"), COSInteger.create(pageNo + 1));
+	if (depth > 1)
+		prop.put(COSName.constant("Child"), createPropertyList(depth - 1, pageNo));
+	return prop;
+}
+
+private static byte[] randomBytes(int numOfBytes, Random random)
+{
+	byte[]	bytes	= new byte[numOfBytes];
+	random.nextBytes(bytes);
+	return bytes;
+}
+
+/******************
+	Content
+*******************
+
+Creates a page content stream with (about) opsPerPage operators: each image is drawn once, the
+page number once and the other operators are spent in text lines and line paths, in turn. */
+
+private byte[] createContent(int pageNo, float[] size, Random random)
+{
+	StringBuilder	str		= new StringBuilder(opsPerPage * 24);
+	int				numOfOps	= 0;
+	str.append("/MC0 /MC0 BDC\n");
+	numOfOps++;
+	for (int i = 0; i < imagesPerPage; i++)
+	{
+		int	side	= 50 + random.nextInt(150);
+		str.append("q ").append(side).append(" 0 0 ").append(side).append(' ')
+			.append(random.nextInt((int)size[0] - side)).append(' ')
+			.append(random.nextInt((int)size[1] - side)).append(" cm /Im").append(i).append(" Do Q\n");
+		numOfOps	+= 4;
+	}
+	str.append("BT /F0 24 Tf 40 40 Td (").append(pageNo + 1).append(") Tj ET\n");
+	numOfOps	+= 5;
+	while (numOfOps < opsPerPage)
+	{
+		if (random.nextBoolean())
+		{
+			str.append("BT /F").append(random.nextInt(Math.max(numOfFonts, 1))).append(' ')
+				.append(8 + random.nextInt(8)).append(" Tf ")
+				.append(random.nextInt((int)size[0])).append(' ')
+				.append(random.nextInt((int)size[1])).append(" Td (Lorem ipsum dolor sit amet) Tj ET\n");
+			numOfOps	+= 5;
+		}
+		else
+		{
+			str.append("/GS").append(random.nextInt(Math.max(resPerPage, 1))).append(" gs ")
+				.append(random.nextInt((int)size[0])).append(' ')
+				.append(random.nextInt((int)size[1])).append(" m ")
+				.append(random.nextInt((int)size[0])).append(' ')
+				.append(random.nextInt((int)size[1])).append(" l S\n");
+			numOfOps	+= 4;
+		}
+	}
+	str.append("EMC\n");
+	return str.toString().getBytes();
+}
+
+/******************
+	Main
+*******************/
+
+public static void main(String[] args)
+{
+	JPDICorpusGenerator	gen		= new JPDICorpusGenerator();
+	File				dir		= new File(".");
+	String				name	= "corpus";
+	try {
+		for (int i = 0; i < args.length - 1; i += 2)
+		{
+			String	val	= args[i+1];
+			switch (args[i])
+			{
+			case "-o":
+				dir = new File(val);
+				break;
+			case "-n":
+				name = val;
+				break;
+			case "-seed":
+				gen.setSeed(Long.parseLong(val));
+				break;
+			case "-pages":
+				gen.setNumOfPages(Integer.parseInt(val));
+				break;
+			case "-fonts":
+				gen.setNumOfFonts(Integer.parseInt(val));
+				break;
+			case "-fontkb":
+				gen.setFontBytes(Integer.parseInt(val) << 10);
+				break;
+			case "-res":
+				gen.setResPerPage(Integer.parseInt(val));
+				break;
+			case "-depth":
+				gen.setResDepth(Integer.parseInt(val));
+				break;
+			case "-images":
+				gen.setImagesPerPage(Integer.parseInt(val));
+				break;
+			case "-imagepx":
+				gen.setImagePixels(Integer.parseInt(val));
+				break;
+			case "-ops":
+				gen.setOpsPerPage(Integer.parseInt(val));
+				break;
+			case "-mixed":
+				gen.setMixedSizes(Double.parseDouble(val));
+				break;
+			case "-format":
+				gen.setFormat(val);
+				break;
+			case "-sheets":
+				gen.setSheetsPerSign(Integer.parseInt(val));
+				break;
+			case "-foldoutevery":
+				gen.setFoldOutEvery(Integer.parseInt(val));
+				break;
+			case "-foldouts":
+				for (String pageNo : val.split(","))
+					gen.addFoldOut(Integer.parseInt(pageNo.trim()));
+				break;
+			default:
+				System.err.println("Unknown option '" + args[i] + "'.");
+				System.exit(1);
+			}
+		}
+	}
+	catch (NumberFormatException e) {
+		System.err.println("Wrong numeric value: " + e.getMessage());
+		System.exit(1);
+	}
+	try {
+		File	file	= gen.generate(dir, name);
+		System.out.println(file.getPath() + ": " + gen.numOfPages() + " pages");
+	}
+	catch (IOException e) {
+		System.err.println("Error generating " + name + ": " + e.getMessage());
+		System.exit(1);
+	}
+}
+
+}
@@ -0,0 +1,81 @@
+/****************************
+	j P D F i  -  A Java application to apply an imposition to a PDF document.
+
+	JPDIFoldOutBench.java - Measures booklet planning with many fold-outs
+
+	Created by : Maurizio M. Gavioli 2026-10-18
+
+	This program is free software; you can redistribute it and/or modify
+	it under the terms of the GNU General Public License as published by
+	the Free Software Foundation; either version 2 of the License, or
+	(at your option) any later version.
+	This program is distributed in the hope that it will be useful,
+	but WITHOUT ANY WARRANTY; without even the implied warranty of
+	MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+	GNU General Public License for more details.
+	You should have received a copy of the GNU General Public License along
+	with this program; if not, write to the Free Software Foundation, Inc.,
+	51 Franklin Street, Fifth Floor, Boston, MA 02110-1301 USA.
+
+*****************************/
+
+package com.vistamaresoft.jpdfi.bench;
+
+import java.util.TreeSet;
+
+import com.vistamaresoft.jpdfi.JPDImposition;
+
+/******************
+	CLASS JPDIFoldOutBench
+*******************
+
+Plans booklets of increasing size, with large signatures and a fold-out every few pages, and prints
+the time per page: with linear planning, it should stay roughly constant as the page count grows. */
+
+public class JPDIFoldOutBench
+{
+private static final int[]	NUM_OF_PAGES	= { 1000, 10000, 100000 };
+private static final int[]	SHEETS_PER_SIGN	= { 5, 50, 500 };
+private static final int	FOLDOUT_EVERY	= 6;		// one fold-out every so many pages
+private static final int	WARMUP_ROUNDS	= 5;
+
+public static void main(String[] args)
+{
+	System.out.println("pages\tsheets/sign\tfold-outs\tms\tns/page");
+	for (int sheets : SHEETS_PER_SIGN)
+		for (int numOfPages : NUM_OF_PAGES)
+		{
+			TreeSet<Integer>	foldOuts	= new TreeSet<Integer>();
+			for (int pageNo = 1; pageNo < numOfPages; pageNo += FOLDOUT_EVERY)
+				foldOuts.add(pageNo);
+			for (int i = 0; i < WARMUP_ROUNDS; i++)
+				plan(numOfPages, sheets, foldOuts);
+			long	time	= plan(numOfPages, sheets, foldOuts);
+			System.out.printf("%d\t%d\t%d\t%.2f\t%.1f\n", numOfPages, sheets, foldOuts.size(),
+					time / 1e6, (double)time / numOfPages);
+		}
+}
+
+/******************
+	Plan a booklet
+******************
+
+Parameters:	numOfPages:	the number of pages
+			sheets:		the max. number of sheets per signature
+			foldOuts:	the fold-out pages
+Returns:	the elapsed time in nanoseconds */
+
+private static long plan(int numOfPages, int sheets, TreeSet<Integer> foldOuts)
+{
+	JPDImposition	impo	= new JPDImposition();
+	long			start	= System.nanoTime();
+	try {
+		impo.setFormat(JPDImposition.Format.booklet, 0, sheets, numOfPages,
+				new TreeSet<Integer>(), foldOuts);
+	} catch (CloneNotSupportedException e) {
+		throw new RuntimeException(e);
+	}
+	return System.nanoTime() - start;
+}
+
+}
@@ -0,0 +1,162 @@
+/****************************
+	j P D F i  -  A Java application to apply an imposition to a PDF document.
+
+	JPDILocatorBench.java - Compares plain and memory-mapped source file access
+
+	Created by : Maurizio M. Gavioli 2026-10-18
+
+	This program is free software; you can redistribute it and/or modify
+	it under the terms of the GNU General Public License as published by
+	the Free Software Foundation; either version 2 of the License, or
+	(at your option) any later version.
+	This program is distributed in the hope that it will be useful,
+	but WITHOUT ANY WARRANTY; without even the implied warranty of
+	MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+	GNU General Public License for more details.
+	You should have received a copy of the GNU General Public License along
+	with this program; if not, write to the Free Software Foundation, Inc.,
+	51 Franklin Street, Fifth Floor, Boston, MA 02110-1301 USA.
+
+*****************************/
+
+package com.vistamaresoft.jpdfi.bench;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.Iterator;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import com.vistamaresoft.jpdfi.JPDIMappedLocator;
+
+import de.intarsys.pdf.cos.COSArray;
+import de.intarsys.pdf.cos.COSDictionary;
+import de.intarsys.pdf.cos.COSObject;
+import de.intarsys.pdf.cos.COSStream;
+import de.intarsys.pdf.pd.PDDocument;
+import de.intarsys.pdf.pd.PDPage;
+import de.intarsys.pdf.pd.PDResources;
+import de.intarsys.tools.locator.FileLocator;
+
+/******************
+	CLASS JPDILocatorBench
+*******************
+
+Reads the same source documents through a plain FileLocator and through a JPDIMappedLocator: each
+operation opens a document, reads the contents and the resources of all its pages, as the
+imposition does, and closes it; scores are in documents/s. Without a file parameter, a document is
+generated with JPDICorpusGenerator.
+
+Run through the Maven module in the bench/ folder (see JPDISuiteBench), e.g.:
+	java -cp ... org.openjdk.jmh.Main -prof gc JPDILocatorBench -p file=a.pdf,b.pdf */
+
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+@State(Scope.Thread)
+public class JPDILocatorBench
+{
+private static final int	GEN_PAGES		= 2000;
+private static final int	GEN_IMAGES		= 2;		// images per page of the generated document
+
+@Param({ "" })
+public String	file;			// the document to read; "" = a generated one
+@Param({ "false", "true" })
+public boolean	mapped;			// whether to read through a JPDIMappedLocator
+
+private File	generated;
+
+@Setup
+public void setup() throws IOException
+{
+	if (!file.isEmpty())
+		return;
+	generated	= File.createTempFile("jpdfi-bench-src-", ".pdf");
+	JPDICorpusGenerator	gen	= new JPDICorpusGenerator();
+	gen.setNumOfPages(GEN_PAGES);
+	gen.setImagesPerPage(GEN_IMAGES);
+	gen.generateDocument(generated);
+	file	= generated.getPath();
+}
+
+@TearDown
+public void tearDown()
+{
+	if (generated != null)
+		generated.delete();
+}
+
+@Benchmark
+public int read() throws Exception
+{
+	return readDocument(mapped ? new JPDIMappedLocator(file) : new FileLocator(file));
+}
+
+/******************
+	Read a document
+*******************
+
+Opens a document, reads the (encoded) bytes of the contents of each page and of any stream among
+its resources, and closes it.
+
+Parameters:	locator:	the locator of the document file
+Returns:	the number of pages read */
+
+private static int readDocument(FileLocator locator) throws Exception
+{
+	PDDocument	doc			= PDDocument.createFromLocator(locator);
+	int			numOfPages	= 0;
+	try {
+		for (PDPage page = doc.getPageTree().getFirstPage(); page != null; page = page.getNextPage())
+		{
+			readStreams(page.cosGetField(PDPage.DK_Contents));
+			PDResources	res	= page.getResources();
+			if (res != null)
+			{
+				@SuppressWarnings("unchecked")
+				Iterator<COSDictionary.Entry>	iter	= res.cosGetDict().entryIterator();
+				while (iter.hasNext())
+				{
+					Object	table	= iter.next().getValue();
+					if (!(table instanceof COSDictionary))
+						continue;
+					@SuppressWarnings("unchecked")
+					Iterator<COSDictionary.Entry>	tableIter	= ((COSDictionary)table).entryIterator();
+					while (tableIter.hasNext())
+						readStreams((COSObject)tableIter.next().getValue());
+				}
+			}
+			numOfPages++;
+		}
+	}
+	finally {
+		doc.close();
+	}
+	return numOfPages;
+}
+
+private static void readStreams(COSObject obj)
+{
+	if (obj instanceof COSStream)
+		((COSStream)obj).getEncodedBytes();
+	else if (obj instanceof COSArray)
+		for (COSObject item : (COSArray)obj)
+			if (item instanceof COSStream)
+				((COSStream)item).getEncodedBytes();
+}
+
+}
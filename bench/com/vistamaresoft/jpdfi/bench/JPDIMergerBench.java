@@ -0,0 +1,113 @@
+/****************************
+	j P D F i  -  A Java application to apply an imposition to a PDF document.
+
+	JPDIMergerBench.java - Measures resource merging on resource-heavy sheets
+
+	Created by : Maurizio M. Gavioli 2026-10-18
+
+	This program is free software; you can redistribute it and/or modify
+	it under the terms of the GNU General Public License as published by
+	the Free Software Foundation; either version 2 of the License, or
+	(at your option) any later version.
+	This program is distributed in the hope that it will be useful,
+	but WITHOUT ANY WARRANTY; without even the implied warranty of
+	MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+	GNU General Public License for more details.
+	You should have received a copy of the GNU General Public License along
+	with this program; if not, write to the Free Software Foundation, Inc.,
+	51 Franklin Street, Fifth Floor, Boston, MA 02110-1301 USA.
+
+*****************************/
+
+package com.vistamaresoft.jpdfi.bench;
+
+import com.vistamaresoft.jpdfi.JPDIResourceMerger;
+
+import de.intarsys.pdf.cos.COSDictionary;
+import de.intarsys.pdf.cos.COSName;
+import de.intarsys.pdf.pd.PDResources;
+
+/******************
+	CLASS JPDIMergerBench
+*******************
+
+Merges synthetic source pages into a 16-up sheet, with an increasing number of resources per page,
+and prints the time per merged resource: with linear merging, it should stay roughly constant.
+
+Each source page has the same resource names as every other page (as pages exported by DTP
+applications do), half of them referring to objects shared by all the pages (fonts and the like)
+and half to objects of their own (images and the like), so that both the "same object" and
+the "name collision" paths of the merger are exercised. */
+
+public class JPDIMergerBench
+{
+private static final int	PAGES_PER_SHEET	= 16;
+private static final int	SHEETS			= 50;
+private static final int	WARMUP_ROUNDS	= 3;
+private static final int[]	RES_PER_PAGE	= { 25, 50, 100, 200, 400 };
+private static final String[]	TABLES		= { "Font", "XObject", "ExtGState" };
+
+public static void main(String[] args)
+{
+	System.out.println("res/page\tms/sheet\tns/resource");
+	for (int numOfRes : RES_PER_PAGE)
+	{
+		PDResources[]	pages	= createPages(numOfRes);
+		for (int i = 0; i < WARMUP_ROUNDS; i++)
+			mergeSheets(pages);
+		long	time	= mergeSheets(pages);
+		double	resources	= (double)SHEETS * PAGES_PER_SHEET * numOfRes;
+		System.out.printf("%d\t%.3f\t%.1f\n", numOfRes, time / 1e6 / SHEETS, time / resources);
+	}
+}
+
+/******************
+	Merge all the pages into sheets
+******************
+
+Parameters:	pages:	the resources of the source pages of a sheet
+Returns:	the elapsed time in nanoseconds */
+
+private static long mergeSheets(PDResources[] pages)
+{
+	JPDIResourceMerger	merger	= new JPDIResourceMerger(1);
+	long				start	= System.nanoTime();
+	for (int sheet = 0; sheet < SHEETS; sheet++)
+	{
+		merger.setNumOfDestPages(1);
+		for (PDResources page : pages)
+			merger.merge(0, page);
+	}
+	return System.nanoTime() - start;
+}
+
+/******************
+	Create synthetic page resources
+******************
+
+Parameters:	numOfRes:	the number of resources of each page
+Returns:	the resources of PAGES_PER_SHEET pages */
+
+static PDResources[] createPages(int numOfRes)
+{
+	int				resPerTable	= numOfRes / TABLES.length;
+	COSDictionary[]	shared		= new COSDictionary[resPerTable];
+	for (int i = 0; i < resPerTable; i++)
+		shared[i] = COSDictionary.create();
+	PDResources[]	pages		= new PDResources[PAGES_PER_SHEET];
+	for (int pageNo = 0; pageNo < PAGES_PER_SHEET; pageNo++)
+	{
+		COSDictionary	resDict	= COSDictionary.create();
+		for (String table : TABLES)
+		{
+			COSDictionary	tableDict	= COSDictionary.create();
+			for (int i = 0; i < resPerTable; i++)
+				tableDict.put(COSName.create(table.charAt(0) + Integer.toString(i)),
+						(i & 1) == 0 ? shared[i] : COSDictionary.create());
+			resDict.put(COSName.create(table), tableDict);
+		}
+		pages[pageNo] = (PDResources) PDResources.META.createFromCos(resDict);
+	}
+	return pages;
+}
+}
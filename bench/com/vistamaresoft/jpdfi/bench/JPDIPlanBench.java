@@ -0,0 +1,84 @@
+/****************************
+	j P D F i  -  A Java application to apply an imposition to a PDF document.
+
+	JPDIPlanBench.java - Measures the planning of large impositions
+
+	Created by : Maurizio M. Gavioli 2026-10-18
+
+	This program is free software; you can redistribute it and/or modify
+	it under the terms of the GNU General Public License as published by
+	the Free Software Foundation; either version 2 of the License, or
+	(at your option) any later version.
+	This program is distributed in the hope that it will be useful,
+	but WITHOUT ANY WARRANTY; without even the implied warranty of
+	MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+	GNU General Public License for more details.
+	You should have received a copy of the GNU General Public License along
+	with this program; if not, write to the Free Software Foundation, Inc.,
+	51 Franklin Street, Fifth Floor, Boston, MA 02110-1301 USA.
+
+*****************************/
+
+package com.vistamaresoft.jpdfi.bench;
+
+import java.util.IdentityHashMap;
+import java.util.TreeSet;
+
+import com.vistamaresoft.jpdfi.JPDImposition;
+
+/******************
+	CLASS JPDIPlanBench
+*******************
+
+Plans a 100,000-page job in each format and prints the time taken, the memory retained by the
+plan and the number of distinct signature plans it is made of. */
+
+public class JPDIPlanBench
+{
+private static final int	NUM_OF_PAGES	= 100000;
+private static final int	WARMUP_ROUNDS	= 3;
+
+public static void main(String[] args)
+{
+	System.out.println("format\tms\tKiB\tsignatures\tplans");
+	for (JPDImposition.Format format : JPDImposition.Format.values())
+	{
+		if (format == JPDImposition.Format.none)
+			continue;
+		for (int i = 0; i < WARMUP_ROUNDS; i++)
+			plan(format);
+		long	before	= usedMemory();
+		long	start	= System.nanoTime();
+		JPDImposition	impo	= plan(format);
+		long	time	= System.nanoTime() - start;
+		long	memory	= usedMemory() - before;
+		IdentityHashMap<JPDImposition.JPDISignPlan, Boolean>	plans =
+				new IdentityHashMap<JPDImposition.JPDISignPlan, Boolean>();
+		for (int signNo = 0; signNo < impo.numOfSignatures(); signNo++)
+			plans.put(impo.signaturePlan(signNo), Boolean.TRUE);
+		System.out.printf("%s\t%.2f\t%d\t%d\t%d\n", JPDImposition.formatValToString(format),
+				time / 1e6, memory >> 10, impo.numOfSignatures(), plans.size());
+	}
+}
+
+private static JPDImposition plan(JPDImposition.Format format)
+{
+	JPDImposition	impo	= new JPDImposition();
+	int				sheets	= format == JPDImposition.Format.booklet ? 5 : 1;
+	try {
+		impo.setFormat(format, 0, sheets, NUM_OF_PAGES, new TreeSet<Integer>(), new TreeSet<Integer>());
+	} catch (CloneNotSupportedException e) {
+		throw new RuntimeException(e);
+	}
+	return impo;
+}
+
+private static long usedMemory()
+{
+	Runtime	runtime	= Runtime.getRuntime();
+	for (int i = 0; i < 3; i++)
+		System.gc();
+	return runtime.totalMemory() - runtime.freeMemory();
+}
+
+}
@@ -0,0 +1,262 @@
+/****************************
+	j P D F i  -  A Java application to apply an imposition to a PDF document.
+
+	JPDISuiteBench.java - The JMH benchmark suite
+
+	Created by : Maurizio M. Gavioli 2026-10-18
+
+	This program is free software; you can redistribute it and/or modify
+	it under the terms of the GNU General Public License as published by
+	the Free Software Foundation; either version 2 of the License, or
+	(at your option) any later version.
+	This program is distributed in the hope that it will be useful,
+	but WITHOUT ANY WARRANTY; without even the implied warranty of
+	MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+	GNU General Public License for more details.
+	You should have received a copy of the GNU General Public License along
+	with this program; if not, write to the Free Software Foundation, Inc.,
+	51 Franklin Street, Fifth Floor, Boston, MA 02110-1301 USA.
+
+*****************************/
+
+package com.vistamaresoft.jpdfi.bench;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.HashMap;
+import java.util.TreeSet;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OperationsPerInvocation;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import com.vistamaresoft.jpdfi.JPDIContentWriter;
+import com.vistamaresoft.jpdfi.JPDIDocument;
+import com.vistamaresoft.jpdfi.JPDIResourceMerger;
+import com.vistamaresoft.jpdfi.JPDImposition;
+
+import de.intarsys.pdf.content.CSContent;
+import de.intarsys.pdf.cos.COSDictionary;
+import de.intarsys.pdf.cos.COSName;
+import de.intarsys.pdf.cos.COSStream;
+import de.intarsys.pdf.pd.PDResources;
+
+/******************
+	CLASS JPDISuiteBench
+*******************
+
+The JMH benchmark suite, to compare releases:
+- plan, planFoldOuts:	JPDImposition.setFormat() for every format, plain and with signature
+						breaks, and for booklets with fold-outs; scores are in pages/s;
+- merge:				JPDIResourceMerger.merge() of a 16-up sheet, with increasing resources per
+						page; scores are in source pages/s;
+- rename:				JPDIContentWriter.copy() renaming names, on pages with increasing operations;
+- impose:				JPDIDocument.impose() and save() of a document from JPDICorpusGenerator;
+						scores are in documents/s.
+
+Built and run through the Maven module in the bench/ folder (see its pom.xml), e.g.:
+	java -cp target/benchmarks.jar:<jPOD>/lib/* org.openjdk.jmh.Main -prof gc -rf json JPDISuiteBench.merge
+where -prof gc adds the allocation rate and the bytes allocated per operation to each score. */
+
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class JPDISuiteBench
+{
+private static final int	PLAN_PAGES		= 10000;
+private static final int	FOLDOUT_EVERY	= 6;
+private static final int	BREAK_EVERY		= 1000;
+private static final int	SHEET_PAGES		= 16;		// the pages of JPDIMergerBench.createPages()
+
+/******************
+	Planner targets
+*******************/
+
+@State(Scope.Thread)
+public static class JPDIPlanState
+{
+	@Param({ "booklet", "in4h", "in4v", "in8h", "in8v", "in16h", "in16v" })
+	public String			format;
+	@Param({ "plain", "breaks" })
+	public String			variant;
+
+	JPDImposition.Format	formatVal;
+	TreeSet<Integer>		breaks;
+
+	@Setup
+	public void setup()
+	{
+		formatVal	= JPDImposition.formatStringToVal(format);
+		breaks		= new TreeSet<Integer>();
+		if (variant.equals("breaks"))
+			for (int pageNo = BREAK_EVERY; pageNo < PLAN_PAGES; pageNo += BREAK_EVERY)
+				breaks.add(pageNo);
+	}
+}
+
+@State(Scope.Thread)
+public static class JPDIFoldOutState
+{
+	TreeSet<Integer>		foldOuts;
+
+	@Setup
+	public void setup()
+	{
+		foldOuts	= new TreeSet<Integer>();
+		for (int pageNo = 1; pageNo < PLAN_PAGES; pageNo += FOLDOUT_EVERY)
+			foldOuts.add(pageNo);
+	}
+}
+
+@Benchmark
+@OperationsPerInvocation(PLAN_PAGES)
+public JPDImposition plan(JPDIPlanState state) throws Exception
+{
+	return plan(state.formatVal, state.breaks, new TreeSet<Integer>());
+}
+
+@Benchmark
+@OperationsPerInvocation(PLAN_PAGES)
+public JPDImposition planFoldOuts(JPDIFoldOutState state) throws Exception
+{
+	return plan(JPDImposition.Format.booklet, new TreeSet<Integer>(), state.foldOuts);
+}
+
+private static JPDImposition plan(JPDImposition.Format format, TreeSet<Integer> breaks,
+		TreeSet<Integer> foldOuts) throws Exception
+{
+	int				sheets	= format == JPDImposition.Format.booklet ? 5 : 1;
+	JPDImposition	impo	= new JPDImposition();
+	// setFormat() adds the final break to the list: give it a copy
+	impo.setFormat(format, 0, sheets, PLAN_PAGES, new TreeSet<Integer>(breaks), foldOuts);
+	return impo;
+}
+
+/******************
+	Resource merger targets
+*******************/
+
+@State(Scope.Thread)
+public static class JPDIMergeState
+{
+	@Param({ "25", "100", "400" })
+	public int				numOfRes;
+
+	PDResources[]			pages;
+	JPDIResourceMerger		merger;
+
+	@Setup
+	public void setup()
+	{
+		pages	= JPDIMergerBench.createPages(numOfRes);
+		merger	= new JPDIResourceMerger(1);
+	}
+}
+
+@Benchmark
+@OperationsPerInvocation(SHEET_PAGES)
+public COSDictionary merge(JPDIMergeState state)
+{
+	state.merger.setNumOfDestPages(1);
+	for (PDResources page : state.pages)
+		state.merger.merge(0, page);
+	return state.merger.getResources(0);
+}
+
+@State(Scope.Thread)
+public static class JPDIRenameState
+{
+	@Param({ "100", "1000", "10000" })
+	public int						numOfOps;
+
+	COSStream						contents;
+	int								size;
+	HashMap<COSName, COSName>		renameList;
+
+	@Setup
+	public void setup()
+	{
+		// a page showing text in 10 fonts, half of them to rename
+		StringBuilder	content	= new StringBuilder();
+		for (int i = 0; i < numOfOps / 2; i++)
+			content.append("/F").append(i % 10).append(" 12 Tf\n(text) Tj\n");
+		contents	= CSContent.createFromBytes(content.toString().getBytes()).createStream();
+		size		= contents.getDecodedBytes().length;
+		renameList	= new HashMap<COSName, COSName>();
+		for (int i = 0; i < 10; i += 2)
+			renameList.put(COSName.create("F" + i), COSName.create("R" + i));
+	}
+}
+
+@Benchmark
+public int rename(JPDIRenameState state)
+{
+	return new JPDIContentWriter(state.size).copy(state.contents, state.renameList);
+}
+
+/******************
+	End-to-end targets
+*******************/
+
+// To reach the protected parts of the classes under test
+
+private static class JPDIBenchDocument extends JPDIDocument
+{
+	boolean imposeAndSave()								{ return impose() && save();		}
+}
+
+@State(Scope.Thread)
+public static class JPDIImposeState
+{
+	@Param({ "64", "512" })
+	public int		numOfPages;
+	@Param({ "booklet", "in4h", "in8h", "in16h", "none" })
+	public String	format;
+
+	File			input;
+	File			output;
+
+	@Setup
+	public void setup() throws IOException
+	{
+		input	= File.createTempFile("jpdfi-bench-in-", ".pdf");
+		output	= File.createTempFile("jpdfi-bench-out-", ".pdf");
+		JPDICorpusGenerator	gen	= new JPDICorpusGenerator();
+		gen.setNumOfPages(numOfPages);
+		gen.generateDocument(input);
+	}
+
+	@TearDown
+	public void tearDown()
+	{
+		input.delete();
+		output.delete();
+	}
+}
+
+@Benchmark
+public boolean impose(JPDIImposeState state) throws IOException
+{
+	JPDIBenchDocument	doc	= new JPDIBenchDocument();
+	doc.addSourceFileName(state.input.getPath());
+	doc.setFormat(state.format, null);
+	doc.setOutputFileName(state.output.getPath());
+	if (!doc.imposeAndSave())
+		throw new IOException("imposition of " + state.input + " failed");
+	return true;
+}
+
+}
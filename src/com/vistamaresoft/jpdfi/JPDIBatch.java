@@ -0,0 +1,293 @@
+/****************************
+	j P D F i  -  A Java application to apply an imposition to a PDF document.
+
+	JPDIBatch.java - Runs many imposition jobs in one process
+
+	Created by : Maurizio M. Gavioli 2026-10-18
+
+	This program is free software; you can redistribute it and/or modify
+	it under the terms of the GNU General Public License as published by
+	the Free Software Foundation; either version 2 of the License, or
+	(at your option) any later version.
+	This program is distributed in the hope that it will be useful,
+	but WITHOUT ANY WARRANTY; without even the implied warranty of
+	MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+	GNU General Public License for more details.
+	You should have received a copy of the GNU General Public License along
+	with this program; if not, write to the Free Software Foundation, Inc.,
+	51 Franklin Street, Fifth Floor, Boston, MA 02110-1301 USA.
+
+*****************************/
+
+package com.vistamaresoft.jpdfi;
+
+import java.io.BufferedReader;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.PrintStream;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+
+/******************
+	CLASS JPDIBatch
+*******************
+
+Runs a list of imposition jobs, each described by a parameter file and run by its own
+JPDIDocument, on a pool of worker threads.
+
+Jobs are run in two rounds: first all parameter files are read (to know the size of each job),
+then the jobs are imposed and saved, shortest first (by total source pages), so that many small
+jobs are not held up by a few large ones. A failing job does not stop the others: each job ends
+with its own result, and a summary of all the jobs is printed at the end. */
+
+public class JPDIBatch
+{
+// PRIVATE DEFINITIONS
+
+private class JPDIBatchJob
+{
+	int				jobNo;			// the position in the job list
+	String			paramFile;
+	JPDIDocument	doc;
+	int				numOfPages;		// the total source pages
+	long			setupMs;		// the time taken by reading the parameter file
+	long			imposeMs;		// the time taken by impose()
+	long			saveMs;			// the time taken by save()
+	String			result;			// null = not run yet | "OK" | an error description
+}
+
+// FIELDS
+
+private ArrayList<JPDIBatchJob>	jobs;
+private int						numOfWorkers;
+
+/******************
+	C'tor
+*******************/
+
+public JPDIBatch()
+{
+	jobs			= new ArrayList<JPDIBatchJob>();
+	numOfWorkers	= Runtime.getRuntime().availableProcessors();
+}
+
+/******************
+	Getters / Setters
+*******************/
+
+public int	numOfJobs()								{ return jobs.size();				}
+
+/* Sets the number of jobs run at the same time; 0 = the number of available processors. */
+
+public void setNumOfWorkers(int numOfWorkers)
+{
+	this.numOfWorkers	= numOfWorkers > 0 ? numOfWorkers : Runtime.getRuntime().availableProcessors();
+}
+
+/******************
+	Add jobs
+*******************/
+
+public void addJob(String paramFile)
+{
+	JPDIBatchJob	job	= new JPDIBatchJob();
+	job.jobNo		= jobs.size();
+	job.paramFile	= paramFile;
+	jobs.add(job);
+}
+
+/* Reads a manifest: a text file with the name of a parameter file on each line; relative names
+are relative to the manifest folder, and empty lines and lines starting with '#' are ignored.
+
+Parameters:	fileName:	the manifest file name
+Returns:	true = manifest read | false = manifest could not be read */
+
+public boolean readManifest(String fileName)
+{
+	File	manifest	= new File(fileName);
+	String	filePath	= manifest.getAbsoluteFile().getParent();
+	try {
+		BufferedReader	reader	= new BufferedReader(
+				new InputStreamReader(new FileInputStream(manifest), "UTF-8"));
+		try {
+			String	line;
+			while ( (line = reader.readLine()) != null)
+			{
+				line	= line.trim();
+				if (line.isEmpty() || line.startsWith("#"))
+					continue;
+				addJob(new File(line).isAbsolute() ? line : filePath + File.separator + line);
+			}
+		}
+		finally {
+			reader.close();
+		}
+	}
+	catch (IOException e) {
+		System.err.println("Error reading manifest file " + fileName + ": " + e.getMessage());
+		return false;
+	}
+	return true;
+}
+
+/******************
+	Run the jobs
+*******************
+
+Parameters:	none
+Returns:	true = all jobs successful | false = at least one job failed */
+
+public boolean run()
+{
+	ExecutorService	pool	= Executors.newFixedThreadPool(numOfWorkers);
+	// 1st round: read parameter files, to know job sizes
+	for (final JPDIBatchJob job : jobs)
+		pool.execute(new Runnable() {
+			@Override
+			public void run()					{ setupJob(job);					}
+		});
+	if (!awaitJobs(pool))
+		return false;
+
+	// 2nd round: run jobs, shortest first
+	ArrayList<JPDIBatchJob>	queue	= new ArrayList<JPDIBatchJob>(jobs);
+	Collections.sort(queue, new Comparator<JPDIBatchJob>() {
+		@Override
+		public int compare(JPDIBatchJob job1, JPDIBatchJob job2)
+		{
+			if (job1.numOfPages != job2.numOfPages)
+				return job1.numOfPages < job2.numOfPages ? -1 : 1;
+			return job1.jobNo - job2.jobNo;
+		}
+	});
+	pool	= Executors.newFixedThreadPool(numOfWorkers);
+	for (final JPDIBatchJob job : queue)
+		if (job.result == null)
+			pool.execute(new Runnable() {
+				@Override
+				public void run()				{ runJob(job);						}
+			});
+	if (!awaitJobs(pool))
+		return false;
+
+	boolean	result	= true;
+	for (JPDIBatchJob job : jobs)
+		result	&= "OK".equals(job.result);
+	return result;
+}
+
+private boolean awaitJobs(ExecutorService pool)
+{
+	pool.shutdown();
+	try {
+		while (!pool.awaitTermination(1, TimeUnit.MINUTES))
+			;
+	}
+	catch (InterruptedException e) {
+		pool.shutdownNow();
+		Thread.currentThread().interrupt();
+		return false;
+	}
+	return true;
+}
+
+/******************
+	Run a single job
+*******************
+
+Setup reads the parameter file and closes the source documents it opened, not to keep all the
+sources of all the jobs open until each job is run. Anything thrown (errors included) only fails
+its own job, and a job run always ends with a result. */
+
+private void setupJob(JPDIBatchJob job)
+{
+	long	start	= System.nanoTime();
+	try {
+		job.doc		= new JPDIDocument();
+		if (!job.doc.readParamFile(job.paramFile))
+			job.result	= "Error in parameter file";
+		else
+			job.numOfPages	= job.doc.totPages();
+	}
+	catch (Throwable e) {
+		job.result	= "Error in parameter file: " + e;
+	}
+	finally {
+		closeSources(job);
+	}
+	job.setupMs		= (System.nanoTime() - start) / 1000000;
+	if (job.result != null)
+		job.doc		= null;
+}
+
+private void runJob(JPDIBatchJob job)
+{
+	long	start	= System.nanoTime();
+	try {
+		if (!job.doc.impose())
+			job.result	= "Error while imposing";
+		job.imposeMs	= (System.nanoTime() - start) / 1000000;
+		if (job.result == null)
+		{
+			start		= System.nanoTime();
+			job.result	= job.doc.save() ? "OK" : "Error while saving";
+			job.saveMs	= (System.nanoTime() - start) / 1000000;
+		}
+	}
+	catch (Throwable e) {
+		job.result	= "Error: " + e;
+	}
+	finally {
+		closeSources(job);
+		job.doc		= null;				// the job is done: let its data go
+		if (job.result == null)
+			job.result	= "Error";
+	}
+}
+
+/* Closes the source documents a job may have left open, whatever happened to it. */
+
+private static void closeSources(JPDIBatchJob job)
+{
+	if (job.doc == null)
+		return;
+	try {
+		job.doc.closeSources();
+	}
+	catch (Throwable e) {
+		// the job result stands: its output, if any, is complete anyway
+		System.err.println("Error closing the sources of " + job.paramFile + ": " + e);
+	}
+}
+
+/******************
+	Print the summary
+*******************
+
+Parameters:	out:	where to print to
+Returns:	none */
+
+public void printSummary(PrintStream out)
+{
+	int		failed		= 0;
+	long	totPages	= 0;
+	out.println("job\tpages\tsetup ms\timpose ms\tsave ms\tresult\tparameter file");
+	for (JPDIBatchJob job : jobs)
+	{
+		out.println((job.jobNo + 1) + "\t" + job.numOfPages + "\t" + job.setupMs + "\t" + job.imposeMs
+				+ "\t" + job.saveMs + "\t" + job.result + "\t" + job.paramFile);
+		if (!"OK".equals(job.result))
+			failed++;
+		totPages	+= job.numOfPages;
+	}
+	out.println(jobs.size() + " jobs, " + (jobs.size() - failed) + " OK, " + failed + " failed, "
+			+ totPages + " source pages.");
+}
+
+}
@@ -0,0 +1,162 @@
+/****************************
+	j P D F i  -  A Java application to apply an imposition to a PDF document.
+
+	JPDICompressor.java - Compresses the content streams created for the destination document
+
+	Created by : Maurizio M. Gavioli 2026-10-18
+
+	This program is free software; you can redistribute it and/or modify
+	it under the terms of the GNU General Public License as published by
+	the Free Software Foundation; either version 2 of the License, or
+	(at your option) any later version.
+	This program is distributed in the hope that it will be useful,
+	but WITHOUT ANY WARRANTY; without even the implied warranty of
+	MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+	GNU General Public License for more details.
+	You should have received a copy of the GNU General Public License along
+	with this program; if not, write to the Free Software Foundation, Inc.,
+	51 Franklin Street, Fifth Floor, Boston, MA 02110-1301 USA.
+
+*****************************/
+
+package com.vistamaresoft.jpdfi;
+
+import java.util.Arrays;
+import java.util.zip.Deflater;
+
+import de.intarsys.pdf.cos.COSName;
+import de.intarsys.pdf.cos.COSStream;
+
+/******************
+	CLASS JPDICompressor
+*******************
+
+Flate-compresses the streams created for the destination document as soon as they are complete,
+rather than leaving them to be compressed one after the other when the document is saved: as
+streams are complete in the thread composing their signature, they are compressed in parallel
+whenever signatures are, and saving only has to write bytes already encoded.
+
+The compression level can be chosen (from NO_COMPRESSION to BEST_COMPRESSION, as in Deflater), and
+streams shorter than a minimum size are left uncompressed, as the compressed data and the filter
+entry would hardly take less room. The class is thread-safe. */
+
+public class JPDICompressor
+{
+// PUBLIC DEFINITIONS
+
+public static final int		DEFAULT_MIN_SIZE	= 32;
+
+// PRIVATE DEFINITIONS
+
+private static final COSName	CN_FlateDecode	= COSName.constant("FlateDecode");
+
+// a deflater for each thread, to be re-used for all the streams the thread compresses
+private static final ThreadLocal<Deflater>	deflaters	= new ThreadLocal<Deflater>() {
+	@Override
+	protected Deflater initialValue()		{ return new Deflater();			}
+};
+
+// FIELDS
+
+private volatile int	level;
+private volatile int	minSize;
+private JPDIReport		report;
+
+/******************
+	C'tor
+*******************/
+
+public JPDICompressor()
+{
+	level	= Deflater.DEFAULT_COMPRESSION;
+	minSize	= DEFAULT_MIN_SIZE;
+	report	= JPDIReport.DISABLED;
+}
+
+/******************
+	Getters / Setters
+*******************/
+
+public int	level()										{ return level;						}
+public int	minSize()									{ return minSize;					}
+
+public void setMinSize(int minSize)						{ this.minSize = minSize < 0 ? 0 : minSize;	}
+public void setReport(JPDIReport report)				{ this.report = report;				}
+
+/* Sets the compression level: a number from 0 (no compression) to 9 (best compression) or one of
+"none", "fast", "default", "best".
+
+Parameters:	levelStr:	the level
+Returns:	true = level set | false = level not recognized (the level is not changed) */
+
+public boolean setLevel(String levelStr)
+{
+	switch (levelStr.toLowerCase())
+	{
+	case "none":
+		level	= Deflater.NO_COMPRESSION;
+		return true;
+	case "fast":
+		level	= Deflater.BEST_SPEED;
+		return true;
+	case "default":
+		level	= Deflater.DEFAULT_COMPRESSION;
+		return true;
+	case "best":
+		level	= Deflater.BEST_COMPRESSION;
+		return true;
+	}
+	try {
+		int	val	= Integer.parseInt(levelStr);
+		if (val < Deflater.NO_COMPRESSION || val > Deflater.BEST_COMPRESSION)
+			return false;
+		level	= val;
+		return true;
+	}
+	catch (NumberFormatException e) {
+		return false;
+	}
+}
+
+/******************
+	Compress a stream
+*******************
+
+Compresses a new stream (without filters) in place, unless shorter than the minimum size or the
+level is "none".
+
+Parameters:	stream:	the stream to compress
+Returns:	none */
+
+public void compress(COSStream stream)
+{
+	byte[]	bytes	= stream.getDecodedBytes();
+	if (level == Deflater.NO_COMPRESSION || bytes == null || bytes.length < minSize)
+		return;
+	long[]	mark	= report.begin(JPDIReport.Stage.compress);
+	stream.addFilter(CN_FlateDecode);
+	stream.setEncodedBytes(deflate(bytes));
+	report.end(JPDIReport.Stage.compress, mark);
+}
+
+/* Deflates bytes with the compression level of the compressor, in zlib format. */
+
+protected byte[] deflate(byte[] bytes)
+{
+	Deflater	deflater	= deflaters.get();
+	deflater.reset();
+	deflater.setLevel(level);
+	deflater.setInput(bytes);
+	deflater.finish();
+	byte[]		output		= new byte[bytes.length / 2 + 64];
+	int			length		= 0;
+	while (!deflater.finished())
+	{
+		if (length == output.length)
+			output	= Arrays.copyOf(output, output.length * 2);
+		length	+= deflater.deflate(output, length, output.length - length);
+	}
+	return Arrays.copyOf(output, length);
+}
+
+}
@@ -0,0 +1,526 @@
+/****************************
+	j P D F i  -  A Java application to apply an imposition to a PDF document.
+
+	JPDIContentWriter.java - Writes the content of a dest. page as bytes, copying source contents
+
+	Created by : Maurizio M. Gavioli 2026-10-18
+
+	This program is free software; you can redistribute it and/or modify
+	it under the terms of the GNU General Public License as published by
+	the Free Software Foundation; either version 2 of the License, or
+	(at your option) any later version.
+	This program is distributed in the hope that it will be useful,
+	but WITHOUT ANY WARRANTY; without even the implied warranty of
+	MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+	GNU General Public License for more details.
+	You should have received a copy of the GNU General Public License along
+	with this program; if not, write to the Free Software Foundation, Inc.,
+	51 Franklin Street, Fifth Floor, Boston, MA 02110-1301 USA.
+
+*****************************/
+
+package com.vistamaresoft.jpdfi;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.BitSet;
+import java.util.HashMap;
+import java.util.Map;
+
+import de.intarsys.pdf.cos.COSArray;
+import de.intarsys.pdf.cos.COSName;
+import de.intarsys.pdf.cos.COSObject;
+import de.intarsys.pdf.cos.COSStream;
+
+/******************
+	CLASS JPDIContentWriter
+*******************
+
+Builds the content of a dest. page as a sequence of streams, without parsing source contents into
+operations: the few operators the imposition adds (save and restore of the graphic state,
+transformations, XObject placements) are written as text into new streams, and the content streams
+of source pages which need no renaming are referenced as they are, without decoding nor encoding
+them again (to be copied into the dest. document as any other source object, see finish()).
+
+The contents of source pages which do need renaming (because some of their resource names collide
+with resources of other pages placed on the same dest. page, see JPDIResourceMerger) are instead
+copied into the new streams, in a single sequential pass over their decoded bytes in which only
+name tokens are looked at and the names to rename are replaced on the fly, so that the source page
+is never changed. As the parsed operations did, only names which are direct operands are renamed:
+names within arrays, dictionaries (e.g. a marked-content property list) or inline images are copied
+unchanged. Strings, comments and inline image data are skipped over, so that bytes looking like
+names within them are never touched. */
+
+public class JPDIContentWriter
+{
+// PRIVATE DEFINITIONS
+
+private static final byte[]	HEX_DIGITS	= "0123456789ABCDEF".getBytes();
+private static final boolean[]	DELIMITER	= new boolean[256];		// white space and delimiters
+
+static
+{
+	for (char c : " \n\r\t\f\0()<>[]{}/%".toCharArray())
+		DELIMITER[c]	= true;
+}
+
+// FIELDS
+
+private byte[]		buf;			// the bytes of the new stream being written
+private int			count;
+private ArrayList<COSStream>	streams;		// the complete streams, new and from source pages
+private BitSet		sourceStreams;	// which streams come from source pages
+private byte[]		scratch;		// a name with #xx escapes, decoded for comparison
+private byte[][]	oldNames;		// the names to rename in the current copy, as bytes
+private byte[][]	newNames;		// their new names, already encoded as tokens
+
+/******************
+	C'tor
+*******************/
+
+public JPDIContentWriter(int initialSize)
+{
+	buf				= new byte[Math.max(initialSize, 64)];
+	count			= 0;
+	streams			= new ArrayList<COSStream>();
+	sourceStreams	= new BitSet();
+	scratch			= new byte[64];
+}
+
+/******************
+	Getters / Setters
+*******************/
+
+public int	numOfStreams()								{ return streams.size();			}
+public COSStream	stream(int index)						{ return streams.get(index);		}
+
+/* Whether a stream comes from a source page, rather than being a new stream. */
+
+public boolean isSourceStream(int index)				{ return sourceStreams.get(index);	}
+
+/******************
+	Operators
+*******************/
+
+public void saveState()
+{
+	write('q');
+	write('\n');
+}
+
+public void restoreState()
+{
+	write('Q');
+	write('\n');
+}
+
+public void transform(float a, float b, float c, float d, float e, float f)
+{
+	writeNumber(a);
+	writeNumber(b);
+	writeNumber(c);
+	writeNumber(d);
+	writeNumber(e);
+	writeNumber(f);
+	write('c');
+	write('m');
+	write('\n');
+}
+
+public void doXObject(COSName name)
+{
+	writeName(name.byteValue());
+	write(' ');
+	write('D');
+	write('o');
+	write('\n');
+}
+
+/* Writes bytes as they are, e.g. operators produced by a CSCreator; a line end keeps them apart
+from what follows. */
+
+public void write(byte[] bytes)
+{
+	write(bytes, 0, bytes.length);
+	write('\n');
+}
+
+/******************
+	Finish
+*******************
+
+Completes the last new stream, if any, and compresses the new streams; the streams can then be added,
+in order, to the dest. page: the new streams as they are, those from source pages through a copy
+into the dest. document.
+
+Parameters:	compressor:	the compressor of the new streams
+Returns:	none */
+
+public void finish(JPDICompressor compressor)
+{
+	endStream();
+	for (int i = 0; i < streams.size(); i++)
+		if (!sourceStreams.get(i))
+			compressor.compress(streams.get(i));
+	buf		= null;
+}
+
+/* Completes the new stream being written, if not empty. */
+
+private void endStream()
+{
+	if (count == 0)
+		return;
+	COSStream	stream	= COSStream.create(null);
+	stream.setDecodedBytes(Arrays.copyOf(buf, count));
+	streams.add(stream);
+	count	= 0;
+}
+
+/******************
+	Copy contents
+*******************
+
+Adds the contents of a source page, a stream or an array of streams: with no name to rename, the
+streams themselves; otherwise a copy of their bytes, renaming names as it goes.
+
+Parameters:	contents:	the /Contents of the source page (null = none)
+			renames:	the names to rename and their new names (null or empty = none)
+Returns:	the no. of names renamed */
+
+public int copy(COSObject contents, HashMap<COSName, COSName> renames)
+{
+	setRenames(renames);
+	if (oldNames == null)
+	{
+		passThrough(contents);
+		return 0;
+	}
+	int		numOfRenamed	= 0;
+	if (contents instanceof COSStream)
+		numOfRenamed	+= copy(((COSStream)contents).getDecodedBytes());
+	else if (contents instanceof COSArray)
+		for (COSObject stream : (COSArray)contents)
+			if (stream instanceof COSStream)
+				numOfRenamed	+= copy(((COSStream)stream).getDecodedBytes());
+	oldNames	= null;
+	newNames	= null;
+	return numOfRenamed;
+}
+
+/* Adds the content streams of a source page as they are. */
+
+private void passThrough(COSObject contents)
+{
+	if (contents instanceof COSStream)
+		addSourceStream((COSStream)contents);
+	else if (contents instanceof COSArray)
+		for (COSObject stream : (COSArray)contents)
+			if (stream instanceof COSStream)
+				addSourceStream((COSStream)stream);
+}
+
+private void addSourceStream(COSStream stream)
+{
+	endStream();
+	sourceStreams.set(streams.size());
+	streams.add(stream);
+}
+
+private void setRenames(HashMap<COSName, COSName> renames)
+{
+	if (renames == null || renames.isEmpty())
+	{
+		oldNames	= null;
+		newNames	= null;
+		return;
+	}
+	oldNames	= new byte[renames.size()][];
+	newNames	= new byte[renames.size()][];
+	int		i	= 0;
+	for (Map.Entry<COSName, COSName> entry : renames.entrySet())
+	{
+		oldNames[i]	= entry.getKey().byteValue();
+		newNames[i]	= nameToken(entry.getValue().byteValue());
+		i++;
+	}
+}
+
+/* Copies decoded content bytes into the new stream, renaming the names in oldNames; array items are
+only split between tokens, so each item is kept apart from the next by a line end. */
+
+private int copy(byte[] src)
+{
+	if (src == null)
+		return 0;
+	int		numOfRenamed	= 0;
+	int		n				= src.length;
+	int		runStart		= 0;			// the start of the bytes not yet written
+	int		depth			= 0;			// the nesting of arrays and dictionaries
+	boolean	inlineImage		= false;		// within the dictionary of an inline image (BI ... ID)
+	int		i				= 0;
+	while (i < n)
+	{
+		byte	b	= src[i];
+		switch (b)
+		{
+		case '%':							// a comment, up to the line end
+			while (i < n && src[i] != '\n' && src[i] != '\r')
+				i++;
+			break;
+		case '(':							// a literal string, with nested parentheses and escapes
+			i	= skipString(src, i);
+			break;
+		case '<':
+			if (i + 1 < n && src[i + 1] == '<')
+			{
+				depth++;
+				i	+= 2;
+			}
+			else							// a hexadecimal string
+			{
+				while (i < n && src[i] != '>')
+					i++;
+				i++;
+			}
+			break;
+		case '>':
+			if (i + 1 < n && src[i + 1] == '>')
+			{
+				depth--;
+				i++;
+			}
+			i++;
+			break;
+		case '[':
+			depth++;
+			i++;
+			break;
+		case ']':
+			depth--;
+			i++;
+			break;
+		case '/':
+		{
+			int		start	= i++;
+			while (i < n && !isDelimiter(src[i]))
+				i++;
+			if (depth > 0 || inlineImage)
+				break;
+			int		k		= findName(src, start + 1, i);
+			if (k >= 0)
+			{
+				write(src, runStart, start - runStart);
+				write(newNames[k], 0, newNames[k].length);
+				runStart	= i;
+				numOfRenamed++;
+			}
+			break;
+		}
+		default:
+			if (isDelimiter(b))
+			{
+				i++;
+				break;
+			}
+			// a number or an operator; the data of an inline image follow its ID operator
+			int		start	= i;
+			while (i < n && !isDelimiter(src[i]))
+				i++;
+			if (i - start == 2 && src[start] == 'B' && src[start + 1] == 'I')
+				inlineImage	= true;
+			else if (i - start == 2 && src[start] == 'I' && src[start + 1] == 'D')
+			{
+				inlineImage	= false;
+				i	= skipInlineImage(src, i);
+			}
+		}
+	}
+	write(src, runStart, n - runStart);
+	write('\n');
+	return numOfRenamed;
+}
+
+/* Returns the index in oldNames of the name whose token (without '/') is src[start..end), -1 if
+none. */
+
+private int findName(byte[] src, int start, int end)
+{
+	byte[]	name	= src;
+	int		length	= end - start;
+	for (int i = start; i < end; i++)
+		if (src[i] == '#')
+		{
+			// decode the #xx escapes, for a comparison with the decoded names
+			if (scratch.length < length)
+				scratch	= new byte[length];
+			length	= 0;
+			for (int j = start; j < end; j++)
+			{
+				if (src[j] == '#' && j + 2 < end)
+				{
+					scratch[length++]	= (byte)(Character.digit(src[j + 1], 16) << 4
+							| Character.digit(src[j + 2], 16));
+					j	+= 2;
+				}
+				else
+					scratch[length++]	= src[j];
+			}
+			name	= scratch;
+			start	= 0;
+			break;
+		}
+	for (int k = 0; k < oldNames.length; k++)
+	{
+		byte[]	oldName	= oldNames[k];
+		if (oldName.length != length)
+			continue;
+		int		j		= 0;
+		while (j < length && oldName[j] == name[start + j])
+			j++;
+		if (j == length)
+			return k;
+	}
+	return -1;
+}
+
+/* Returns the index after a literal string starting at i. */
+
+private static int skipString(byte[] src, int i)
+{
+	int		depth	= 0;
+	while (i < src.length)
+	{
+		byte	b	= src[i++];
+		if (b == '\\')
+			i++;
+		else if (b == '(')
+			depth++;
+		else if (b == ')' && --depth == 0)
+			break;
+	}
+	return i;
+}
+
+/* Returns the index after the data of an inline image, starting just after its ID operator: the
+data end at the first EI operator preceded by white space and followed by a delimiter. */
+
+private static int skipInlineImage(byte[] src, int i)
+{
+	int		n	= src.length;
+	for (i++; i + 1 < n; i++)
+		if (src[i] == 'E' && src[i + 1] == 'I' && isWhite(src[i - 1])
+				&& (i + 2 == n || isDelimiter(src[i + 2])))
+			return i + 2;
+	return n;
+}
+
+/******************
+	Helpers
+*******************/
+
+/* Starts a new stream: the streams of a /Contents array are joined as one, so, after a source stream,
+the first operator is kept apart from the last operator of the source. */
+
+private void startStream()
+{
+	if (!streams.isEmpty() && sourceStreams.get(streams.size() - 1))
+		buf[count++]	= '\n';
+}
+
+private void write(int b)
+{
+	if (count == 0)
+		startStream();
+	if (count == buf.length)
+		buf	= Arrays.copyOf(buf, buf.length * 2);
+	buf[count++]	= (byte)b;
+}
+
+private void write(byte[] bytes, int offset, int length)
+{
+	if (count == 0)
+		startStream();
+	if (count + length + 1 > buf.length)
+		buf	= Arrays.copyOf(buf, Math.max(buf.length * 2, count + length));
+	System.arraycopy(bytes, offset, buf, count, length);
+	count	+= length;
+}
+
+/* Writes a number with at most 5 decimals, followed by a space. */
+
+private void writeNumber(float val)
+{
+	long	scaled	= Math.round(Math.abs(val) * 100000.0);
+	if (val < 0 && scaled != 0)
+		write('-');
+	long	intPart	= scaled / 100000;
+	long	decimals	= scaled % 100000;
+	writeLong(intPart);
+	if (decimals != 0)
+	{
+		write('.');
+		int		digits	= 5;
+		while (decimals % 10 == 0)
+		{
+			decimals	/= 10;
+			digits--;
+		}
+		for (long div = pow10(digits - 1); div > 0; div /= 10)
+			write('0' + (int)(decimals / div % 10));
+	}
+	write(' ');
+}
+
+private void writeLong(long val)
+{
+	if (val >= 10)
+		writeLong(val / 10);
+	write('0' + (int)(val % 10));
+}
+
+private static long pow10(int exp)
+{
+	long	val	= 1;
+	for (int i = 0; i < exp; i++)
+		val	*= 10;
+	return val;
+}
+
+private void writeName(byte[] name)
+{
+	byte[]	token	= nameToken(name);
+	write(token, 0, token.length);
+}
+
+/* Returns the token of a name: a '/' followed by its bytes, escaping as #xx the bytes which cannot
+appear as they are. */
+
+private static byte[] nameToken(byte[] name)
+{
+	byte[]	token	= new byte[name.length * 3 + 1];
+	int		length	= 0;
+	token[length++]	= '/';
+	for (byte b : name)
+		if (b < 0x21 || b > 0x7E || b == '#' || isDelimiter(b))
+		{
+			token[length++]	= '#';
+			token[length++]	= HEX_DIGITS[(b >> 4) & 0xF];
+			token[length++]	= HEX_DIGITS[b & 0xF];
+		}
+		else
+			token[length++]	= b;
+	return Arrays.copyOf(token, length);
+}
+
+private static boolean isWhite(byte b)
+{
+	return b == ' ' || b == '\n' || b == '\r' || b == '\t' || b == '\f' || b == 0;
+}
+
+private static boolean isDelimiter(byte b)
+{
+	return DELIMITER[b & 0xFF];
+}
+
+}
@@ -0,0 +1,209 @@
+/****************************
+	j P D F i  -  A Java application to apply an imposition to a PDF document.
+
+	JPDICopyMap.java - The map of the source objects already copied, with scoped lifetimes
+
+	Created by : Maurizio M. Gavioli 2026-10-18
+
+	This program is free software; you can redistribute it and/or modify
+	it under the terms of the GNU General Public License as published by
+	the Free Software Foundation; either version 2 of the License, or
+	(at your option) any later version.
+	This program is distributed in the hope that it will be useful,
+	but WITHOUT ANY WARRANTY; without even the implied warranty of
+	MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+	GNU General Public License for more details.
+	You should have received a copy of the GNU General Public License along
+	with this program; if not, write to the Free Software Foundation, Inc.,
+	51 Franklin Street, Fifth Floor, Boston, MA 02110-1301 USA.
+
+*****************************/
+
+package com.vistamaresoft.jpdfi;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.IdentityHashMap;
+
+import de.intarsys.pdf.cos.COSCompositeObject;
+import de.intarsys.pdf.cos.COSDocument;
+import de.intarsys.pdf.cos.COSIndirectObject;
+import de.intarsys.pdf.cos.COSObject;
+
+/******************
+	CLASS JPDICopyMap
+*******************
+
+The map passed to COSObject.copyDeep(), from each source object already copied into the
+destination document to its copy, so that objects shared by several pages are copied only once.
+
+Unlike a plain map, which keeps every source object ever copied until the end of the run, entries
+have a lifetime depending on the object they map:
+- objects of a source document live until evictDocument() is called for it, once all its pages
+  have been placed;
+- objects of no document (created while composing, like page forms) live until the end of the
+  scope (a signature, or a page when concatenating) which copied them;
+- objects found again out of their own lifetime (from the pages of another document or in a later
+  scope) and objects explicitly shared with share() live until the end of the run.
+
+The class is not thread-safe: copies are made in the main thread only. */
+
+public class JPDICopyMap extends HashMap<COSIndirectObject, COSCompositeObject>
+{
+private static final long	serialVersionUID	= 1L;
+
+// FIELDS
+
+private IdentityHashMap<COSDocument, ArrayList<COSIndirectObject>>	docScopes;	// by source document
+private IdentityHashMap<COSIndirectObject, Boolean>	scopeKeys;	// objects of no doc., copied in this scope
+private IdentityHashMap<COSIndirectObject, Boolean>	shared;		// objects living until the end
+private IdentityHashMap<COSDocument, Boolean>		scopeDocs;	// the documents of the current scope
+private int											numOfEvicted;
+
+/******************
+	C'tor
+*******************/
+
+public JPDICopyMap()
+{
+	docScopes		= new IdentityHashMap<COSDocument, ArrayList<COSIndirectObject>>();
+	scopeKeys		= new IdentityHashMap<COSIndirectObject, Boolean>();
+	shared			= new IdentityHashMap<COSIndirectObject, Boolean>();
+	scopeDocs		= new IdentityHashMap<COSDocument, Boolean>();
+	numOfEvicted	= 0;
+}
+
+/******************
+	Getters
+*******************/
+
+public int	numOfShared()									{ return shared.size();				}
+public int	numOfEvicted()									{ return numOfEvicted;				}
+
+/******************
+	Map access
+*******************
+
+Each new entry is added to the scope of its object; each entry found for an object of another
+scope is moved to the shared tier. */
+
+@Override
+public COSCompositeObject put(COSIndirectObject key, COSCompositeObject value)
+{
+	COSCompositeObject	oldValue	= super.put(key, value);
+	if (oldValue == null && !shared.containsKey(key))
+	{
+		COSDocument	doc	= key.getDoc();
+		if (doc == null)
+			scopeKeys.put(key, Boolean.TRUE);
+		else
+		{
+			ArrayList<COSIndirectObject>	keys	= docScopes.get(doc);
+			if (keys == null)
+			{
+				keys	= new ArrayList<COSIndirectObject>();
+				docScopes.put(doc, keys);
+			}
+			keys.add(key);
+		}
+	}
+	return oldValue;
+}
+
+@Override
+public COSCompositeObject get(Object key)
+{
+	COSCompositeObject	value	= super.get(key);
+	if (value == null || shared.containsKey(key))
+		return value;
+	COSIndirectObject	ref	= (COSIndirectObject)key;
+	COSDocument			doc	= ref.getDoc();
+	if (doc == null ? !scopeKeys.containsKey(ref) : !scopeDocs.containsKey(doc))
+		shared.put(ref, Boolean.TRUE);
+	return value;
+}
+
+@Override
+public COSCompositeObject remove(Object key)
+{
+	scopeKeys.remove(key);
+	shared.remove(key);
+	return super.remove(key);
+}
+
+@Override
+public void clear()
+{
+	super.clear();
+	docScopes.clear();
+	scopeKeys.clear();
+	shared.clear();
+	scopeDocs.clear();
+}
+
+/******************
+	Scopes
+*******************
+
+beginScope() starts copying the pages of a signature (or a single page) coming from the given source
+documents; endScope() drops the objects of no document copied since then and not shared.
+
+Parameters:	docs:	the source documents of the pages to copy
+Returns:	none */
+
+public void beginScope(Collection<COSDocument> docs)
+{
+	scopeDocs.clear();
+	for (COSDocument doc : docs)
+		scopeDocs.put(doc, Boolean.TRUE);
+}
+
+public void endScope()
+{
+	for (COSIndirectObject key : scopeKeys.keySet())
+		if (!shared.containsKey(key))
+		{
+			super.remove(key);
+			numOfEvicted++;
+		}
+	scopeKeys.clear();
+	scopeDocs.clear();
+}
+
+/* Keeps an object (and its copy, once made) until the end of the run, as an object known to be used
+by many scopes, like the glue-to page number font. */
+
+public void share(COSObject obj)
+{
+	Object	container	= obj.getContainer();
+	if (!(container instanceof COSIndirectObject) || shared.containsKey(container))
+		return;
+	COSIndirectObject	ref	= (COSIndirectObject)container;
+	shared.put(ref, Boolean.TRUE);
+	scopeKeys.remove(ref);
+}
+
+/******************
+	Evict a document
+*******************
+
+Drops the objects of a source document, except the shared ones, once no page of it remains to copy.
+
+Parameters:	doc:	the source document
+Returns:	none */
+
+public void evictDocument(COSDocument doc)
+{
+	ArrayList<COSIndirectObject>	keys	= docScopes.remove(doc);
+	if (keys == null)
+		return;
+	for (COSIndirectObject key : keys)
+		if (!shared.containsKey(key))
+		{
+			super.remove(key);
+			numOfEvicted++;
+		}
+}
+
+}
@@ -0,0 +1,422 @@
+/****************************
+	j P D F i  -  A Java application to apply an imposition to a PDF document.
+
+	JPDIDedup.java - Shares identical objects coming from different source documents
+
+	Created by : Maurizio M. Gavioli 2026-10-18
+
+	This program is free software; you can redistribute it and/or modify
+	it under the terms of the GNU General Public License as published by
+	the Free Software Foundation; either version 2 of the License, or
+	(at your option) any later version.
+	This program is distributed in the hope that it will be useful,
+	but WITHOUT ANY WARRANTY; without even the implied warranty of
+	MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+	GNU General Public License for more details.
+	You should have received a copy of the GNU General Public License along
+	with this program; if not, write to the Free Software Foundation, Inc.,
+	51 Franklin Street, Fifth Floor, Boston, MA 02110-1301 USA.
+
+*****************************/
+
+package com.vistamaresoft.jpdfi;
+
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.IdentityHashMap;
+import java.util.Iterator;
+
+import de.intarsys.pdf.cos.COSArray;
+import de.intarsys.pdf.cos.COSBoolean;
+import de.intarsys.pdf.cos.COSCompositeObject;
+import de.intarsys.pdf.cos.COSDictionary;
+import de.intarsys.pdf.cos.COSDocument;
+import de.intarsys.pdf.cos.COSFixed;
+import de.intarsys.pdf.cos.COSIndirectObject;
+import de.intarsys.pdf.cos.COSInteger;
+import de.intarsys.pdf.cos.COSName;
+import de.intarsys.pdf.cos.COSNumber;
+import de.intarsys.pdf.cos.COSObject;
+import de.intarsys.pdf.cos.COSStream;
+import de.intarsys.pdf.cos.COSString;
+
+/******************
+	CLASS JPDIDedup
+*******************
+
+Shares identical shared (indirect) objects, whatever source document they come from: the same
+fonts, images and ICC profiles embedded in each of several source documents end up only once in
+the destination document.
+
+Two objects are identical if they have the same content hash: streams by their dictionary and their
+encoded bytes, dictionaries and arrays by their entries, where shared objects they refer to count
+by their own hash. Objects in reference loops and objects of no document are never considered
+identical to others.
+
+Only the hashes are kept, never the source objects themselves:
+- the hash of each object of a source document, once computed, until evictDocument() is called
+  for it;
+- for each hash, the destination copy of the first object with it, re-used by copyDeep() for the
+  objects identical to it.
+The streaming writer uses hash() to share identical objects in the same way, and the resource
+merger the hashes of page resources computed with it beforehand; the source documents are never
+changed. The class is not thread-safe and shall only be used by the thread reading the source
+documents (never by the merger, which may run in compose threads). */
+
+public class JPDIDedup
+{
+// PRIVATE DEFINITIONS
+
+private static final COSName	CN_Length	= COSName.constant("Length");
+
+private static class JPDIDedupEntry
+{
+	ByteBuffer	hash;			// null = not comparable with other objects
+	long		size;			// the approx. size of the object and of anything it reaches
+}
+
+private static final JPDIDedupEntry	NOT_COMPARABLE	= new JPDIDedupEntry();
+
+// FIELDS
+
+private MessageDigest									md;			// for object serializations
+private MessageDigest									streamMd;	// for stream bytes
+private IdentityHashMap<COSDocument, HashMap<Integer, JPDIDedupEntry>>	entries;	// by source doc.
+																	// and object no. in it
+private HashMap<ByteBuffer, COSCompositeObject>			copies;		// the dest. copy for each hash
+private IdentityHashMap<COSObject, Boolean>				inProgress;	// loop guard
+private int												numOfDups;
+private long											bytesSaved;
+
+/******************
+	C'tor
+*******************/
+
+public JPDIDedup()
+{
+	try {
+		md			= MessageDigest.getInstance("SHA-256");
+		streamMd	= MessageDigest.getInstance("SHA-256");
+	}
+	catch (NoSuchAlgorithmException e) {
+		throw new IllegalStateException("SHA-256 not available", e);
+	}
+	entries		= new IdentityHashMap<COSDocument, HashMap<Integer, JPDIDedupEntry>>();
+	copies		= new HashMap<ByteBuffer, COSCompositeObject>();
+	inProgress	= new IdentityHashMap<COSObject, Boolean>();
+	numOfDups	= 0;
+	bytesSaved	= 0;
+}
+
+/******************
+	Getters
+*******************/
+
+/* The objects replaced by an identical one and (approx.) the bytes saved in the output; only the
+replaced objects are counted, not the objects they reach in turn. */
+
+public int	numOfDuplicates()								{ return numOfDups;				}
+public long	bytesSaved()									{ return bytesSaved;			}
+
+/******************
+	Content hash
+*******************
+
+Returns the content hash of an object, as used to compare objects: for shared objects, the hash
+they are compared by; for direct objects, the hash of their serialization.
+
+Parameters:	obj:	the object
+Returns:	the hash | null if the object is not comparable (it is in a reference loop or it belongs
+			to no document) */
+
+public byte[] hash(COSObject obj)
+{
+	if (obj.isIndirect())
+	{
+		JPDIDedupEntry	entry	= entry(obj);
+		return entry.hash != null ? entry.hash.array() : null;
+	}
+	ByteBuffer	data	= serialize(obj, ByteBuffer.allocate(256), new long[1], true);
+	if (data == null)
+		return null;
+	md.reset();
+	md.update(data.array(), 0, data.position());
+	return md.digest();
+}
+
+/******************
+	Count a duplicate
+*******************
+
+Records that a shared object has been replaced in the output by an identical one, for the figures
+returned by numOfDuplicates() and bytesSaved(); copyDeep() records its own replacements.
+
+Parameters:	obj:	the object replaced
+Returns:	none */
+
+public void countDuplicate(COSObject obj)
+{
+	numOfDups++;
+	bytesSaved	+= entry(obj).size;
+}
+
+/******************
+	Deep copy
+*******************
+
+Deep-copies an object into the destination document, as COSObject.copyDeep() does, but re-using
+the copy of any object identical to one reached by the object.
+
+Parameters:	obj:	the object to copy
+			resMap:	the map of the objects already copied, as for COSObject.copyDeep()
+Returns:	the copy */
+
+public COSObject copyDeep(COSObject obj, HashMap<COSIndirectObject, COSCompositeObject> resMap)
+{
+	IdentityHashMap<COSObject, Boolean>	visited	= new IdentityHashMap<COSObject, Boolean>();
+	seedCopies(obj, resMap, visited);
+	COSObject	copy	= obj.copyDeep(resMap);
+	visited.clear();
+	recordCopies(obj, resMap, visited);
+	return copy;
+}
+
+/* Adds to resMap the copies of the objects identical to the ones reached by obj; objects reached
+only through a replaced object are neither visited nor counted. */
+
+private void seedCopies(COSObject obj, HashMap<COSIndirectObject, COSCompositeObject> resMap,
+		IdentityHashMap<COSObject, Boolean> visited)
+{
+	if (obj.isIndirect())
+	{
+		COSIndirectObject	ref	= indirectOf(obj);
+		if (ref == null || resMap.containsKey(ref) || visited.put(obj, Boolean.TRUE) != null)
+			return;
+		JPDIDedupEntry		entry	= entry(obj);
+		COSCompositeObject	copy	= entry.hash != null ? copies.get(entry.hash) : null;
+		if (copy != null)
+		{
+			resMap.put(ref, copy);
+			numOfDups++;
+			bytesSaved	+= entry.size;
+			return;
+		}
+	}
+	for (COSObject child : children(obj))
+		seedCopies(child, resMap, visited);
+}
+
+/* Records the copies of the objects reached by obj, for objects identical to them met later. */
+
+private void recordCopies(COSObject obj, HashMap<COSIndirectObject, COSCompositeObject> resMap,
+		IdentityHashMap<COSObject, Boolean> visited)
+{
+	if (obj.isIndirect())
+	{
+		if (visited.put(obj, Boolean.TRUE) != null)
+			return;
+		COSIndirectObject	ref		= indirectOf(obj);
+		ByteBuffer			hash	= entry(obj).hash;
+		if (ref == null || hash == null || copies.containsKey(hash))
+			return;
+		COSCompositeObject	copy	= resMap.get(ref);
+		if (copy != null)
+			copies.put(hash, copy);
+	}
+	for (COSObject child : children(obj))
+		recordCopies(child, resMap, visited);
+}
+
+private static COSIndirectObject indirectOf(COSObject obj)
+{
+	Object	container	= obj.getContainer();
+	return container instanceof COSIndirectObject ? (COSIndirectObject)container : null;
+}
+
+/******************
+	Evict a document
+*******************
+
+Drops the hashes of the objects of a source document, once no page of it remains to copy; the
+copies of its objects remain available to identical objects of other documents.
+
+Parameters:	doc:	the source document
+Returns:	none */
+
+public void evictDocument(COSDocument doc)
+{
+	entries.remove(doc);
+}
+
+/******************
+	Hashing
+*******************/
+
+/* Returns the entry of an indirect object, hashing it (and anything it reaches) the first time. */
+
+private JPDIDedupEntry entry(COSObject obj)
+{
+	COSIndirectObject	ref		= indirectOf(obj);
+	COSDocument			doc		= ref != null ? ref.getDoc() : null;
+	if (doc == null)							// not from a source document
+		return NOT_COMPARABLE;
+	HashMap<Integer, JPDIDedupEntry>	docEntries	= entries.get(doc);
+	if (docEntries == null)
+	{
+		docEntries	= new HashMap<Integer, JPDIDedupEntry>();
+		entries.put(doc, docEntries);
+	}
+	JPDIDedupEntry	entry	= docEntries.get(ref.getObjectNumber());
+	if (entry != null)
+		return entry;
+	inProgress.put(obj, Boolean.TRUE);
+	entry				= new JPDIDedupEntry();
+	ByteBuffer	data	= ByteBuffer.allocate(256);
+	long[]		size	= new long[1];
+	data				= serialize(obj, data, size, true);
+	inProgress.remove(obj);
+	docEntries.put(ref.getObjectNumber(), entry);
+	entry.size			= size[0];
+	if (data == null)							// not comparable
+		return entry;
+	md.reset();
+	md.update(data.array(), 0, data.position());
+	entry.hash			= ByteBuffer.wrap(md.digest());
+	return entry;
+}
+
+/* Appends to data a canonical serialization of an object, in which shared objects appear as their
+own hash; returns the (possibly re-allocated) buffer or null if the object is not comparable. */
+
+private ByteBuffer serialize(COSObject obj, ByteBuffer data, long[] size, boolean top)
+{
+	if (!top && obj.isIndirect())
+	{
+		if (inProgress.containsKey(obj))		// a reference loop
+			return null;
+		JPDIDedupEntry	entry	= entry(obj);
+		if (entry.hash == null)
+			return null;
+		size[0]	+= entry.size;
+		data	= append(data, (byte)'R', entry.hash.array());
+		return data;
+	}
+	if (obj instanceof COSName)
+		return append(data, (byte)'/', ((COSName)obj).byteValue());
+	if (obj instanceof COSInteger)
+		return append(data, (byte)'i', Integer.toString(((COSInteger)obj).intValue()));
+	if (obj instanceof COSFixed)
+		return append(data, (byte)'f', Double.toString(((COSFixed)obj).doubleValue()));
+	if (obj instanceof COSNumber)
+		return append(data, (byte)'f', Double.toString(((COSNumber)obj).floatValue()));
+	if (obj instanceof COSBoolean)
+		return append(data, (byte)'b', ((COSBoolean)obj).booleanValue() ? "t" : "f");
+	if (obj instanceof COSString)
+		return append(data, (byte)'s', ((COSString)obj).byteValue());
+	if (obj instanceof COSArray)
+	{
+		data	= append(data, (byte)'[', "");
+		for (COSObject item : (COSArray)obj)
+			if ( (data = serialize(item, data, size, false)) == null)
+				return null;
+		return append(data, (byte)']', "");
+	}
+	if (obj instanceof COSStream)
+	{
+		COSStream	stream	= (COSStream)obj;
+		if ( (data = serializeDict(stream.getDict(), data, size)) == null)
+			return null;
+		// stream bytes, possibly large, are only added as their own hash
+		byte[]		bytes	= stream.getEncodedBytes();
+		size[0]	+= bytes.length;
+		streamMd.reset();
+		return append(data, (byte)'S', streamMd.digest(bytes));
+	}
+	if (obj instanceof COSDictionary)
+		return serializeDict((COSDictionary)obj, data, size);
+	return append(data, (byte)'n', "");
+}
+
+/* Dictionary entries are serialized sorted by key, as their order is irrelevant. */
+
+private ByteBuffer serializeDict(COSDictionary dict, ByteBuffer data, long[] size)
+{
+	int				numOfKeys	= dict.size();
+	COSName[]		keys		= new COSName[numOfKeys];
+	String[]		keyStrings	= new String[numOfKeys];
+	HashMap<String, COSName>	byString	= new HashMap<String, COSName>();
+	int				i			= 0;
+	@SuppressWarnings("unchecked")
+	Iterator<COSDictionary.Entry>	iter	= dict.entryIterator();
+	while (iter.hasNext() && i < numOfKeys)
+	{
+		keys[i]			= (COSName)iter.next().getKey();
+		keyStrings[i]	= keys[i].stringValue();
+		byString.put(keyStrings[i], keys[i]);
+		i++;
+	}
+	Arrays.sort(keyStrings, 0, i);
+	data	= append(data, (byte)'<', "");
+	for (int j = 0; j < i; j++)
+	{
+		COSName	key		= byString.get(keyStrings[j]);
+		if (key.equals(CN_Length))				// depends on the encoding, already hashed
+			continue;
+		data	= append(data, (byte)'/', key.byteValue());
+		if ( (data = serialize(dict.get(key), data, size, false)) == null)
+			return null;
+	}
+	return append(data, (byte)'>', "");
+}
+
+private static ByteBuffer append(ByteBuffer data, byte tag, String str)
+{
+	return append(data, tag, str.getBytes(StandardCharsets.ISO_8859_1));
+}
+
+/* Appends a tag, a length and some bytes, growing the buffer as needed. */
+
+private static ByteBuffer append(ByteBuffer data, byte tag, byte[] bytes)
+{
+	if (data.remaining() < bytes.length + 5)
+	{
+		ByteBuffer	newData	= ByteBuffer.allocate(Math.max(data.capacity() * 2,
+				data.position() + bytes.length + 5));
+		data.flip();
+		newData.put(data);
+		data	= newData;
+	}
+	data.put(tag).putInt(bytes.length).put(bytes);
+	return data;
+}
+
+/******************
+	Children
+*******************
+
+Returns the objects directly contained in an object. */
+
+private static Iterable<COSObject> children(COSObject obj)
+{
+	ArrayList<COSObject>	children	= new ArrayList<COSObject>();
+	COSDictionary	dict	= obj instanceof COSStream ? ((COSStream)obj).getDict()
+			: obj instanceof COSDictionary ? (COSDictionary)obj : null;
+	if (dict != null)
+	{
+		@SuppressWarnings("unchecked")
+		Iterator<COSDictionary.Entry>	iter	= dict.entryIterator();
+		while (iter.hasNext())
+			children.add((COSObject)iter.next().getValue());
+	}
+	else if (obj instanceof COSArray)
+		for (COSObject item : (COSArray)obj)
+			children.add(item);
+	return children;
+}
+
+}
@@ -0,0 +1,322 @@
+/****************************
+	j P D F i  -  A Java application to apply an imposition to a PDF document.
+
+	JPDIDocCache.java - Keeps a bounded number of source documents open
+
+	Created by : Maurizio M. Gavioli 2026-10-18
+
+	This program is free software; you can redistribute it and/or modify
+	it under the terms of the GNU General Public License as published by
+	the Free Software Foundation; either version 2 of the License, or
+	(at your option) any later version.
+	This program is distributed in the hope that it will be useful,
+	but WITHOUT ANY WARRANTY; without even the implied warranty of
+	MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+	GNU General Public License for more details.
+	You should have received a copy of the GNU General Public License along
+	with this program; if not, write to the Free Software Foundation, Inc.,
+	51 Franklin Street, Fifth Floor, Boston, MA 02110-1301 USA.
+
+*****************************/
+
+package com.vistamaresoft.jpdfi;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+
+import de.intarsys.pdf.parser.COSLoadException;
+import de.intarsys.pdf.pd.PDDocument;
+import de.intarsys.tools.locator.FileLocator;
+
+/******************
+	CLASS JPDIDocCache
+*******************
+
+A cache of open source documents, shared by all the uses of the same file.
+
+A document is acquired before being used and released after; a document acquired and not yet
+released is in use and is never closed. When the documents open exceed the maximum number or the
+maximum total size (the sum of the file sizes, as an estimate of the memory they take), the
+documents not in use are closed, least recently used first, until back within limits; the close
+listener, if any, is told of each document the cache closes. */
+
+public class JPDIDocCache
+{
+// PUBLIC DEFINITIONS
+
+/* Told of the documents the cache closes, before they are closed: a document acquired again
+afterwards is re-opened as a new PDDocument, so anything kept about the objects of the closed one
+(by their document, typically) can be dropped. */
+
+public interface JPDICloseListener
+{
+	void documentClosing(PDDocument doc);
+}
+
+// Data about an open document
+
+private class JPDICachedDoc
+{
+	PDDocument	doc;
+	long		size;			// the file size
+	int			users;			// how many acquire() are not yet matched by a release()
+}
+
+// FIELDS
+
+private boolean								mapped;			// read documents through memory mappings
+private int									maxOpenDocs;	// 0 = no limit
+private long								maxOpenBytes;	// 0 = no limit
+private long								openBytes;		// the size of the documents open
+private LinkedHashMap<String, JPDICachedDoc>	docs;		// by file path, least recently used first
+private JPDICloseListener					listener;		// null = none
+private JPDIReport							report;
+
+/******************
+	C'tor
+*******************/
+
+public JPDIDocCache()
+{
+	mapped			= false;
+	maxOpenDocs		= 0;
+	maxOpenBytes	= 0;
+	openBytes		= 0;
+	docs			= new LinkedHashMap<String, JPDICachedDoc>(16, 0.75f, true);
+	listener		= null;
+	report			= JPDIReport.DISABLED;
+}
+
+/******************
+	Getters / Setters
+*******************/
+
+public int	numOfOpenDocs()						{ return docs.size();				}
+
+/* Whether a document has been acquired and not yet released as many times. */
+
+public boolean isInUse(String fileName)
+{
+	JPDICachedDoc	entry	= docs.get(key(fileName));
+	return entry != null && entry.users > 0;
+}
+
+/* Sets whether documents are read through memory-mapped regions of their files (see
+JPDIMappedLocator) rather than through plain file reads (the default); documents open and not in
+use are closed, to be re-opened in the new way when needed. */
+
+public void setMapped(boolean mapped)
+{
+	if (mapped == this.mapped)
+		return;
+	this.mapped	= mapped;
+	Iterator<JPDICachedDoc>	iter	= docs.values().iterator();
+	while (iter.hasNext())
+	{
+		JPDICachedDoc	entry	= iter.next();
+		if (entry.users > 0)
+			continue;
+		closeCached(entry.doc);
+		openBytes	-= entry.size;
+		iter.remove();
+	}
+}
+
+public void setCloseListener(JPDICloseListener listener)	{ this.listener = listener;	}
+public void setReport(JPDIReport report)			{ this.report = report;				}
+
+public void setMaxOpenDocs(int maxOpenDocs)
+{
+	this.maxOpenDocs	= maxOpenDocs < 0 ? 0 : maxOpenDocs;
+	evict();
+}
+
+public void setMaxOpenBytes(long maxOpenBytes)
+{
+	this.maxOpenBytes	= maxOpenBytes < 0 ? 0 : maxOpenBytes;
+	evict();
+}
+
+/******************
+	Acquire a document
+*******************
+
+Returns the document for a file, opening it if not open yet, and marks it as in use.
+
+Parameters:	fileName:	the file name of the document
+Returns:	the document | null = the document cannot be opened */
+
+public PDDocument acquire(String fileName)
+{
+	String			key		= key(fileName);
+	JPDICachedDoc	entry	= docs.get(key);
+	if (entry == null)
+	{
+		PDDocument	doc		= open(fileName);
+		if (doc == null)
+			return null;
+		entry		= new JPDICachedDoc();
+		entry.doc	= doc;
+		entry.size	= new File(fileName).length();
+		docs.put(key, entry);
+		openBytes	+= entry.size;
+	}
+	entry.users++;
+	evict();
+	return entry.doc;
+}
+
+/******************
+	Add a document
+*******************
+
+Adds a document opened by the caller with open(), not in use; if a document for the same file is
+open already (e.g. opened meanwhile by another thread), the given one is closed instead. This
+allows documents to be opened and parsed (the long part) out of any lock on the cache.
+
+Parameters:	fileName:	the file name of the document
+			doc:		the document
+Returns:	none */
+
+public void add(String fileName, PDDocument doc)
+{
+	String			key		= key(fileName);
+	if (docs.containsKey(key))
+	{
+		close(doc);
+		return;
+	}
+	JPDICachedDoc	entry	= new JPDICachedDoc();
+	entry.doc	= doc;
+	entry.size	= new File(fileName).length();
+	docs.put(key, entry);
+	openBytes	+= entry.size;
+	evict();
+}
+
+/******************
+	Release a document
+*******************
+
+Marks a document previously acquired as no longer used by the caller; the document may then be
+closed, if the open documents exceed the limits.
+
+Parameters:	fileName:	the file name of the document
+Returns:	none */
+
+public void release(String fileName)
+{
+	JPDICachedDoc	entry	= docs.get(key(fileName));
+	if (entry == null || entry.users < 1)
+		return;
+	entry.users--;
+	evict();
+}
+
+/******************
+	Close all documents
+*******************
+
+Closes all the documents, whether in use or not.
+
+Parameters:	none
+Returns:	true = all documents closed | false = some document could not be closed */
+
+public boolean closeAll()
+{
+	boolean	result	= true;
+	for (JPDICachedDoc entry : docs.values())
+		result &= closeCached(entry.doc);
+	docs.clear();
+	openBytes	= 0;
+	return result;
+}
+
+/******************
+	Eviction
+*******************
+
+Closes the least recently used documents not in use, while the limits are exceeded. */
+
+private void evict()
+{
+	Iterator<JPDICachedDoc>	iter	= docs.values().iterator();
+	while (iter.hasNext() && overLimits())
+	{
+		JPDICachedDoc	entry	= iter.next();
+		if (entry.users > 0)
+			continue;
+		closeCached(entry.doc);
+		openBytes	-= entry.size;
+		iter.remove();
+	}
+}
+
+private boolean overLimits()
+{
+	return (maxOpenDocs > 0 && docs.size() > maxOpenDocs)
+			|| (maxOpenBytes > 0 && openBytes > maxOpenBytes);
+}
+
+/******************
+	Open / close
+*******************/
+
+private String key(String fileName)
+{
+	File	file	= new File(fileName);
+	try {
+		return file.getCanonicalPath();
+	}
+	catch (IOException e) {
+		return file.getAbsolutePath();
+	}
+}
+
+protected PDDocument open(String fileName)
+{
+	FileLocator	locator	= mapped ? new JPDIMappedLocator(fileName) : new FileLocator(fileName);
+	PDDocument	doc;
+	long[]		mark	= report.begin(JPDIReport.Stage.open);
+	try {
+		doc = PDDocument.createFromLocator(locator);
+	}
+	catch (IOException e) {
+		System.err.println("Error opening file : " + fileName);
+		return null;
+	}
+	catch (COSLoadException e) {
+			System.err.println("Error parsing file : " + fileName);
+			return null;
+	}
+	finally {
+		report.end(JPDIReport.Stage.open, mark);
+	}
+	return doc;
+}
+
+/* Closes a document of the cache, telling the listener first. */
+
+private boolean closeCached(PDDocument doc)
+{
+	if (listener != null)
+		listener.documentClosing(doc);
+	return close(doc);
+}
+
+protected boolean close(PDDocument doc)
+{
+	try {
+		doc.close();
+	}
+	catch (IOException e) {
+		System.err.println("Error closing document from file " + doc.getLocator().getFullName()
+				+ ": " + e.getMessage());
+		return false;
+	}
+	return true;
+}
+
+}
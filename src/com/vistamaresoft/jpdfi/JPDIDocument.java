@@ -21,14 +21,27 @@
 
 package com.vistamaresoft.jpdfi;
 
+import java.io.ByteArrayOutputStream;
 import java.io.File;
 import java.io.FileInputStream;
 import java.io.FileNotFoundException;
 import java.io.IOException;
+import java.io.PrintStream;
+import java.nio.ByteBuffer;
+import java.util.ArrayDeque;
 import java.util.ArrayList;
+import java.util.Collections;
 import java.util.HashMap;
+import java.util.IdentityHashMap;
+import java.util.Iterator;
 //import java.util.Observable;
 import java.util.TreeSet;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorCompletionService;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
 
 import javax.xml.stream.XMLInputFactory;
 import javax.xml.stream.XMLStreamConstants;
@@ -56,6 +69,7 @@ import de.intarsys.pdf.font.PDFontType1;
 import de.intarsys.pdf.parser.COSLoadException;
 import de.intarsys.pdf.pd.PDDocument;
 import de.intarsys.pdf.pd.PDExplicitDestination;
+import de.intarsys.pdf.pd.PDForm;
 import de.intarsys.pdf.pd.PDOutline;
 import de.intarsys.pdf.pd.PDOutlineItem;
 import de.intarsys.pdf.pd.PDPage;
@@ -75,7 +89,8 @@ public class JPDIDocument /*extends Object*/
 private static final int		FRONT_PAGE		= 0;			// for indices into pageOffsetX/Y
 private static final int		BACK_PAGE		= 1;
 private static final int		INVALID_PARAM	= -1000000;		// used as rejected parameter value
-public static final boolean		dontOpenAllDocs	= false;
+private static final int		MAX_OPEN_THREADS	= 8;		// max. source documents opened at once
+private static final int		CONTENT_BUFFER_SIZE	= 16384;	// initial size of a dest. page content
 
 // Data about a source document
 
@@ -85,7 +100,6 @@ private class JPDISourceDoc
 	private	int			fromPage, toPage;	// this document is used from page fromPage to page toPage
 	private	int			numOfPages;			// number of pages this document will provide
 	private	int			pageNoOffset;		// the offset from page number to page sequence index
-			PDDocument	doc;				// the document itself
 
 	public void	setFromPage(int val)
 	{
@@ -103,6 +117,53 @@ private class JPDISourceDoc
 	}
 }
 
+// Data about an input or append document of a parameter file, until the document is opened
+
+private class JPDIInputSpec
+{
+	String		fileName;
+	boolean		append;
+	int			pageNoOffset;
+	int			fromPage;			// INVALID_PARAM = not set
+	int			toPage;				// INVALID_PARAM = not set
+	boolean		signatureBreak;
+}
+
+// Data about a source page placed as a Form XObject
+
+private class JPDIPageForm
+{
+	COSName		name;				// the name the form is known by in destination page resources
+	PDForm		form;				// the form itself, shared by all the placements of the page
+}
+
+// Data about a signature while being composed
+
+private class JPDISignature
+{
+	int					signNo;				// the signature no. (0-based)
+	int					numOfDestPages;
+	CDSRectangle		destBox;			// the box of each dest. page
+	float				destPageWidth;		// the size of each page position within a dest. page
+	float				destPageHeight;
+	PDPage				srcPages[];			// the source page of each signature page, if any
+	CDSRectangle		srcBoxes[];			// their boxes
+	JPDIPageForm		srcForms[];			// their forms, if pages are placed as forms
+	String				srcPageDocs[];		// their documents and page nos. (0-based), for JFR events
+	int					srcPageNos[];
+	ArrayList<PDPage>	singlePages;		// the out-of-sequence source pages
+	ArrayList<Integer>	singleGlueTo;		// the page each of them is to be glued to
+	ArrayList<String>	singleDocs;			// their documents and page nos., for JFR events
+	ArrayList<Integer>	singlePageNos;
+	ArrayList<String>	srcDocNames;		// the source documents used, to release when committed
+	ArrayList<PDDocument>	srcDocs;		// the same documents
+	PDPage				destPage[];			// the composed dest. pages
+	JPDIContentWriter	destContent[];		// their contents, added when committed
+	JPDIResourceMerger	merger;				// the resources of the composed dest. pages
+	IdentityHashMap<COSObject, ByteBuffer>	resHashes;	// with dedup, the hash of each shared resource
+	boolean				reused;				// unchanged: dest. pages come from the previous output
+}
+
 // Data about the current source status
 
 private class JPDISourceStatus /*extends Observable*/
@@ -137,6 +198,14 @@ private class JPDISourceStatus /*extends Observable*/
 	*******************/
 
 	public PDDocument currDoc()		{ return currDoc;	}
+	public int currDocPageNo()		{ return currDocPageNo;	}
+
+	public String currDocName()
+	{
+		if (currDoc == null)
+			return null;
+		return (append ? appendDocs : srcDocs).get(currDocNo).fileName;
+	}
 
 	public boolean hasAppend()
 	{
@@ -169,14 +238,10 @@ private class JPDISourceStatus /*extends Observable*/
 			// get next doc, if any
 			if (docList != null && currDocNo < docList.size()-1)
 			{
-if (dontOpenAllDocs)
-	closeSrcDoc(currDoc);
+				releaseCurrDoc();
 				currDocNo++;
 				JPDISourceDoc	srcDoc	= docList.get(currDocNo);
-if (dontOpenAllDocs)
-	currDoc = openSrcDoc(docList.get(currDocNo).fileName);
-else
-	currDoc = srcDoc.doc;
+				currDoc = docCache.acquire(srcDoc.fileName);
 //				setChanged();
 				if (currDoc != null)
 				{
@@ -207,11 +272,37 @@ else
 		return 0;
 	}
 
+	/* Whether a document is among the documents still to start. */
+
+	public boolean usesLater(String fileName)
+	{
+		ArrayList<JPDISourceDoc> docList = append ? appendDocs : srcDocs;
+		for (int i = currDocNo + 1; i < docList.size(); i++)
+			if (docList.get(i).fileName.equals(fileName))
+				return true;
+		if (!append)
+			for (JPDISourceDoc doc : appendDocs)
+				if (doc.fileName.equals(fileName))
+					return true;
+		return false;
+	}
+
+	/* Releases the current document, if any, to the document cache. */
+
+	public void releaseCurrDoc()
+	{
+		if (currDoc == null)
+			return;
+		docCache.release(currDocName());
+		currDoc = null;
+	}
+
 	public PDPage startAppend()
 	{
 		// if already in append mode or no doc to append, fail
 		if (append || appendDocs.size() < 1)
 			return null;
+		releaseCurrDoc();
 		append = true;
 		currPage = null;
 		currDocNo = -1;
@@ -228,36 +319,48 @@ else
 		return totPages;
 	}
 
+	/* Returns the page count of a source document, probing the file (see JPDIProbe) and opening it
+	only if the probe fails; -1 if the document cannot be opened. Can be called from several threads
+	at once, as the source documents are opened concurrently (see addInputs()): the document is
+	opened and parsed by the calling thread, and only added to the document cache under its lock.
+	A file the probe can read is not parsed here: any error in it is met when its pages are imposed. */
+
+	public int numOfPages(String fileName)
+	{
+		JPDIProbe.JPDIProbeInfo	info	= JPDIProbe.probe(fileName);
+		if (info != null)
+			return info.numOfPages;
+		PDDocument	doc		= docCache.open(fileName);
+		if (doc == null)
+			return -1;
+		int			numOfPages	= doc.getPageTree().getCount();
+		// kept open for imposition (closed instead, if another thread opened the same file)
+		synchronized (docCache)
+		{
+			docCache.add(fileName, doc);
+		}
+		return numOfPages;
+	}
+
 	/******************
 		ADD A NEW SOURCE DOCUMENT
 	*******************/
 
 	public JPDISourceDoc addSrcDoc(String fileName)
 	{
-		PDDocument	doc = null;
-		// check this source document already exists
-		for (JPDISourceDoc currDoc : srcDocs)
-		{
-			if (currDoc.fileName.equals(fileName))
-			{
-				doc = currDoc.doc;		// found!
-				break;
-			}
-		}
-		if (doc == null)				// if none found, create a new one
-			doc	= openSrcDoc(fileName);
-		if (doc == null)				// if still no doc => failure
+		int			numOfPages	= numOfPages(fileName);
+		if (numOfPages < 0)
 			return null;
-		PDPageTree	pageTree 	= doc.getPageTree();
-		int			numOfPages	= pageTree.getCount();
-if (dontOpenAllDocs)
-	if (!closeSrcDoc(doc))
-		return null;
+		return addSrcDoc(fileName, numOfPages);
+	}
+
+	/* Adds a source document whose page count is already known. */
+
+	public JPDISourceDoc addSrcDoc(String fileName, int numOfPages)
+	{
 		// create a new JPDISourceDoc and add it to the list
 		JPDISourceDoc	srcDoc	= new JPDISourceDoc();
 		srcDoc.fileName			= fileName;
-if (!dontOpenAllDocs)
-	srcDoc.doc				= doc;
 		srcDoc.numOfPages		= numOfPages;
 		srcDoc.fromPage			= 0;
 		srcDoc.toPage			= numOfPages - 1;
@@ -273,25 +376,23 @@ if (!dontOpenAllDocs)
 
 	public JPDISourceDoc addAppendDoc(String fileName)
 	{
-		PDDocument	doc	= openSrcDoc(fileName);
-		if (doc == null)
+		int			numOfPages	= numOfPages(fileName);
+		if (numOfPages < 0)
 			return null;
-		PDPageTree	pageTree 	= doc.getPageTree();
-		int			numOfPages	= pageTree.getCount();
-if (dontOpenAllDocs)
-	if (!closeSrcDoc(doc))
-		return null;
+		return addAppendDoc(fileName, numOfPages);
+	}
+
+	public JPDISourceDoc addAppendDoc(String fileName, int numOfPages)
+	{
 		// create a new JPDISourceDoc and add it to the list
 		JPDISourceDoc	srcDoc	= new JPDISourceDoc();
 		srcDoc.fileName			= fileName;
-if (!dontOpenAllDocs)
-	srcDoc.doc				= doc;
 		srcDoc.numOfPages		= numOfPages;
 		srcDoc.fromPage			= 0;
 		srcDoc.toPage			= numOfPages - 1;
 		// inherit page num. offset from previous document
 		if (appendDocs.size() > 0)
-			srcDoc.pageNoOffset	= srcDocs.get(appendDocs.size()-1).pageNoOffset;
+			srcDoc.pageNoOffset	= appendDocs.get(appendDocs.size()-1).pageNoOffset;
 		appendDocs.add(srcDoc);
 		return srcDoc;
 	}
@@ -301,20 +402,38 @@ if (!dontOpenAllDocs)
 
 private PDDocument				dstDoc;
 private HashMap<Integer,String>	bookmarks;
+private JPDICompressor			compressor;		// compresses the streams created for dest. pages
+private JPDICopyMap				copyMap;		// the copy map of the imposition in progress; null = none
+private JPDIDocCache			docCache;		// the source documents currently open
+private JPDIDedup				dedup;			// shares identical objects; null = no dedup
 private TreeSet<Integer>		foldOutList;
 private JPDImposition.Format	format;
+private boolean					incremental;	// re-use the unchanged signatures of the previous output
+private JPDIIncremental			incr;			// the incremental data of the current run, if any
 private int						formatSubParam;
 private JPDImposition			impo;
 private PDFont					impoFont;
 private COSName					impoFontName;
 private int						maxSheetsPerSign;
+private int						numOfThreads;	// how many signatures can be composed in parallel
+private int						objStmSize;		// max. objects per object stream; 0 = no object streams
 private String					outputFileName;
+private IdentityHashMap<COSDictionary, JPDIPageForm>	pageForms;	// source page forms, by source page
+private int						pageFormCount;
+private JPDIPageTreeBuilder		pageTree;		// builds the dest. page tree, when not streaming
+private int						pageTreeFanOut;	// max. kids per page tree node
+private JPDIPlanCache			planCache;		// computed plans, by their parameters; null = no cache
+private long					planCacheBytes;	// max. size of the plan cache on disk; 0 = default
 private double					pageOffsetX[]	= { 0.0, 0.0 };
 private double					pageOffsetY[]	= { 0.0, 0.0 };
 private double					pageSizeX		= 0.0;
 private double					pageSizeY		= 0.0;
+private boolean					placeAsForms;	// place source pages as Form XObjects rather than copying them
+private JPDIReport				report;			// the run report; DISABLED = no report
 private TreeSet<Integer>		signBreakList;
 private JPDISourceStatus		srcStatus;
+private boolean					streamingSave;	// write dest. pages as soon as they are complete
+private JPDIStreamWriter		writer;			// the writer, when streaming
 
 /******************
 	C'tors
@@ -335,6 +454,27 @@ public JPDIDocument(String fileName)
 private void init()
 {
 	dstDoc				= null;
+	report				= JPDIReport.DISABLED;
+	compressor			= new JPDICompressor();
+	if (docCache == null)
+	{
+		docCache		= new JPDIDocCache();
+		// a source document closed by the cache is re-opened as a new document, if needed again:
+		// what is kept about the objects of the closed one would never be dropped
+		docCache.setCloseListener(new JPDIDocCache.JPDICloseListener()
+		{
+			public void documentClosing(PDDocument doc)
+			{
+				if (copyMap != null)
+					evictSourceDoc(doc, copyMap);
+			}
+		});
+	}
+	copyMap				= null;
+	docCache.setReport(report);
+	dedup				= null;
+	incremental			= false;
+	incr				= null;
 	if (bookmarks == null)
 		bookmarks		= new HashMap<Integer, String>();
 	if (foldOutList == null)
@@ -346,10 +486,24 @@ private void init()
 	else
 		signBreakList.clear();
 	outputFileName		= null;
+	if (pageForms == null)
+		pageForms		= new IdentityHashMap<COSDictionary, JPDIPageForm>();
+	else
+		pageForms.clear();
+	pageFormCount		= 0;
+	pageTree			= null;
+	pageTreeFanOut		= JPDIPageTreeBuilder.DEFAULT_FAN_OUT;
+	placeAsForms		= false;
+	streamingSave		= false;
+	objStmSize			= 0;
+	writer				= null;
 	impo				= new JPDImposition();
+	planCache			= null;
+	planCacheBytes		= 0;
 	impoFont			= null;
 	format				= impo.format();
 	maxSheetsPerSign	= impo.maxSheetsPerSignature();
+	numOfThreads		= 1;
 	pageOffsetX[FRONT_PAGE]	= pageOffsetX[BACK_PAGE]
 			= pageOffsetY[FRONT_PAGE] = pageOffsetY[BACK_PAGE] = 0.0;
 	if (srcStatus == null)
@@ -357,12 +511,116 @@ private void init()
 	srcStatus.init();
 }
 
+/******************
+	Preflight
+*******************
+Computes the imposition plan from the page count and the media box of each source document only,
+without reading any page content nor creating the dest. document, and writes it as JSON (see
+JPDIPreflight). The media box is the default one of the page tree root, as probed (see JPDIProbe);
+only documents which cannot be probed or have no default media box are opened, for the media box of
+their first page used.
+
+Parameters:	out:	where to write to
+Returns:	true = success | false = unrecoverable failure */
+
+public boolean preflight(PrintStream out)
+{
+	if (format == JPDImposition.Format.none)
+	{
+		System.err.println("No plan to preflight for format 'none'.");
+		return false;
+	}
+	JPDIPreflight	preflight	= new JPDIPreflight();
+	for (JPDISourceDoc srcDoc : srcStatus.srcDocs)
+	{
+		JPDIProbe.JPDIProbeInfo	info	= JPDIProbe.probe(srcDoc.fileName);
+		float[]		box		= info != null ? info.mediaBox : null;
+		if (box == null)
+		{
+			PDDocument	doc	= docCache.acquire(srcDoc.fileName);
+			if (doc == null)
+				return false;
+			PDPage		page	= doc.getPageTree().getPageAt(srcDoc.fromPage);
+			if (page != null && page.getMediaBox() != null)
+			{
+				CDSRectangle	rect	= page.getMediaBox().copy().normalize();
+				box	= new float[] { rect.getLowerLeftX(), rect.getLowerLeftY(),
+						rect.getUpperRightX(), rect.getUpperRightY() };
+			}
+			docCache.release(srcDoc.fileName);
+		}
+		preflight.addInput(srcDoc.fileName, srcDoc.numOfPages, srcDoc.fromPage, box);
+	}
+	long[]	mark	= report.begin(JPDIReport.Stage.plan);
+	try {
+		impo.setFormat(format, formatSubParam, maxSheetsPerSign, srcStatus.totPages(), signBreakList, foldOutList);
+	} catch (CloneNotSupportedException e) {
+		System.err.println("Error while processing the format: " + e.getMessage());
+		return false;
+	} finally {
+		report.end(JPDIReport.Stage.plan, mark);
+	}
+	preflight.write(out, impo, foldOutList, pageSizeX, pageSizeY);
+	closeSources();
+	return true;
+}
+
 /******************
 	Apply the imposition
 *******************
 Fills the document with data from sourceDoc according to impo. */
 
 public boolean impose()
+{
+	JPDIEvents.JPDIImposeEvent	event	= new JPDIEvents.JPDIImposeEvent();
+	event.begin();
+	boolean	result	= false;
+	try {
+		result	= imposeSignatures();
+	}
+	finally {
+		copyMap	= null;
+		// save() will not be called: leave the previous output, if any, as it was
+		if (!result)
+			abortOutput();
+	}
+	event.end();
+	if (event.shouldCommit())
+	{
+		event.format		= format.name();
+		event.sourcePages	= srcStatus.totPages();
+		event.succeeded		= result;
+		event.commit();
+	}
+	return result;
+}
+
+/* Closes the output being written, if any, after a failure, and restores the previous output of an
+incremental run. */
+
+private void abortOutput()
+{
+	if (writer != null)
+	{
+		writer.abort();
+		writer	= null;
+	}
+	if (incr != null)
+	{
+		incr.finish(false);
+		incr	= null;
+	}
+}
+
+/* Returns the file the output is to be written to: the output file itself, or a temporary file when
+the previous output is read by an incremental run (see JPDIIncremental.saveFileName()). */
+
+private String saveFileName()
+{
+	return incr != null ? incr.saveFileName() : outputFileName;
+}
+
+private boolean imposeSignatures()
 {
 	// Format.none special case
 	if (format == JPDImposition.Format.none)
@@ -375,154 +633,564 @@ public boolean impose()
 	PDDocument			srcDoc 		= srcStatus.currDoc();
 	if (srcDoc == null)
 		return false;
+	// the previous output shall be opened before the new one is created beside it
+	if (incremental && outputFileName != null)
+	{
+		incr	= new JPDIIncremental(outputFileName);
+		incr.open(planKey());
+	}
 	if (!createDestDocument(srcDoc))
 		return false;
 	int					currSignNo	= 0;
-	JPDIResourceMerger	merger 		= null;
 	ArrayList<PDPage>	singlePages	= new ArrayList<PDPage>();
+	long[]	mark	= report.begin(JPDIReport.Stage.plan);
 	try {
 		impo.setFormat(format, formatSubParam, maxSheetsPerSign, srcStatus.totPages(), signBreakList, foldOutList);
 	} catch (CloneNotSupportedException e) {
 		System.err.println("Error while processing the format: " + e.getMessage());
 		e.printStackTrace();
 	}
-	HashMap<COSIndirectObject, COSCompositeObject> resMap =
-			new HashMap<COSIndirectObject, COSCompositeObject>();
+	report.end(JPDIReport.Stage.plan, mark);
+	JPDICopyMap			resMap		= new JPDICopyMap();
+	copyMap	= resMap;
+
+	// signatures are gathered and committed in sequence, but may be composed in parallel;
+	// at most 2 signatures per thread are kept in memory at any time
+	ExecutorService						pool	= numOfThreads > 1 ?
+			Executors.newFixedThreadPool(numOfThreads) : null;
+	ArrayDeque<Future<JPDISignature>>	pending	= new ArrayDeque<Future<JPDISignature>>();
+	try {
+		// for each signature
+		while (currSrcPage != null)
+		{
+			final JPDISignature	sign	= new JPDISignature();
+			sign.signNo	= currSignNo++;
+			currSrcPage	= gatherSignature(sign, currSrcPage);
+			if (incr != null)
+				sign.reused	= incr.checkSignature(sign.signNo,
+						sign.numOfDestPages + " " + sign.destPageWidth + " " + sign.destPageHeight,
+						sign.numOfDestPages, sign.srcPages, sign.srcPageDocs, sign.srcPageNos);
+			if (pool == null)
+			{
+				if (!sign.reused)
+					composeSignature(sign);
+				commitSignature(sign, singlePages, resMap);
+				continue;
+			}
+			pending.add(pool.submit(new Callable<JPDISignature>()
+			{
+				public JPDISignature call()
+				{
+					if (!sign.reused)
+						composeSignature(sign);
+					return sign;
+				}
+			}));
+			while (pending.size() >= numOfThreads * 2)
+				commitSignature(pending.remove().get(), singlePages, resMap);
+		}
+		while (!pending.isEmpty())
+			commitSignature(pending.remove().get(), singlePages, resMap);
+	}
+	catch (InterruptedException e) {
+		System.err.println("Interrupted while composing signatures.");
+		Thread.currentThread().interrupt();		// for the caller to know
+		return false;
+	}
+	catch (ExecutionException e) {
+		// report what composeSignature() threw, not its wrapper
+		Throwable	cause	= e.getCause();
+		System.err.println("Error while composing signatures: " + cause);
+		cause.printStackTrace();
+		return false;
+	}
+	finally {
+		if (pool != null)
+			pool.shutdownNow();
+	}
+	// add single pages, if any
+	for (int i = 0; i < singlePages.size(); i++)
+			addDestPage(singlePages.get(i));
+	// add appended documents, if any, after the single pages, as when not streaming
+	if (srcStatus.hasAppend())
+	{
+		if (writer != null)
+			writer.placeTrailingPages();
+		currSrcPage = srcStatus.startAppend();
+		return concatenate(resMap);
+	}
+	return true;
+}
 
-	// for each signature
-	while (currSrcPage != null)
+/* Returns a description of all the parameters the dest. pages of an imposition depend on, for the
+incremental manifest: if any of them changes, no signature of the previous output is re-used. */
+
+private String planKey()
+{
+	StringBuilder	key	= new StringBuilder();
+	key.append(format).append(' ').append(formatSubParam).append(' ').append(maxSheetsPerSign)
+		.append(' ').append(srcStatus.totPages()).append(' ').append(signBreakList)
+		.append(' ').append(foldOutList).append(' ').append(pageOffsetX[FRONT_PAGE])
+		.append(' ').append(pageOffsetX[BACK_PAGE]).append(' ').append(pageOffsetY[FRONT_PAGE])
+		.append(' ').append(pageOffsetY[BACK_PAGE]).append(' ').append(pageSizeX)
+		.append(' ').append(pageSizeY).append(' ').append(placeAsForms)
+		.append(' ').append(compressor.level());
+	for (JPDISourceDoc doc : srcStatus.srcDocs)
+		key.append('\n').append(doc.fileName).append(' ').append(doc.fromPage).append(' ')
+			.append(doc.toPage).append(' ').append(doc.pageNoOffset);
+	return key.toString();
+}
+
+/******************
+	Gather a signature
+*******************
+Collects from the source documents the pages of a signature and any data the signature composition
+needs from them. Source documents are only read here, always in the main thread and in sequence,
+so that the composition may later run in any thread.
+
+Parameters:	sign:			the signature to fill; signNo shall already be set
+			currSrcPage:	the first source page of the signature
+Returns:	the first source page after the signature, if any */
+
+protected PDPage gatherSignature(JPDISignature sign, PDPage currSrcPage)
+{
+	int		currSignNo			= sign.signNo;
+	int		numOfSourcePages	= impo.numOfSourcePagesPerSignature(currSignNo);
+	sign.numOfDestPages	= impo.numOfDestPagesPerSignature(currSignNo);
+	// get destination media box from source page media box
+	sign.destBox		= currSrcPage.getMediaBox().copy().normalize();
+	// set dimensions, if given as parameters
+	if (pageSizeX > 0.0)
+		sign.destBox.setWidth((float)pageSizeX);
+	if (pageSizeY > 0.0)
+		sign.destBox.setHeight((float)pageSizeY);
+	sign.destPageHeight	= sign.destBox.getHeight();
+	sign.destPageWidth	= sign.destBox.getWidth();
+	// enlarge to forme sizes
+	sign.destBox.setHeight(sign.destPageHeight * impo.numOfRows());
+	sign.destBox.setWidth (sign.destPageWidth  * impo.numOfCols());
+
+	sign.srcPages		= new PDPage[numOfSourcePages];
+	sign.srcBoxes		= new CDSRectangle[numOfSourcePages];
+	sign.srcForms		= new JPDIPageForm[numOfSourcePages];
+	sign.srcPageDocs	= new String[numOfSourcePages];
+	sign.srcPageNos		= new int[numOfSourcePages];
+	sign.singlePages	= new ArrayList<PDPage>();
+	sign.singleGlueTo	= new ArrayList<Integer>();
+	sign.singleDocs		= new ArrayList<String>();
+	sign.singlePageNos	= new ArrayList<Integer>();
+	sign.srcDocNames	= new ArrayList<String>();
+	sign.srcDocs		= new ArrayList<PDDocument>();
+	sign.resHashes		= dedup != null ? new IdentityHashMap<COSObject, ByteBuffer>() : null;
+	for (int currSignPageNo = 0;
+		currSrcPage != null && currSignPageNo < numOfSourcePages;
+			currSignPageNo++)
 	{
-		int		numOfDestPages = impo.numOfDestPagesPerSignature(currSignNo);
-		if (merger == null)
+		// source documents shall stay open until the signature is committed
+		String	docName	= srcStatus.currDocName();
+		if (!sign.srcDocNames.contains(docName))
 		{
-			merger = new JPDIResourceMerger(/*dstDoc,*/ numOfDestPages);
-//			srcStatus.addObserver(merger);
+			docCache.acquire(docName);
+			sign.srcDocNames.add(docName);
+			sign.srcDocs.add(srcStatus.currDoc());
 		}
-		else
-			merger.setNumOfDestPages(numOfDestPages);
-		// get destination media box from source page media box
-		CDSRectangle destBox	= currSrcPage.getMediaBox().copy().normalize();
-		// set dimensions, if given as parameters
-		if (pageSizeX > 0.0)
-			destBox.setWidth((float)pageSizeX);
-		if (pageSizeY > 0.0)
-			destBox.setHeight((float)pageSizeY);
-		float destPageHeight	= destBox.getHeight();
-		float destPageWidth		= destBox.getWidth();
-		// enlarge to forme sizes
-		destBox.setHeight(destPageHeight * impo.numOfRows());
-		destBox.setWidth (destPageWidth  * impo.numOfCols());
-
-		// create arrays to hold destination pages (and their appendages) for the whole signature
-		PDPage			destPage[]		= new PDPage[numOfDestPages];
-		CSContent		destContent[]	= new CSContent[numOfDestPages];
-		CSCreator		destCreator[]	= new CSCreator[numOfDestPages];
-		COSDictionary	destResDict[]	= new COSDictionary[numOfDestPages];
-
-		// instantiate new pages for the whole signature
-		for (int pageNo = 0; pageNo < numOfDestPages; pageNo++)
+
+		int destPageNo = impo.pageDestPage(currSignPageNo, currSignNo);
+		if (destPageNo == JPDImposition.NO_PAGE)
+			continue;
+
+		// OUT-OF-SEQUENCE PAGE SPECIAL CASE (typically for page opposite to fold-out)
+		if (destPageNo == JPDImposition.OUT_OF_SEQUENCE_PAGE)
 		{
-			destPage[pageNo]	= (PDPage) PDPage.META.createNew();
-			destPage[pageNo].setMediaBox(destBox.copy());
-			destContent[pageNo]	= CSContent.createNew();
-			destCreator[pageNo]	= CSCreator.createFromContent(destContent[pageNo], currSrcPage);
-			destResDict[pageNo]	= PDResources.META.createNew().cosGetDict();
+			if (placeAsForms)
+				pageForm(currSrcPage);
+			sign.singlePages.add(currSrcPage);
+			sign.singleGlueTo.add(impo.pageDestGlueTo(currSignPageNo, currSignNo));
+			sign.singleDocs.add(docName);
+			sign.singlePageNos.add(srcStatus.currDocPageNo());
+			currSrcPage = srcStatus.nextPage();
+			continue;
 		}
 
-		// iterate on source pages of the whole signature,
-		// inserting each at its proper destination in dest. pages
-		int		numOfSourcePages = impo.numOfSourcePagesPerSignature(currSignNo);
-		for (int currSignPageNo = 0;
-			currSrcPage != null && currSignPageNo < numOfSourcePages;
-				currSignPageNo++)
-		{
-			int destPageNo = impo.pageDestPage(currSignPageNo, currSignNo);
-			if (destPageNo == JPDImposition.NO_PAGE)
-				continue;
+		preloadPage(currSrcPage);
+		// the merger may run in another thread: hash its resources here
+		if (dedup != null && !placeAsForms)
+			hashResources(currSrcPage.getResources(), sign.resHashes);
+		sign.srcPages[currSignPageNo]	= currSrcPage;
+		sign.srcBoxes[currSignPageNo]	= currSrcPage.getMediaBox().copy().normalize();
+		sign.srcPageDocs[currSignPageNo]	= docName;
+		sign.srcPageNos[currSignPageNo]		= srcStatus.currDocPageNo();
+		if (placeAsForms)
+			sign.srcForms[currSignPageNo]	= pageForm(currSrcPage);
+		currSrcPage = srcStatus.nextPage();
+	}
+	return currSrcPage;
+}
 
-			int	glueTo	= impo.pageDestGlueTo(currSignPageNo, currSignNo);
-			// OUT-OF-SEQUENCE PAGE SPECIAL CASE (typically for page opposite to fold-out)
-			if (destPageNo == JPDImposition.OUT_OF_SEQUENCE_PAGE)
-			{
-				createSinglePage(currSrcPage, glueTo, singlePages, resMap);
-				currSrcPage = srcStatus.nextPage();
-				continue;
-			}
+/******************
+	Compose a signature
+*******************
+Creates the destination pages of a gathered signature, with their contents and their merged
+resources. Only touches the signature data and its source pages, already loaded in memory,
+and can run in any thread.
 
-			// set PAGE TRANSFORMATION into destination place
-
-			CDSRectangle srcBox	= currSrcPage.getMediaBox().copy().normalize();
-			double	rot		= impo.pageDestRotation(currSignPageNo, currSignNo) * Math.PI / 180.0;
-			double	cosRot	= Math.cos(rot);
-			double	sinRot	= Math.sin(rot);
-			double	offsetX	= impo.pageDestOffsetX(currSignPageNo, currSignNo, destPageWidth)
-					+ (destPageWidth - srcBox.getWidth()) * 0.5 + pageOffsetX[destPageNo & 1];
-			double	offsetY	= impo.pageDestOffsetY(currSignPageNo, currSignNo, destPageHeight)
-					+ (destPageHeight -srcBox.getHeight())* 0.5 + pageOffsetY[destPageNo & 1];
-			double	scaleX	= 1.0;
-			double	scaleY	= 1.0;
-			destCreator[destPageNo].saveState();
-			destCreator[destPageNo].transform(
-				(float)(scaleX*cosRot), (float)(scaleX*sinRot),
-				-(float)(scaleY*sinRot), (float)(scaleY*cosRot),
-				(float)offsetX, (float)offsetY);
-			// add glue-to page number, if required, merging its font resource
-			if (glueTo != JPDImposition.NO_PAGE)
-			{
-				addGlueToPageNo(destCreator[destPageNo], srcBox, glueTo, resMap);
-				PDResources res = destCreator[destPageNo].getResourcesProvider().getResources();
+Parameters:	sign:	the signature to compose
+Returns:	none */
+
+protected void composeSignature(JPDISignature sign)
+{
+	long[]			mark			= report.begin(JPDIReport.Stage.compose);
+	JPDIEvents.JPDISignatureEvent	event	= new JPDIEvents.JPDISignatureEvent();
+	event.begin();
+	int				currSignNo		= sign.signNo;
+	int				numOfDestPages	= sign.numOfDestPages;
+	float			destPageWidth	= sign.destPageWidth;
+	float			destPageHeight	= sign.destPageHeight;
+	JPDIContentWriter	destContent[]	= new JPDIContentWriter[numOfDestPages];
+	JPDIResourceMerger	merger		= new JPDIResourceMerger(numOfDestPages);
+	JPDImposition.JPDISignPlan	plan	= impo.signaturePlan(currSignNo);
+	double[]		placements		= impo.pagePlacements(currSignNo, destPageWidth, destPageHeight);
+	sign.destPage	= new PDPage[numOfDestPages];
+	sign.destContent	= destContent;
+	sign.merger		= merger;
+	merger.setResourceHashes(sign.resHashes);
+
+	// instantiate new pages for the whole signature
+	for (int pageNo = 0; pageNo < numOfDestPages; pageNo++)
+	{
+		sign.destPage[pageNo]	= (PDPage) PDPage.META.createNew();
+		sign.destPage[pageNo].setMediaBox(sign.destBox.copy());
+		destContent[pageNo]	= new JPDIContentWriter(CONTENT_BUFFER_SIZE);
+	}
+
+	// iterate on source pages of the whole signature,
+	// inserting each at its proper destination in dest. pages
+	for (int currSignPageNo = 0; currSignPageNo < sign.srcPages.length; currSignPageNo++)
+	{
+		PDPage	currSrcPage	= sign.srcPages[currSignPageNo];
+		if (currSrcPage == null)
+			continue;
+		int		destPageNo	= plan.destPage(currSignPageNo);
+		int		glueTo		= impo.pageDestGlueTo(currSignPageNo, currSignNo);
+
+		// set PAGE TRANSFORMATION into destination place
+
+		CDSRectangle srcBox	= sign.srcBoxes[currSignPageNo];
+		int		m		= currSignPageNo * 6;
+		double	offsetX	= placements[m+4]
+				+ (destPageWidth - srcBox.getWidth()) * 0.5 + pageOffsetX[destPageNo & 1];
+		double	offsetY	= placements[m+5]
+				+ (destPageHeight -srcBox.getHeight())* 0.5 + pageOffsetY[destPageNo & 1];
+		destContent[destPageNo].saveState();
+		destContent[destPageNo].transform(
+			(float)placements[m], (float)placements[m+1],
+			(float)placements[m+2], (float)placements[m+3],
+			(float)offsetX, (float)offsetY);
+		// add glue-to page number, if required, merging its font resource
+		if (glueTo != JPDImposition.NO_PAGE)
+		{
+			CSContent	glueContent	= CSContent.createNew();
+			CSCreator	glueCreator	= CSCreator.createFromContent(glueContent, sign.destPage[destPageNo]);
+			addGlueToPageNo(glueCreator, srcBox, glueTo);
+			PDResources res = glueCreator.getResourcesProvider().getResources();
+			glueCreator.close();
+			destContent[destPageNo].write(glueContent.toByteArray());
+			if (res != null)
 				merger.merge(destPageNo, res);
-			}
+		}
+		// place source page as a form, adding the form itself to the dest. page resources
+		if (placeAsForms)
+		{
+			JPDIPageForm	pageForm	= sign.srcForms[currSignPageNo];
+			destContent[destPageNo].doXObject(pageForm.name);
+			merger.mergeXObject(destPageNo, pageForm.name, pageForm.form.cosGetObject());
+		}
+		else if (currSrcPage.getResources() != null)
+		{
+			// COPY RESOURCES and source page contents, renaming colliding resources in a single pass
+			long[]	mergeMark	= report.begin(JPDIReport.Stage.merge);
+			merger.setEventSource(currSignNo, sign.srcPageDocs[currSignPageNo],
+					sign.srcPageNos[currSignPageNo]);
+			merger.merge(destPageNo, currSrcPage, destContent[destPageNo]);
+			report.end(JPDIReport.Stage.merge, mergeMark);
+		}
+		else
 			// copy source page contents
-			destCreator[destPageNo].copy(currSrcPage.getContentStream());
+			destContent[destPageNo].copy(currSrcPage.cosGetField(PDPage.DK_Contents), null);
+		destContent[destPageNo].restoreState();
+		report.count(JPDIReport.Counter.pagesPlaced, 1);
+	}
+
+	// signature is complete: add contents to dest. pages
+	long	contentBytes	= 0;
+	for (int destPageNo = 0; destPageNo < numOfDestPages; destPageNo++)
+	{
+		destContent[destPageNo].finish(compressor);
+		if (event.isEnabled())
+			for (int i = 0; i < destContent[destPageNo].numOfStreams(); i++)
+				contentBytes	+= destContent[destPageNo].stream(i).getEncodedBytes().length;
+	}
+	event.end();
+	if (event.shouldCommit())
+	{
+		int	numOfSrcPages	= 0;
+		for (PDPage page : sign.srcPages)
+			if (page != null)
+				numOfSrcPages++;
+		event.signatureNo		= currSignNo;
+		event.sourceDocuments	= sign.srcDocNames.toString();
+		event.sourcePages		= numOfSrcPages;
+		event.destPages			= numOfDestPages;
+		event.resourcesMerged	= merger.numOfMerged();
+		event.renames			= merger.numOfRenamed();
+		event.contentBytes		= contentBytes;
+		event.commit();
+	}
+	report.count(JPDIReport.Counter.resourcesMerged, merger.numOfMerged());
+	report.count(JPDIReport.Counter.renames, merger.numOfRenamed());
+	report.end(JPDIReport.Stage.compose, mark);
+}
 
-			// COPY RESOURCES
+/******************
+	Commit a signature
+*******************
+Adds the pages of a composed signature to the destination document, copying their resources
+into it. Signatures shall be committed in the main thread and in sequence.
 
-			if (currSrcPage.getResources() != null)
-				merger.merge(destPageNo, currSrcPage);
-			destCreator[destPageNo].restoreState();
-			currSrcPage = srcStatus.nextPage();
-		}
+Parameters:	sign:			the signature to commit
+			singlePages:	the list to add the single (out-of-sequence) pages to
+			resMap:			the map of the resources already copied into the dest. document
+Returns:	none */
 
-		// signature is complete: add dest. pages to dest. document
-		for (int destPageNo = 0; destPageNo < numOfDestPages; destPageNo++)
+protected void commitSignature(JPDISignature sign, ArrayList<PDPage> singlePages, JPDICopyMap resMap)
+{
+	ArrayList<COSDocument>	cosDocs	= new ArrayList<COSDocument>();
+	for (PDDocument doc : sign.srcDocs)
+		cosDocs.add(doc.cosGetDoc());
+	if (sign.reused)
+		cosDocs.add(incr.prevDoc().cosGetDoc());
+	resMap.beginScope(cosDocs);
+	// the glue-to font is used by many signatures
+	if (impoFont != null)
+		resMap.share(impoFont.cosGetObject());
+	for (int i = 0; i < sign.singlePages.size(); i++)
+		createSinglePage(sign.singlePages.get(i), sign.singleGlueTo.get(i), singlePages, resMap,
+				sign.singleDocs.get(i), sign.singlePageNos.get(i));
+	// when streaming, single pages can be written at once, to be placed after any other page
+	if (writer != null)
+	{
+		for (PDPage page : singlePages)
+			writer.writeTrailingPage(page);
+		singlePages.clear();
+	}
+	// an unchanged signature: copy its dest. pages from the previous output
+	if (sign.reused)
+	{
+		for (int destPageNo = 0; destPageNo < sign.numOfDestPages; destPageNo++)
+			addDestPage(reusedPage(incr.prevPage(sign.signNo, destPageNo), resMap));
+	}
+	else
+	{
+		for (int destPageNo = 0; destPageNo < sign.numOfDestPages; destPageNo++)
 		{
-			destCreator[destPageNo].close();
-			// add content to dest. page
-			COSStream pageStream = destContent[destPageNo].createStream();
-			pageStream.addFilter(COSName.constant("FlateDecode"));
-			destPage[destPageNo].cosAddContents(pageStream);
 			// make a copy of accumulated page resources not yet copied and add to dest. page
 			COSObject	cosRes;
-			cosRes	= merger.getResources(destPageNo).copyDeep(resMap);
+			cosRes	= outputCopy(sign.merger.getResources(destPageNo), resMap);
 			PDResources destPageRes	= (PDResources) PDResources.META.createFromCos(cosRes);
-			destPage[destPageNo].setResources(destPageRes);
+			sign.destPage[destPageNo].setResources(destPageRes);
+			// add the contents, copying the streams passed through from source pages
+			JPDIContentWriter	content	= sign.destContent[destPageNo];
+			for (int i = 0; i < content.numOfStreams(); i++)
+				sign.destPage[destPageNo].cosAddContents(content.isSourceStream(i)
+						? (COSStream) outputCopy(content.stream(i), resMap, null) : content.stream(i));
 			// add page to doc and release objects no longer needed
-			dstDoc.addPageNode(destPage[destPageNo]);
-			destCreator[destPageNo]	= null;		// a bit of paranoia!
-			destContent[destPageNo]	= null;
-			destPage[destPageNo]	= null;
-			destResDict[destPageNo]	= null;
+			addDestPage(sign.destPage[destPageNo]);
+			sign.destPage[destPageNo]		= null;
+			sign.destContent[destPageNo]	= null;
 		}
-		merger.releaseDestPages();
-		currSignNo++;
+		// the merger could not count its duplicates into the dedup, not being in this thread
+		if (dedup != null)
+			for (COSObject obj : sign.merger.duplicates())
+				dedup.countDuplicate(obj);
+		sign.merger.releaseDestPages();
+		sign.merger		= null;
+		sign.resHashes	= null;
 	}
-	// add single pages, if any
-	for (int i = 0; i < singlePages.size(); i++)
-			dstDoc.addPageNode(singlePages.get(i));
-	try {
-		srcDoc.close();
-	} catch (IOException e) {
-		// empty catch: if we cannot close it, just ignore it!
+	resMap.endScope();
+	// the pages of this signature will not be placed again: drop their forms
+	if (placeAsForms)
+	{
+		for (PDPage page : sign.srcPages)
+			if (page != null)
+				dropPageForm(page);
+		for (PDPage page : sign.singlePages)
+			dropPageForm(page);
 	}
+	sign.srcPages	= null;
+	for (int i = 0; i < sign.srcDocNames.size(); i++)
+		releaseSourceDoc(sign.srcDocNames.get(i), sign.srcDocs.get(i), resMap);
+}
 
-	// add appended documents, if any
-	if (srcStatus.hasAppend())
+/******************
+	Re-use a page
+*******************
+Returns a new dest. page with the media box, the contents and the resources of a page of the
+previous output.
+
+Parameters:	prevPage:	the page of the previous output
+			resMap:		the map of the resources already copied into the dest. document
+Returns:	the new dest. page */
+
+protected PDPage reusedPage(PDPage prevPage, JPDICopyMap resMap)
+{
+	PDPage		destPage	= (PDPage) PDPage.META.createNew();
+	destPage.setMediaBox(prevPage.getMediaBox().copy());
+	COSObject	contents	= prevPage.cosGetField(PDPage.DK_Contents);
+	if (contents instanceof COSStream)
+		destPage.cosAddContents((COSStream) outputCopy(contents, resMap, null));
+	else if (contents instanceof COSArray)
+		for (COSObject stream : (COSArray)contents)
+			if (stream instanceof COSStream)
+				destPage.cosAddContents((COSStream) outputCopy(stream, resMap, null));
+	PDResources	res			= prevPage.getResources();
+	if (res != null)
+		destPage.setResources((PDResources) PDResources.META.createFromCos(
+				outputCopy(res.cosGetObject(), resMap)));
+	return destPage;
+}
+
+/******************
+	Hash resources
+*******************
+Adds to hashes the content hash of each shared resource of a source page which has one (see
+JPDIDedup.hash()); only to be called in the thread reading the source documents.
+
+Parameters:	res:	the resources of the page; may be null
+			hashes:	where to add the hashes to
+Returns:	none */
+
+protected void hashResources(PDResources res, IdentityHashMap<COSObject, ByteBuffer> hashes)
+{
+	if (res == null)
+		return;
+	@SuppressWarnings("unchecked")
+	Iterator<COSDictionary.Entry>	iter	= res.cosGetDict().entryIterator();
+	while (iter.hasNext())
 	{
-		currSrcPage = srcStatus.startAppend();
-		return concatenate(resMap);
+		Object	table	= iter.next().getValue();
+		if (!(table instanceof COSDictionary))
+			continue;
+		@SuppressWarnings("unchecked")
+		Iterator<COSDictionary.Entry>	tableIter	= ((COSDictionary)table).entryIterator();
+		while (tableIter.hasNext())
+		{
+			COSObject	resObj	= (COSObject)tableIter.next().getValue();
+			if (!resObj.isIndirect() || hashes.containsKey(resObj))
+				continue;
+			byte[]		hash	= dedup.hash(resObj);
+			if (hash != null)
+				hashes.put(resObj, ByteBuffer.wrap(hash));
+		}
+	}
+}
+
+/******************
+	Release a source document
+*******************
+Releases a source document to the document cache and, if no page of it remains to place, drops
+the objects copied from it from the copy map. */
+
+protected void releaseSourceDoc(String docName, PDDocument doc, JPDICopyMap resMap)
+{
+	docCache.release(docName);
+	if (doc != null && !docCache.isInUse(docName) && !srcStatus.usesLater(docName))
+		evictSourceDoc(doc, resMap);
+}
+
+/* Drops what is remembered about the objects of a source document no page of which remains to
+place, or closed by the document cache: their copies in the copy map or, when streaming, their
+object nos. in the writer, and their hashes in the dedup. */
+
+protected void evictSourceDoc(PDDocument doc, JPDICopyMap resMap)
+{
+	resMap.evictDocument(doc.cosGetDoc());
+	if (writer != null)
+		writer.evictDocument(doc.cosGetDoc());
+	if (dedup != null)
+		dedup.evictDocument(doc.cosGetDoc());
+}
+
+/******************
+	Add a destination page
+*******************
+Adds a complete page to the destination document or, when streaming, writes it. */
+
+protected void addDestPage(PDPage page)
+{
+	if (writer != null)
+		writer.writePage(page);
+	else
+		pageTree.addPage(page);
+}
+
+/******************
+	Output copy
+*******************
+Returns what to put into the destination document for a source object: a deep copy, sharing the
+objects already copied (and, with dedup, the copies of identical objects), or the object itself
+when streaming, as the writer writes source objects as they are.
+
+Content streams, used by their own page only, are copied with a null dedup: a plain deep copy,
+not worth hashing them. */
+
+protected COSObject outputCopy(COSObject obj, HashMap<COSIndirectObject, COSCompositeObject> resMap)
+{
+	return outputCopy(obj, resMap, dedup);
+}
+
+protected COSObject outputCopy(COSObject obj, HashMap<COSIndirectObject, COSCompositeObject> resMap,
+		JPDIDedup dedup)
+{
+	if (writer != null)
+		return obj;
+	long[]		mark	= report.begin(JPDIReport.Stage.copy);
+	int			oldSize	= resMap.size();
+	COSObject	copy	= dedup != null ? dedup.copyDeep(obj, resMap) : obj.copyDeep(resMap);
+	report.count(JPDIReport.Counter.deepCopies, resMap.size() - oldSize);
+	report.end(JPDIReport.Stage.copy, mark);
+	return copy;
+}
+
+/******************
+	Preload page
+*******************
+Loads into memory the contents and the resource dictionaries of a source page, so that they can
+be later used without reading from the source document. */
+
+protected void preloadPage(PDPage page)
+{
+	COSObject	contents	= page.cosGetField(PDPage.DK_Contents);
+	if (contents instanceof COSStream)
+		((COSStream)contents).getDecodedBytes();
+	else if (contents instanceof COSArray)
+		for (COSObject stream : (COSArray)contents)
+			if (stream instanceof COSStream)
+				((COSStream)stream).getDecodedBytes();
+	PDResources	res			= page.getResources();
+	if (res == null)
+		return;
+	@SuppressWarnings("unchecked")
+	Iterator<COSDictionary.Entry>	iter	= res.cosGetDict().entryIterator();
+	while (iter.hasNext())
+	{
+		Object	table	= iter.next().getValue();
+		if (!(table instanceof COSDictionary))
+			continue;
+		@SuppressWarnings("unchecked")
+		Iterator<COSDictionary.Entry>	tableIter	= ((COSDictionary)table).entryIterator();
+		while (tableIter.hasNext())
+			tableIter.next().getValue();
 	}
-	return true;
 }
 
 /******************
@@ -538,7 +1206,7 @@ Parameters:	resMap: a Map used to collect page resources; may be null if no map
 				or an existing map, if appending to an existing imposition. 
 Returns:	true = success | false = unrecoverable failure */
 
-public boolean concatenate(HashMap<COSIndirectObject, COSCompositeObject> resMap)
+public boolean concatenate(JPDICopyMap resMap)
 {
 	PDPage		currSrcPage = srcStatus.currPage != null ? srcStatus.currPage : srcStatus.nextPage();
 	if (currSrcPage == null)
@@ -549,9 +1217,14 @@ public boolean concatenate(HashMap<COSIndirectObject, COSCompositeObject> resMap
 	if (dstDoc == null)
 		if (!createDestDocument(srcDoc))
 			return false;
+	JPDIEvents.JPDIConcatenateEvent	event	= new JPDIEvents.JPDIConcatenateEvent();
+	boolean	appended		= resMap != null;
+	long	contentBytes	= 0;
+	event.begin();
 	if (resMap == null)
 	{
-		resMap = new HashMap<COSIndirectObject, COSCompositeObject>();
+		resMap	= new JPDICopyMap();
+		copyMap	= resMap;
 		initBookmarks();
 		createPageLabels(dstDoc.cosGetDoc());
 	}
@@ -569,26 +1242,45 @@ public boolean concatenate(HashMap<COSIndirectObject, COSCompositeObject> resMap
 		destCreator.close();
 		// add content to dest. page
 		COSStream pageStream = destContent.createStream();
-		pageStream.addFilter(COSName.constant("FlateDecode"));
+		compressor.compress(pageStream);
 		destPage.cosAddContents(pageStream);
+		if (event.isEnabled())
+			contentBytes	+= pageStream.getEncodedBytes().length;
 		// add resources, if any
 		if (currSrcPage.getResources() != null)
 		{
-			COSObject	cosResourcesCopy	= currSrcPage.getResources().cosGetObject().copyDeep(resMap);
+			resMap.beginScope(Collections.singletonList(srcStatus.currDoc().cosGetDoc()));
+			COSObject	cosResourcesCopy	= outputCopy(currSrcPage.getResources().cosGetObject(), resMap);
 			PDResources	pdResourcesCopy		= (PDResources) PDResources.META.createFromCos(cosResourcesCopy);
 			destPage.setResources(pdResourcesCopy);
+			resMap.endScope();
 		}
 		// add page to doc and the page bookmark to the outline, if any
-		dstDoc.addPageNode(destPage);
+		addDestPage(destPage);
 		addBookmark(pageNo, destPage);
+		report.count(JPDIReport.Counter.pagesPlaced, 1);
 
 		// release objects no longer needed
 		destCreator	= null;		// a bit of paranoia!
 		destContent	= null;
 		destPage	= null;
+		// once past a document, drop the objects copied from it
+		PDDocument	prevDoc		= srcStatus.currDoc();
+		String		prevDocName	= srcStatus.currDocName();
 		currSrcPage = srcStatus.nextPage();
+		if (srcStatus.currDoc() != prevDoc && !docCache.isInUse(prevDocName)
+				&& !srcStatus.usesLater(prevDocName))
+			evictSourceDoc(prevDoc, resMap);
 		pageNo++;
 	}
+	event.end();
+	if (event.shouldCommit())
+	{
+		event.appended		= appended;
+		event.pages			= pageNo;
+		event.contentBytes	= contentBytes;
+		event.commit();
+	}
 	return true;
 }
 
@@ -696,21 +1388,89 @@ protected void createPageLabels(COSDocument doc)
 
 protected boolean save() /*throws IOException*/
 {
-	if (outputFileName == null)
+	JPDIEvents.JPDISaveEvent	event		= new JPDIEvents.JPDISaveEvent();
+	boolean						streaming	= writer != null;
+	event.begin();
+	boolean	result	= saveDocument();
+	if (incr != null)
 	{
-		System.err.println("No output file specified.");
-		return false;
+		result	= incr.finish(result);
+		if (result)
+			System.out.println("Re-used " + incr.numOfReused() + " of " + incr.numOfSignatures()
+					+ " signatures from the previous output.");
+		incr	= null;
+	}
+	event.end();
+	if (event.shouldCommit())
+	{
+		event.outputFile	= outputFileName;
+		event.streaming		= streaming;
+		event.outputBytes	= outputFileName != null ? new File(outputFileName).length() : 0;
+		event.succeeded		= result;
+		event.commit();
 	}
-	FileLocator locator = new FileLocator(outputFileName);
+	return result;
+}
+
+private boolean saveDocument()
+{
+	long[]	mark	= report.begin(JPDIReport.Stage.save);
 	try {
-		dstDoc.save(locator, null);
-		dstDoc.close();
+		if (writer != null)
+		{
+			try {
+				writer.close((COSDictionary) dstDoc.cosGetDoc().getCatalog().cosGetObject());
+			}
+			catch (IOException e) {
+				System.err.println("Error while saving to " + outputFileName + ": " + e.getMessage());
+				return false;
+			}
+			finally {
+				writer = null;
+			}
+			return true;
+		}
+		if (outputFileName == null)
+		{
+			System.err.println("No output file specified.");
+			return false;
+		}
+		FileLocator locator = new FileLocator(saveFileName());
+		try {
+			pageTree.finish();
+			dstDoc.save(locator, null);
+			dstDoc.close();
+		}
+		catch (IOException e) {
+			System.err.println("Error while saving to " + outputFileName + ": " + e.getMessage());
+			return false;
+		}
+		return true;
 	}
-	catch (IOException e) {
-		System.err.println("Error while saving to " + outputFileName + ": " + e.getMessage());
-		return false;
+	// source documents are no longer needed, whatever the result
+	finally {
+		closeSources();
+		report.end(JPDIReport.Stage.save, mark);
+		if (report.enabled() && outputFileName != null)
+			report.count(JPDIReport.Counter.outputBytes, new File(saveFileName()).length());
+		report.count(JPDIReport.Counter.duplicates, numOfDuplicates());
+		report.count(JPDIReport.Counter.dedupBytes, dedupBytesSaved());
 	}
-	return true;
+}
+
+/******************
+	Close source documents
+*******************
+
+Closes all the source documents currently open; they are re-opened when needed again.
+
+Parameters:	none
+Returns:	none */
+
+public void closeSources()
+{
+	srcStatus.releaseCurrDoc();
+	docCache.closeAll();
 }
 
 /******************
@@ -723,6 +1483,14 @@ public String inputFileNames()			{ return srcStatus.inputFileNames();	}
 
 public String outputFileName()			{ return outputFileName;				}
 
+public int totPages()					{ return srcStatus.totPages();			}
+
+/* With dedup, the objects replaced by an identical one and (approx.) the bytes saved by it; 0 without. */
+
+public int numOfDuplicates()			{ return dedup != null ? dedup.numOfDuplicates() : 0;	}
+
+public long dedupBytesSaved()			{ return dedup != null ? dedup.bytesSaved() : 0;		}
+
 /******************
 	Setters
 *******************/
@@ -752,105 +1520,235 @@ public void setMaxSheetsPerSign(String sheetsPerSignStr)
 		maxSheetsPerSign = 1;
 }
 
-public void setOutputFileName(String outputFileName)	{ this.outputFileName = outputFileName;	}
+/* Sets the compression level of the streams created for dest. pages (0 to 9, "none", "fast",
+"default" or "best") and the size below which they are not compressed. */
 
-/******************
-	Source documents
-*******************
+public boolean setCompression(String level)			{ return compressor.setLevel(level);		}
 
-Methods to manage source documents. */
+public void setCompressMinSize(int minSize)			{ compressor.setMinSize(minSize);			}
 
-protected PDDocument openSrcDoc(String fileName)
+/* Sets whether identical objects (fonts, images, ICC profiles...) from different source documents
+are written only once; this costs a content hash of each shared resource. */
+
+public void setDedup(boolean dedup)				{ this.dedup = dedup ? new JPDIDedup() : null;	}
+
+/* Sets whether an imposition re-uses the dest. pages of the signatures unchanged since the previous
+output, as recorded in a manifest next to it, rather than composing them again. */
+
+public void setIncremental(boolean incremental)	{ this.incremental = incremental;			}
+
+/* Sets whether source documents are read through memory-mapped regions of their files, which
+helps with large sources and slow storage, or through plain file reads (the default). */
+
+public void setMappedSources(boolean mapped)		{ docCache.setMapped(mapped);				}
+
+/* Sets the limits to the source documents open at the same time: beyond either limit, source
+documents not in use are closed and re-opened when needed again. 0 = no limit (the default). */
+
+public void setMaxOpenDocs(int maxOpenDocs)			{ docCache.setMaxOpenDocs(maxOpenDocs);		}
+
+public void setMaxOpenBytes(long maxOpenBytes)		{ docCache.setMaxOpenBytes(maxOpenBytes);	}
+
+/* Sets the directory where computed imposition plans are kept, to be read back by later runs with
+the same parameters (null = no plan cache), and the max. size of the plans kept there; the cache of
+a directory and its size are shared by all the documents of the process. */
+
+public void setPlanCache(String dirName)
 {
-	FileLocator	locator	= new FileLocator(fileName);
-	PDDocument	doc;
-	try {
-		doc = PDDocument.createFromLocator(locator);
-	}
-	catch (IOException e) {
-		System.err.println("Error opening file : " + fileName);
-		return null;
-	}
-	catch (COSLoadException e) {
-			System.err.println("Error parsing file : " + fileName);
-			return null;
-	}
-	return doc;
+	planCache	= dirName != null ? JPDIPlanCache.forDir(dirName) : null;
+	if (planCache != null && planCacheBytes > 0)
+		planCache.setMaxDiskBytes(planCacheBytes);
+	impo.setPlanCache(planCache);
 }
 
-protected boolean closeSrcDoc(PDDocument doc)
+public void setPlanCacheBytes(long maxBytes)
 {
-	if (doc == null)
-		return true;
-	try {
-		doc.close();
-		doc = null;
-	}
-	catch (IOException e) {
-		System.err.println("Error closing document from file " + doc.getLocator().getFullName()
-				+ ": " + e.getMessage());
-		return false;
-	}
-	return true;
+	planCacheBytes	= maxBytes;
+	if (planCache != null && maxBytes > 0)
+		planCache.setMaxDiskBytes(maxBytes);
+}
+
+/* Sets the max. no. of objects packed into each compressed object stream, for PDF 1.5 and later;
+0 = no object streams (the default). Object streams imply a streaming save. */
+
+public void setObjStmSize(int objStmSize)			{ this.objStmSize = objStmSize < 0 ? 0 : objStmSize;	}
+
+/* Sets the max. no. of kids of each node of the dest. page tree, which is built balanced so that
+any page is reached in a logarithmic no. of steps; < 2 = all pages directly under the root. */
+
+public void setPageTreeFanOut(int fanOut)			{ pageTreeFanOut = fanOut;					}
+
+/* Sets how many signatures may be composed in parallel: 1 (the default) composes one signature at
+a time in the main thread, 0 uses as many threads as available processors. The output is the same. */
+
+public void setNumOfThreads(int numOfThreads)
+{
+	if (numOfThreads == 0)
+		numOfThreads = Runtime.getRuntime().availableProcessors();
+	this.numOfThreads = numOfThreads < 1 ? 1 : numOfThreads;
 }
 
+public void setOutputFileName(String outputFileName)	{ this.outputFileName = outputFileName;	}
+
+/* Sets the report to collect the figures of the run into; JPDIReport.DISABLED = no report. */
+
+public void setReport(JPDIReport report)
+{
+	this.report	= report;
+	docCache.setReport(report);
+	compressor.setReport(report);
+}
+
+public void setPlaceAsForms(boolean placeAsForms)		{ this.placeAsForms = placeAsForms;		}
+
+public void setStreamingSave(boolean streamingSave)	{ this.streamingSave = streamingSave;	}
+
 /******************
 	Create single page
 *******************
 
-Creates a copy of single page, typically for a fold-out. */
+Creates a copy of single page, typically for a fold-out; srcDocName and srcPageNo (0-based) tell
+where the page comes from, only to be recorded in its JFR event. */
 
 protected boolean createSinglePage(PDPage currSrcPage, int gluePageNo, ArrayList<PDPage> singlePages,
-		HashMap<COSIndirectObject, COSCompositeObject> resMap)
+		HashMap<COSIndirectObject, COSCompositeObject> resMap, String srcDocName, int srcPageNo)
 {
+	JPDIEvents.JPDISinglePageEvent	event	= new JPDIEvents.JPDISinglePageEvent();
+	event.begin();
 	PDPage			destPage	= (PDPage) PDPage.META.createNew();
 	CSContent		destContent	= CSContent.createNew();
-	CSCreator		destCreator	= CSCreator.createFromContent(destContent, currSrcPage);
+	CSCreator		destCreator	= CSCreator.createFromContent(destContent, destPage);
 	CDSRectangle	box = currSrcPage.getMediaBox().copy().normalize();
 	destPage.setMediaBox(box);
 
 	// add side page no., if supplied
 	if (gluePageNo != JPDImposition.NO_PAGE)
-		addGlueToPageNo(destCreator, box, gluePageNo, resMap);
+		addGlueToPageNo(destCreator, box, gluePageNo);
 
-	destCreator.copy(currSrcPage.getContentStream());
+	JPDIPageForm	pageForm	= null;
+	if (placeAsForms)
+	{
+		pageForm = pageForm(currSrcPage);
+		destCreator.doXObject(pageForm.name, pageForm.form);
+	}
+	else
+		destCreator.copy(currSrcPage.getContentStream());
 	destCreator.close();
 	// add content to dest. page
 	COSStream pageStream = destContent.createStream();
-	pageStream.addFilter(COSName.constant("FlateDecode"));
+	compressor.compress(pageStream);
 	destPage.cosAddContents(pageStream);
-	// add resources, if any
-	if (currSrcPage.getResources() != null)
+	// add resources, if any: either the page form alone or the source page resources
+	COSObject	cosResourcesCopy	= null;
+	if (pageForm != null)
+	{
+		JPDIResourceMerger	merger	= new JPDIResourceMerger(1);
+		merger.mergeXObject(0, pageForm.name, pageForm.form.cosGetObject());
+		cosResourcesCopy	= outputCopy(merger.getResources(0), resMap);
+	}
+	else if (currSrcPage.getResources() != null)
+		cosResourcesCopy	= outputCopy(currSrcPage.getResources().cosGetObject(), resMap);
+	if (cosResourcesCopy != null)
 	{
-		COSObject	cosResourcesCopy	= currSrcPage.getResources().cosGetObject().copyDeep(resMap);
 		PDResources	pdResourcesCopy		= (PDResources) PDResources.META.createFromCos(cosResourcesCopy);
 		if (gluePageNo != JPDImposition.NO_PAGE)	// be sure the glue-to font resource is included
 			pdResourcesCopy.addFontResource(impoFontName, impoFont);
 		destPage.setResources(pdResourcesCopy);
 	}
 	singlePages.add(destPage);
+	report.count(JPDIReport.Counter.pagesPlaced, 1);
+	event.end();
+	if (event.shouldCommit())
+	{
+		event.sourceDocument	= srcDocName;
+		event.sourcePageNo		= srcPageNo + 1;
+		event.glueTo			= gluePageNo;
+		event.contentBytes		= pageStream.getEncodedBytes().length;
+		event.commit();
+	}
 
 	return true;
 }
 
+/******************
+	Page forms
+*******************
+
+Returns the Form XObject wrapping the contents and the resources of a source page, creating it
+the first time the page is placed: any further placement of the same page shares the same form.
+
+Parameters:	srcPage:	the source page to wrap
+Returns:	the page form data */
+
+protected JPDIPageForm pageForm(PDPage srcPage)
+{
+	JPDIPageForm	pageForm	= pageForms.get(srcPage.cosGetDict());
+	if (pageForm != null)
+		return pageForm;
+
+	PDForm		form		= (PDForm) PDForm.META.createNew();
+	form.setBoundingBox(srcPage.getMediaBox().copy());
+	form.setBytes(pageContentBytes(srcPage));
+	compressor.compress(form.cosGetStream());
+	// a shallow copy of the page resources, not to share a direct dictionary between page and form
+	if (srcPage.getResources() != null)
+		form.setResources((PDResources) PDResources.META.createFromCos(
+				srcPage.getResources().cosGetDict().copyShallow()));
+	// forms shall be indirect, to be copied only once into the destination document
+	form.cosGetObject().beIndirect();
+
+	pageForm		= new JPDIPageForm();
+	pageForm.name	= COSName.create("JPDIPg" + (++pageFormCount));
+	pageForm.form	= form;
+	pageForms.put(srcPage.cosGetDict(), pageForm);
+	return pageForm;
+}
+
+/* Drops the form of a source page which will not be placed again, if any; when streaming, the
+writer forgets it too, as it has no document to be evicted with. */
+
+protected void dropPageForm(PDPage srcPage)
+{
+	JPDIPageForm	pageForm	= pageForms.remove(srcPage.cosGetDict());
+	if (pageForm != null && writer != null)
+		writer.forget(pageForm.form.cosGetObject());
+}
+
+/******************
+	Page content bytes
+*******************
+
+Returns the decoded bytes of the contents of a page, joining them if split into several streams.
+
+Parameters:	page:	the page to read contents from
+Returns:	the contents bytes (empty if none) */
+
+protected byte[] pageContentBytes(PDPage page)
+{
+	COSObject	contents	= page.cosGetField(PDPage.DK_Contents);
+	if (contents instanceof COSStream)
+		return ((COSStream)contents).getDecodedBytes();
+	ByteArrayOutputStream	bytes	= new ByteArrayOutputStream();
+	if (contents instanceof COSArray)
+		for (COSObject stream : (COSArray)contents)
+			if (stream instanceof COSStream)
+			{
+				byte[]	streamBytes	= ((COSStream)stream).getDecodedBytes();
+				bytes.write(streamBytes, 0, streamBytes.length);
+				bytes.write('\n');		// array items are only split between tokens: keep them apart
+			}
+	return bytes.toByteArray();
+}
+
 /******************
 	Add glue-to page number
 *******************
 
 Adds to the page side the indication of the page number to glue this page to. */
 
-protected void addGlueToPageNo(CSCreator destCreator, CDSRectangle box, int gluePageNo,
-	HashMap<COSIndirectObject, COSCompositeObject> resMap)
+protected void addGlueToPageNo(CSCreator destCreator, CDSRectangle box, int gluePageNo)
 {
-		if (impoFont == null)
-		{
-			impoFont		= PDFontType1.createNew(PDFontType1.FONT_Courier);
-			impoFont.setEncoding(WinAnsiEncoding.UNIQUE);
-			impoFontName	= COSName.create("jPDFMark");
-		}
-		COSObject	fontCopy	= impoFont.cosGetObject().copyDeep(resMap);
-		PDFont		font		= (PDFont)PDFont.META.createFromCos(fontCopy);
-		destCreator.textSetFont(impoFontName, font, (float)6.0);
+		destCreator.textSetFont(impoFontName, glueFont(), (float)6.0);
 		// place vertically at 1/6" from margin, mid-height
 		// if gluing to odd page, place at left margin; if even, place at right margin
 		destCreator.textSetTransform(0, 1, -1, 0,				// 90° counter-clockwise rotation
@@ -862,6 +1760,25 @@ protected void addGlueToPageNo(CSCreator destCreator, CDSRectangle box, int glue
 		destCreator.flush();
 }
 
+/******************
+	Glue-to page number font
+*******************
+
+Returns the font used for glue-to page numbers, creating it the first time; the font is indirect,
+to be copied only once into the destination document, however many pages use it. */
+
+protected synchronized PDFont glueFont()
+{
+	if (impoFont == null)
+	{
+		impoFont		= PDFontType1.createNew(PDFontType1.FONT_Courier);
+		impoFont.setEncoding(WinAnsiEncoding.UNIQUE);
+		impoFont.cosGetObject().beIndirect();
+		impoFontName	= COSName.create("jPDFMark");
+	}
+	return impoFont;
+}
+
 /******************
 	Create destination document
 *******************
@@ -894,7 +1811,30 @@ protected boolean createDestDocument(PDDocument srcDoc)
 				newPageTree.cosGetObject());
 	}
 	dstDoc					= PDDocument.createFromCos(cosDstDoc);
+	this.pageTree			= new JPDIPageTreeBuilder(dstDoc.getPageTree(), pageTreeFanOut);
 
+	// when streaming, pages are written as soon as complete: open the output file now;
+	// object streams are only written by the streaming writer
+	if (streamingSave || objStmSize > 0)
+	{
+		if (outputFileName == null)
+		{
+			System.err.println("No output file specified.");
+			return false;
+		}
+		try {
+			writer = new JPDIStreamWriter(saveFileName(), docType.getVersion());
+			writer.setDedup(dedup);
+			writer.setFanOut(pageTreeFanOut);
+			if (objStmSize > 0 && !writer.setObjStmSize(objStmSize))
+				System.err.println("PDF version " + docType.getVersion()
+						+ " does not support object streams; writing without them.");
+		}
+		catch (IOException e) {
+			System.err.println("Error creating " + outputFileName + ": " + e.getMessage());
+			return false;
+		}
+	}
 	return true;
 }
 
@@ -908,11 +1848,20 @@ Parameters:	fileName: the file to parse
 Returns:	true = success | false = unrecoverable failure */
 
 public boolean readParamFile(String fileName)
+{
+	long[]	mark	= report.begin(JPDIReport.Stage.params);
+	boolean	result	= parseParamFile(fileName);
+	report.end(JPDIReport.Stage.params, mark);
+	return result;
+}
+
+private boolean parseParamFile(String fileName)
 {
 	boolean			inFile			= false;
 	boolean			inputFileSeen	= false;
 	int				pageNoOffset	= 0;
 	FileInputStream	paramStream;
+	ArrayList<JPDIInputSpec>	inputs	= new ArrayList<JPDIInputSpec>();
 
 	File			paramFile		= new File(fileName);
 	String			filePath		= paramFile.getAbsoluteFile().getParent();
@@ -965,29 +1914,17 @@ public boolean readParamFile(String fileName)
 						inputFileSeen = true;
 					}
 					File file = new File(val);
-					String fullFilePath = file.isAbsolute() ? val : filePath + File.separator + val;
-					JPDISourceDoc doc = srcStatus.addSrcDoc(fullFilePath);
-					if (doc == null)
-						return false;
-					// retrieve input attributes
+					JPDIInputSpec input = new JPDIInputSpec();
+					input.fileName = file.isAbsolute() ? val : filePath + File.separator + val;
+					// retrieve input attributes; the document is opened later (see addInputs())
 					intVal	= getIntAttribute(reader, elementName, "pageNoOffset");
 					if (intVal != INVALID_PARAM)
 						pageNoOffset = intVal;
-					doc.pageNoOffset = pageNoOffset;
-
-					intVal	= getIntAttribute(reader, elementName, "fromPage");
-					if (intVal != INVALID_PARAM)
-						doc.setFromPage(intVal);
-
-					intVal	= getIntAttribute(reader, elementName, "toPage");
-					if (intVal != INVALID_PARAM)
-						doc.setToPage(intVal);
-
-					if (getBoolAttribute(reader, elementName, "signatureBreak") == true)
-					{
-						intVal = srcStatus.totPages();
-						signBreakList.add(intVal);
-					}
+					input.pageNoOffset = pageNoOffset;
+					input.fromPage = getIntAttribute(reader, elementName, "fromPage");
+					input.toPage = getIntAttribute(reader, elementName, "toPage");
+					input.signatureBreak = getBoolAttribute(reader, elementName, "signatureBreak");
+					inputs.add(input);
 					break;
 				}
 				case "append":
@@ -998,18 +1935,13 @@ public boolean readParamFile(String fileName)
 						break;
 					}
 					File file = new File(val);
-					String fullFilePath = file.isAbsolute() ? val : filePath + File.separator + val;
-					JPDISourceDoc doc = srcStatus.addAppendDoc(fullFilePath);
-					if (doc == null)
-						return false;
+					JPDIInputSpec input = new JPDIInputSpec();
+					input.fileName = file.isAbsolute() ? val : filePath + File.separator + val;
+					input.append = true;
 					// retrieve input attributes
-					intVal	= getIntAttribute(reader, elementName, "fromPage");
-					if (intVal != INVALID_PARAM)
-						doc.setFromPage(intVal);
-
-					intVal	= getIntAttribute(reader, elementName, "toPage");
-					if (intVal != INVALID_PARAM)
-						doc.setToPage(intVal);
+					input.fromPage = getIntAttribute(reader, elementName, "fromPage");
+					input.toPage = getIntAttribute(reader, elementName, "toPage");
+					inputs.add(input);
 					break;
 				}
 				case "backoffsetx":
@@ -1060,6 +1992,44 @@ public boolean readParamFile(String fileName)
 				case "pagesizevert":
 					pageSizeY = getDoubleParam(val, elementName, 0.0) * JPDImposition.MM2PDF;
 					break;
+				case "placement":
+					placeAsForms = val.toLowerCase().equals("xobject");
+					break;
+				case "compression":
+					if (!compressor.setLevel(val))
+						System.err.println("Invalid " + elementName + " tag: " + val + "; ignoring.");
+					break;
+				case "compressminsize":
+					compressor.setMinSize(getIntParam(val, elementName, JPDICompressor.DEFAULT_MIN_SIZE));
+					break;
+				case "objectstreams":
+					setObjStmSize(getIntParam(val, elementName, 0));
+					break;
+				case "pagetreefanout":
+					pageTreeFanOut = getIntParam(val, elementName, JPDIPageTreeBuilder.DEFAULT_FAN_OUT);
+					break;
+				case "dedup":
+					setDedup(getBoolParam(val));
+					break;
+				case "incremental":
+					setIncremental(getBoolParam(val));
+					break;
+				case "mappedsources":
+					docCache.setMapped(getBoolParam(val));
+					break;
+				case "maxopendocs":
+					docCache.setMaxOpenDocs(getIntParam(val, elementName, 0));
+					break;
+				case "maxopenmb":
+					docCache.setMaxOpenBytes((long)getIntParam(val, elementName, 0) << 20);
+					break;
+				case "plancache":
+					setPlanCache(val);
+					break;
+				case "plancachemb":
+					setPlanCacheBytes((long)getIntParam(val, elementName,
+							(int)(JPDIPlanCache.DEFAULT_MAX_DISK_BYTES >> 20)) << 20);
+					break;
 				case "output":
 				{
 					File file = new File(val);
@@ -1070,6 +2040,12 @@ public boolean readParamFile(String fileName)
 					maxSheetsPerSign = getIntParam(val, elementName, 
 							JPDImposition.DEFAULT_SHEETS_PER_SIGN);
 					break;
+				case "streamingsave":
+					streamingSave = getBoolParam(val);
+					break;
+				case "threads":
+					setNumOfThreads(getIntParam(val, elementName, 1));
+					break;
 				default:
 					System.err.println("Unknown parameter '" + elementName + "' in parameter file " + fileName);
 				}
@@ -1087,6 +2063,83 @@ public boolean readParamFile(String fileName)
 		System.err.println("Error parsing parameter file " + fileName + ": " + e1.getMessage());
 		return false;
 	}
+	return addInputs(inputs);
+}
+
+/******************
+	Add the inputs of a parameter file
+*******************
+
+Opens the input and append documents of a parameter file concurrently, on a bounded pool of threads,
+to know their page counts, and then adds them to the source status in parameter file order, applying
+their page ranges, page no. offsets and signature breaks as they would have been applied while
+parsing. Stops at the first document which cannot be opened; documents read by JPDIProbe are not
+parsed yet (see JPDISourceStatus.numOfPages()).
+
+Parameters:	inputs:	the documents, in parameter file order
+Returns:	true = all documents added | false = some document could not be opened */
+
+private boolean addInputs(ArrayList<JPDIInputSpec> inputs)
+{
+	final int[]	pageCounts	= new int[inputs.size()];
+	if (inputs.size() == 1)
+		pageCounts[0]	= srcStatus.numOfPages(inputs.get(0).fileName);
+	else if (inputs.size() > 1)
+	{
+		ExecutorService						pool	=
+				Executors.newFixedThreadPool(Math.min(inputs.size(), MAX_OPEN_THREADS));
+		ExecutorCompletionService<Integer>	done	= new ExecutorCompletionService<Integer>(pool);
+		for (int i = 0; i < inputs.size(); i++)
+		{
+			final int		index		= i;
+			final String	inFileName	= inputs.get(i).fileName;
+			done.submit(new Callable<Integer>()
+			{
+				public Integer call()
+				{
+					pageCounts[index]	= srcStatus.numOfPages(inFileName);
+					return index;
+				}
+			});
+		}
+		try {
+			for (int i = 0; i < inputs.size(); i++)
+				if (pageCounts[done.take().get()] < 0)
+					return false;				// the error has already been reported
+		}
+		catch (InterruptedException e) {
+			System.err.println("Interrupted while opening the source documents.");
+			Thread.currentThread().interrupt();	// for the caller to know
+			return false;
+		}
+		catch (ExecutionException e) {
+			// report what opening a document threw, not its wrapper
+			Throwable	cause	= e.getCause();
+			System.err.println("Error opening the source documents: " + cause);
+			cause.printStackTrace();
+			return false;
+		}
+		finally {
+			pool.shutdownNow();					// if failed, do not open the other documents
+		}
+	}
+
+	for (int i = 0; i < inputs.size(); i++)
+	{
+		JPDIInputSpec	input	= inputs.get(i);
+		if (pageCounts[i] < 0)
+			return false;
+		JPDISourceDoc	doc		= input.append ? srcStatus.addAppendDoc(input.fileName, pageCounts[i])
+				: srcStatus.addSrcDoc(input.fileName, pageCounts[i]);
+		if (!input.append)
+			doc.pageNoOffset = input.pageNoOffset;
+		if (input.fromPage != INVALID_PARAM)
+			doc.setFromPage(input.fromPage);
+		if (input.toPage != INVALID_PARAM)
+			doc.setToPage(input.toPage);
+		if (input.signatureBreak)
+			signBreakList.add(srcStatus.totPages());
+	}
 	return true;
 }
 
@@ -1104,9 +2157,13 @@ private int getIntParam(String tagContent, String elementName, int defaultVal)
 }
 
 private boolean getBoolAttribute(XMLStreamReader reader, String elementName, String attrName)
+{
+	return getBoolParam(reader.getAttributeValue(null, attrName));
+}
+
+private boolean getBoolParam(String strVal)
 {
 	boolean	boolVal	= false;
-	String	strVal	= reader.getAttributeValue(null, attrName);
 	if (strVal != null)
 	{
 		strVal = strVal.toLowerCase();
@@ -0,0 +1,189 @@
+/****************************
+	j P D F i  -  A Java application to apply an imposition to a PDF document.
+
+	JPDIEvents.java - The Java Flight Recorder events of the imposition
+
+	Created by : Maurizio M. Gavioli 2026-10-18
+
+	This program is free software; you can redistribute it and/or modify
+	it under the terms of the GNU General Public License as published by
+	the Free Software Foundation; either version 2 of the License, or
+	(at your option) any later version.
+	This program is distributed in the hope that it will be useful,
+	but WITHOUT ANY WARRANTY; without even the implied warranty of
+	MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+	GNU General Public License for more details.
+	You should have received a copy of the GNU General Public License along
+	with this program; if not, write to the Free Software Foundation, Inc.,
+	51 Franklin Street, Fifth Floor, Boston, MA 02110-1301 USA.
+
+*****************************/
+
+package com.vistamaresoft.jpdfi;
+
+import jdk.jfr.Category;
+import jdk.jfr.DataAmount;
+import jdk.jfr.Description;
+import jdk.jfr.Event;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+import jdk.jfr.StackTrace;
+
+/******************
+	CLASS JPDIEvents
+*******************
+
+The Java Flight Recorder event types emitted by the imposition, all under the "jPDFImposition"
+category, to relate a slow run to the signatures, the source documents and the source pages it
+spends its time in (e.g. in JDK Mission Control).
+
+Each event is created and begun at the start of the operation and ended at its end; its fields are
+only filled when shouldCommit() says the event is recorded, so that, with no recording running (or
+with the event disabled or below its threshold), an event costs little more than the check itself.
+Stack traces are not recorded: the event type already tells where it comes from. */
+
+public class JPDIEvents
+{
+// PUBLIC DEFINITIONS
+
+public static final String	CATEGORY	= "jPDFImposition";
+
+/******************
+	CLASS JPDIImposeEvent
+*******************/
+
+@Name("com.vistamaresoft.jpdfi.Impose")
+@Label("Imposition")
+@Description("A whole imposition, from the first source page to the last dest. page")
+@Category(CATEGORY)
+@StackTrace(false)
+public static class JPDIImposeEvent extends Event
+{
+	@Label("Format")
+	public String	format;
+	@Label("Source Pages")
+	public int		sourcePages;
+	@Label("Succeeded")
+	public boolean	succeeded;
+}
+
+/******************
+	CLASS JPDISignatureEvent
+*******************/
+
+@Name("com.vistamaresoft.jpdfi.Signature")
+@Label("Signature Composition")
+@Description("The composition of the dest. pages of a signature")
+@Category(CATEGORY)
+@StackTrace(false)
+public static class JPDISignatureEvent extends Event
+{
+	@Label("Signature No.")
+	public int		signatureNo;
+	@Label("Source Documents")
+	public String	sourceDocuments;
+	@Label("Source Pages")
+	public int		sourcePages;
+	@Label("Dest. Pages")
+	public int		destPages;
+	@Label("Resources Merged")
+	public int		resourcesMerged;
+	@Label("Renames")
+	public int		renames;
+	@Label("Content Size")
+	@DataAmount
+	public long		contentBytes;
+}
+
+/******************
+	CLASS JPDIMergeEvent
+*******************/
+
+@Name("com.vistamaresoft.jpdfi.Merge")
+@Label("Resource Merge")
+@Description("The merge of the resources of a source page into a dest. page")
+@Category(CATEGORY)
+@StackTrace(false)
+public static class JPDIMergeEvent extends Event
+{
+	@Label("Signature No.")
+	public int		signatureNo;
+	@Label("Source Document")
+	public String	sourceDocument;
+	@Label("Source Page No.")
+	@Description("The no. (1-based) of the page within its source document")
+	public int		sourcePageNo;
+	@Label("Dest. Page No.")
+	public int		destPageNo;
+	@Label("Resources Merged")
+	public int		resourcesMerged;
+	@Label("Renames")
+	public int		renames;
+}
+
+/******************
+	CLASS JPDISinglePageEvent
+*******************/
+
+@Name("com.vistamaresoft.jpdfi.SinglePage")
+@Label("Single Page")
+@Description("The copy of an out-of-sequence page (e.g. opposite a fold-out) into a page of its own")
+@Category(CATEGORY)
+@StackTrace(false)
+public static class JPDISinglePageEvent extends Event
+{
+	@Label("Source Document")
+	public String	sourceDocument;
+	@Label("Source Page No.")
+	@Description("The no. (1-based) of the page within its source document")
+	public int		sourcePageNo;
+	@Label("Glued To")
+	public int		glueTo;
+	@Label("Content Size")
+	@DataAmount
+	public long		contentBytes;
+}
+
+/******************
+	CLASS JPDIConcatenateEvent
+*******************/
+
+@Name("com.vistamaresoft.jpdfi.Concatenate")
+@Label("Concatenation")
+@Description("The copy of source pages as they are, for the \"none\" format or appended documents")
+@Category(CATEGORY)
+@StackTrace(false)
+public static class JPDIConcatenateEvent extends Event
+{
+	@Label("Appended")
+	public boolean	appended;
+	@Label("Pages")
+	public int		pages;
+	@Label("Content Size")
+	@DataAmount
+	public long		contentBytes;
+}
+
+/******************
+	CLASS JPDISaveEvent
+*******************/
+
+@Name("com.vistamaresoft.jpdfi.Save")
+@Label("Save")
+@Description("The save of the dest. document (its completion, when streaming)")
+@Category(CATEGORY)
+@StackTrace(false)
+public static class JPDISaveEvent extends Event
+{
+	@Label("Output File")
+	public String	outputFile;
+	@Label("Streaming")
+	public boolean	streaming;
+	@Label("Output Size")
+	@DataAmount
+	public long		outputBytes;
+	@Label("Succeeded")
+	public boolean	succeeded;
+}
+
+}
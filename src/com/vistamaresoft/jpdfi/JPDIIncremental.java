@@ -0,0 +1,418 @@
+/****************************
+	j P D F i  -  A Java application to apply an imposition to a PDF document.
+
+	JPDIIncremental.java - Re-uses the unchanged signatures of a previous output
+
+	Created by : Maurizio M. Gavioli 2026-10-18
+
+	This program is free software; you can redistribute it and/or modify
+	it under the terms of the GNU General Public License as published by
+	the Free Software Foundation; either version 2 of the License, or
+	(at your option) any later version.
+	This program is distributed in the hope that it will be useful,
+	but WITHOUT ANY WARRANTY; without even the implied warranty of
+	MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+	GNU General Public License for more details.
+	You should have received a copy of the GNU General Public License along
+	with this program; if not, write to the Free Software Foundation, Inc.,
+	51 Franklin Street, Fifth Floor, Boston, MA 02110-1301 USA.
+
+*****************************/
+
+package com.vistamaresoft.jpdfi;
+
+import java.io.BufferedReader;
+import java.io.File;
+import java.io.FileNotFoundException;
+import java.io.FileReader;
+import java.io.IOException;
+import java.io.PrintStream;
+import java.io.UnsupportedEncodingException;
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.ArrayList;
+import java.util.HashMap;
+
+import de.intarsys.pdf.cos.COSObject;
+import de.intarsys.pdf.parser.COSLoadException;
+import de.intarsys.pdf.pd.PDDocument;
+import de.intarsys.pdf.pd.PDPage;
+import de.intarsys.tools.locator.FileLocator;
+
+/******************
+	CLASS JPDIIncremental
+*******************
+
+Supports incremental re-imposition: a manifest stored next to the output (with the MANIFEST_EXT
+extension) records a hash of the imposition parameters (the plan), a content hash of each source
+page and, for each signature, a hash of its plan entry and of its source pages, together with the
+dest. pages the signature produced in the output.
+
+On the next run, if the plan hash is the same, the previous output is opened read-only, where it is,
+and each signature whose hash did not change can take its dest. pages from it, rather than being
+composed again; if the plan changed, or there is no usable manifest or previous output, every
+signature is composed. While the previous output is open, the new output is written to a file with
+the NEW_EXT extension (see saveFileName()), which replaces the previous output only once saved
+successfully: whatever fails before, the previous output and its manifest are left as they were. A
+new manifest is written after each successful save.
+
+Source pages are hashed by their contents, their resources (including anything they reach) and
+their media box, as JPDIDedup compares objects; pages in reference loops cannot be hashed and their
+signatures are always composed. All the methods shall be called by the thread reading the source
+documents, in signature order. */
+
+public class JPDIIncremental
+{
+// PUBLIC DEFINITIONS
+
+public static final String	MANIFEST_EXT	= ".jpdfi";
+public static final String	NEW_EXT			= ".new";
+public static final String	PREV_EXT		= ".prev";		// used by former versions to set the output aside
+
+// PRIVATE DEFINITIONS
+
+private static final String	HEADER			= "jPDFImposition incremental 1";
+
+private class JPDISignEntry
+{
+	String		hash;				// null = not hashable
+	int			firstDestPage;		// the index of its first dest. page in the output
+	int			numOfDestPages;
+}
+
+// FIELDS
+
+private String								outputFileName;
+private String								planHash;
+private HashMap<Integer, JPDISignEntry>		prevSigns;		// the signatures of the previous output
+private PDDocument							prevDoc;		// the previous output, null if not usable
+private PDPage								prevPage;		// the page last read from it
+private int									prevPageNo;
+private ArrayList<JPDISignEntry>			signs;			// the signatures of this run
+private ArrayList<String>					pageLines;		// the source page hashes of this run
+private int									numOfDestPages;	// the dest. pages of this run so far
+private int									numOfReused;
+
+/******************
+	C'tor
+*******************/
+
+public JPDIIncremental(String outputFileName)
+{
+	this.outputFileName	= outputFileName;
+	prevSigns			= new HashMap<Integer, JPDISignEntry>();
+	signs				= new ArrayList<JPDISignEntry>();
+	pageLines			= new ArrayList<String>();
+	numOfDestPages		= 0;
+	numOfReused			= 0;
+}
+
+/******************
+	Getters
+*******************/
+
+public int	numOfReused()									{ return numOfReused;				}
+public int	numOfSignatures()								{ return signs.size();				}
+public PDDocument	prevDoc()								{ return prevDoc;					}
+
+/* The file the new output shall be written to: the output itself, unless the previous output is
+open, to be replaced only once the new one is saved (see finish()). */
+
+public String saveFileName()
+{
+	return prevDoc != null ? outputFileName + NEW_EXT : outputFileName;
+}
+
+/******************
+	Open the previous output
+*******************
+
+Reads the manifest of the previous run and, if its plan is the same as this, opens the previous
+output read-only, to take unchanged signatures from. Shall be called before the new output is
+created, which shall then be written to saveFileName().
+
+Parameters:	planKey:	a description of all the parameters the dest. pages depend on
+Returns:	true = the previous output can be used | false = everything is to be composed */
+
+public boolean open(String planKey)
+{
+	planHash	= hex(digest(planKey.getBytes(StandardCharsets.UTF_8)));
+	File	outFile		= new File(outputFileName);
+	// an output set aside by a former version, in a run interrupted before saving: put it back
+	File	oldPrevFile	= new File(outputFileName + PREV_EXT);
+	if (oldPrevFile.exists() && !outFile.exists())
+		oldPrevFile.renameTo(outFile);
+	new File(outputFileName + NEW_EXT).delete();	// left by an interrupted run
+	if (!readManifest() || !outFile.exists())
+		return false;
+	try {
+		FileLocator	locator	= new FileLocator(outFile.getPath());
+		locator.setReadOnly();
+		prevDoc	= PDDocument.createFromLocator(locator);
+	}
+	catch (IOException | COSLoadException e) {
+		System.err.println("Error opening the previous output " + outFile.getPath() + ": "
+				+ e.getMessage());
+		prevDoc	= null;
+		return false;
+	}
+	// the previous output shall have all the pages the manifest says
+	int		numOfPrevPages	= 0;
+	for (JPDISignEntry entry : prevSigns.values())
+		numOfPrevPages	= Math.max(numOfPrevPages, entry.firstDestPage + entry.numOfDestPages);
+	if (prevDoc.getPageTree().getCount() < numOfPrevPages)
+	{
+		System.err.println("The previous output " + outFile.getPath() + " does not match its manifest.");
+		close();
+		return false;
+	}
+	prevPage	= null;
+	prevPageNo	= -1;
+	return true;
+}
+
+/* Reads the manifest, if any, into prevSigns; returns true if it was made with the same plan. */
+
+private boolean readManifest()
+{
+	File	file	= new File(outputFileName + MANIFEST_EXT);
+	if (!file.exists())
+		return false;
+	boolean	samePlan	= false;
+	try (BufferedReader reader = new BufferedReader(new FileReader(file))) {
+		if (!HEADER.equals(reader.readLine()))
+			return false;
+		String	line;
+		while ( (line = reader.readLine()) != null)
+		{
+			String[]	fields	= line.split(" ", 5);
+			if (fields[0].equals("plan") && fields.length == 2)
+			{
+				if (!fields[1].equals(planHash))
+					return false;
+				samePlan	= true;
+			}
+			else if (fields[0].equals("sign") && fields.length == 5)
+			{
+				JPDISignEntry	entry	= new JPDISignEntry();
+				entry.firstDestPage		= Integer.parseInt(fields[2]);
+				entry.numOfDestPages	= Integer.parseInt(fields[3]);
+				entry.hash				= fields[4].equals("-") ? null : fields[4];
+				prevSigns.put(Integer.parseInt(fields[1]), entry);
+			}
+		}
+	}
+	catch (IOException | NumberFormatException e) {
+		System.err.println("Error reading the manifest " + file.getPath() + ": " + e.getMessage());
+		prevSigns.clear();
+		return false;
+	}
+	return samePlan;
+}
+
+/******************
+	Check a signature
+*******************
+
+Hashes the source pages of a signature, records the signature for the new manifest and tells if
+it is unchanged in the previous output. Signatures shall be checked in sequence.
+
+Parameters:	signNo:			the signature no.
+			planEntry:		a description of the signature plan (dest. pages, sizes...)
+			numOfDestPages:	the no. of dest. pages of the signature
+			srcPages:		the source page of each signature page, null if none
+			docNames:		the source document of each of them
+			pageNos:		the no. (0-based) of each of them in its document
+Returns:	true = the dest. pages can be taken from the previous output | false = to be composed */
+
+public boolean checkSignature(int signNo, String planEntry, int numOfDestPages, PDPage[] srcPages,
+		String[] docNames, int[] pageNos)
+{
+	// a fresh hasher for each signature, not to keep source objects alive for the whole run
+	JPDIDedup		hasher	= new JPDIDedup();
+	MessageDigest	md		= newDigest();
+	md.update(planEntry.getBytes(StandardCharsets.UTF_8));
+	boolean			hashable	= true;
+	for (int i = 0; i < srcPages.length; i++)
+	{
+		if (srcPages[i] == null)
+		{
+			md.update((byte)'-');
+			continue;
+		}
+		byte[]	pageHash	= pageHash(hasher, srcPages[i]);
+		if (pageHash == null)
+			hashable	= false;
+		else
+		{
+			md.update(pageHash);
+			pageLines.add("page " + hex(pageHash) + " " + pageNos[i] + " " + docNames[i]);
+		}
+	}
+
+	JPDISignEntry	entry	= new JPDISignEntry();
+	entry.hash				= hashable ? hex(md.digest()) : null;
+	entry.firstDestPage		= this.numOfDestPages;
+	entry.numOfDestPages	= numOfDestPages;
+	signs.add(entry);
+	this.numOfDestPages		+= numOfDestPages;
+
+	JPDISignEntry	prev	= prevSigns.get(signNo);
+	boolean			reuse	= prevDoc != null && entry.hash != null && prev != null
+			&& entry.hash.equals(prev.hash) && prev.numOfDestPages == numOfDestPages;
+	if (reuse)
+		numOfReused++;
+	return reuse;
+}
+
+/* Returns the hash of a source page | null if it cannot be hashed. */
+
+private static byte[] pageHash(JPDIDedup hasher, PDPage page)
+{
+	MessageDigest	md		= newDigest();
+	COSObject[]		parts	= {
+			page.cosGetField(PDPage.DK_Contents),
+			page.getResources() != null ? page.getResources().cosGetObject() : null,
+			page.getMediaBox() != null ? page.getMediaBox().cosGetObject() : null };
+	for (COSObject part : parts)
+	{
+		if (part == null)
+		{
+			md.update((byte)'-');
+			continue;
+		}
+		byte[]	hash	= hasher.hash(part);
+		if (hash == null)
+			return null;
+		md.update(hash);
+	}
+	return md.digest();
+}
+
+/******************
+	Previous pages
+*******************
+
+Returns a dest. page of a signature in the previous output; pages shall be asked for in increasing
+order.
+
+Parameters:	signNo:		the signature no.
+			pageNo:		the no. (0-based) of the dest. page within the signature
+Returns:	the page | null if not found */
+
+public PDPage prevPage(int signNo, int pageNo)
+{
+	JPDISignEntry	entry	= prevSigns.get(signNo);
+	if (prevDoc == null || entry == null)
+		return null;
+	int		target	= entry.firstDestPage + pageNo;
+	if (prevPage == null || target < prevPageNo)
+	{
+		prevPage	= prevDoc.getPageTree().getFirstPage();
+		prevPageNo	= 0;
+	}
+	while (prevPage != null && prevPageNo < target)
+	{
+		prevPage	= prevPage.getNextPage();
+		prevPageNo++;
+	}
+	return prevPage;
+}
+
+/******************
+	Finish
+*******************
+
+Closes the previous output and, if the new output was saved, replaces the previous output with it
+and writes the new manifest. Otherwise (including when the imposition failed before saving) deletes
+the new output, if written aside, leaving the previous output and its manifest as they were. Shall be
+called once the new output is closed.
+
+Parameters:	saved:	whether the new output was saved successfully
+Returns:	true = the output is in place | false = the new output could not replace the previous one */
+
+public boolean finish(boolean saved)
+{
+	String	saveFileName	= saveFileName();
+	close();
+	File	newFile	= new File(outputFileName + NEW_EXT);
+	if (!saved)
+	{
+		if (!saveFileName.equals(outputFileName))
+			newFile.delete();
+		else
+			new File(outputFileName + MANIFEST_EXT).delete();	// the output itself is not complete
+		return false;
+	}
+	if (!saveFileName.equals(outputFileName))
+	{
+		File	outFile	= new File(outputFileName);
+		// renameTo() does not replace an existing file on all platforms
+		if (!newFile.renameTo(outFile) && !(outFile.delete() && newFile.renameTo(outFile)))
+		{
+			System.err.println("Cannot replace " + outputFileName + " with " + newFile.getPath() + ".");
+			return false;
+		}
+	}
+	File	file	= new File(outputFileName + MANIFEST_EXT);
+	try (PrintStream out = new PrintStream(file, "UTF-8")) {
+		out.println(HEADER);
+		out.println("plan " + planHash);
+		for (String line : pageLines)
+			out.println(line);
+		for (int i = 0; i < signs.size(); i++)
+		{
+			JPDISignEntry	entry	= signs.get(i);
+			out.println("sign " + i + " " + entry.firstDestPage + " " + entry.numOfDestPages + " "
+					+ (entry.hash != null ? entry.hash : "-"));
+		}
+	}
+	catch (FileNotFoundException | UnsupportedEncodingException e) {
+		System.err.println("Error writing the manifest " + file.getPath() + ": " + e.getMessage());
+	}
+	return true;
+}
+
+private void close()
+{
+	if (prevDoc == null)
+		return;
+	try {
+		prevDoc.close();
+	}
+	catch (IOException e) {
+		System.err.println("Error closing the previous output: " + e.getMessage());
+	}
+	prevDoc		= null;
+	prevPage	= null;
+}
+
+/******************
+	Hashing helpers
+*******************/
+
+private static MessageDigest newDigest()
+{
+	try {
+		return MessageDigest.getInstance("SHA-256");
+	}
+	catch (NoSuchAlgorithmException e) {
+		throw new IllegalStateException("SHA-256 not available", e);
+	}
+}
+
+private static byte[] digest(byte[] bytes)
+{
+	return newDigest().digest(bytes);
+}
+
+private static String hex(byte[] bytes)
+{
+	StringBuilder	str	= new StringBuilder(bytes.length * 2);
+	for (byte b : bytes)
+		str.append(Character.forDigit((b >> 4) & 0xF, 16)).append(Character.forDigit(b & 0xF, 16));
+	return str.toString();
+}
+
+}
@@ -0,0 +1,213 @@
+/****************************
+	j P D F i  -  A Java application to apply an imposition to a PDF document.
+
+	JPDIMappedLocator.java - A file locator reading through memory-mapped regions
+
+	Created by : Maurizio M. Gavioli 2026-10-18
+
+	This program is free software; you can redistribute it and/or modify
+	it under the terms of the GNU General Public License as published by
+	the Free Software Foundation; either version 2 of the License, or
+	(at your option) any later version.
+	This program is distributed in the hope that it will be useful,
+	but WITHOUT ANY WARRANTY; without even the implied warranty of
+	MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+	GNU General Public License for more details.
+	You should have received a copy of the GNU General Public License along
+	with this program; if not, write to the Free Software Foundation, Inc.,
+	51 Franklin Street, Fifth Floor, Boston, MA 02110-1301 USA.
+
+*****************************/
+
+package com.vistamaresoft.jpdfi;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+
+import de.intarsys.tools.locator.FileLocator;
+import de.intarsys.tools.randomaccess.AbstractRandomAccess;
+import de.intarsys.tools.randomaccess.IRandomAccess;
+
+/******************
+	CLASS JPDIMappedLocator
+*******************
+
+A FileLocator whose random access reads the file through memory-mapped regions, rather than
+through a read system call for each buffer the parser fills: once a region is in the OS page cache,
+the random seeks of the parser and the reads of content streams are plain memory accesses.
+
+Files are mapped in chunks of CHUNK_SIZE bytes, each mapped only when first read, so that files
+larger than 2 GB (the most a single mapping can hold) can be read and the address space used is
+limited to the parts of the file actually read. The random access is read-only. */
+
+public class JPDIMappedLocator extends FileLocator
+{
+// PUBLIC DEFINITIONS
+
+public static final int		CHUNK_BITS	= 30;				// 1 GB chunks
+public static final long	CHUNK_SIZE	= 1L << CHUNK_BITS;
+
+// FIELDS
+
+private File				file;
+
+/******************
+	C'tor
+*******************/
+
+public JPDIMappedLocator(String fileName)
+{
+	super(fileName);
+	file	= new File(fileName);
+}
+
+/******************
+	Random access
+*******************/
+
+@Override
+public IRandomAccess getRandomAccess() throws IOException
+{
+	return new JPDIMappedAccess(file);
+}
+
+/******************
+	CLASS JPDIMappedAccess
+*******************
+
+The read-only random access to the chunks of a mapped file. Mapped chunks are released when garbage
+collected, as there is no portable way to unmap them: on some systems, the file cannot be deleted
+or replaced until then. */
+
+private static class JPDIMappedAccess extends AbstractRandomAccess
+{
+	private RandomAccessFile	raf;
+	private FileChannel			channel;
+	private long				length;
+	private long				offset;
+	private ByteBuffer[]		chunks;			// a view of each chunk mapped so far, null if not mapped
+
+	JPDIMappedAccess(File file) throws IOException
+	{
+		raf		= new RandomAccessFile(file, "r");
+		channel	= raf.getChannel();
+		length	= channel.size();
+		offset	= 0;
+		chunks	= new ByteBuffer[(int)((length + CHUNK_SIZE - 1) >> CHUNK_BITS)];
+	}
+
+	/* Returns the chunk containing the current offset, positioned at the offset. */
+
+	private ByteBuffer chunk() throws IOException
+	{
+		int			chunkNo	= (int)(offset >> CHUNK_BITS);
+		ByteBuffer	chunk	= chunks[chunkNo];
+		if (chunk == null)
+		{
+			long	start	= (long)chunkNo << CHUNK_BITS;
+			chunk			= channel.map(FileChannel.MapMode.READ_ONLY, start,
+					Math.min(CHUNK_SIZE, length - start));
+			chunks[chunkNo]	= chunk;
+		}
+		chunk.position((int)(offset & (CHUNK_SIZE - 1)));
+		return chunk;
+	}
+
+	@Override
+	public int read() throws IOException
+	{
+		if (offset >= length)
+			return -1;
+		int	b	= chunk().get() & 0xFF;
+		offset++;
+		return b;
+	}
+
+	@Override
+	public int read(byte[] buffer) throws IOException
+	{
+		return read(buffer, 0, buffer.length);
+	}
+
+	@Override
+	public int read(byte[] buffer, int start, int numOfBytes) throws IOException
+	{
+		if (numOfBytes == 0)
+			return 0;
+		if (offset >= length)
+			return -1;
+		int	total	= 0;
+		// a read may span several chunks
+		while (numOfBytes > 0 && offset < length)
+		{
+			ByteBuffer	chunk	= chunk();
+			int			count	= Math.min(numOfBytes, chunk.remaining());
+			chunk.get(buffer, start, count);
+			offset		+= count;
+			start		+= count;
+			numOfBytes	-= count;
+			total		+= count;
+		}
+		return total;
+	}
+
+	@Override
+	public long getLength()							{ return length;					}
+	@Override
+	public long getOffset()							{ return offset;					}
+	@Override
+	public boolean isReadOnly()						{ return true;						}
+
+	@Override
+	public void seek(long offset) throws IOException
+	{
+		if (offset < 0)
+			throw new IOException("Negative seek offset: " + offset);
+		this.offset	= offset;
+	}
+
+	@Override
+	public void seekBy(long delta) throws IOException
+	{
+		seek(offset + delta);
+	}
+
+	@Override
+	public void close() throws IOException
+	{
+		chunks	= new ByteBuffer[0];
+		raf.close();
+	}
+
+	@Override
+	public void flush()								{									}
+
+	@Override
+	public void setLength(long newLength) throws IOException
+	{
+		throw new IOException("Read-only random access");
+	}
+
+	@Override
+	public void write(int b) throws IOException
+	{
+		throw new IOException("Read-only random access");
+	}
+
+	@Override
+	public void write(byte[] buffer) throws IOException
+	{
+		throw new IOException("Read-only random access");
+	}
+
+	@Override
+	public void write(byte[] buffer, int start, int numOfBytes) throws IOException
+	{
+		throw new IOException("Read-only random access");
+	}
+}
+
+}
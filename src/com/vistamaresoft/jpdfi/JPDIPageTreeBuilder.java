@@ -0,0 +1,129 @@
+/****************************
+	j P D F i  -  A Java application to apply an imposition to a PDF document.
+
+	JPDIPageTreeBuilder.java - Builds a balanced page tree as pages are added
+
+	Created by : Maurizio M. Gavioli 2026-10-18
+
+	This program is free software; you can redistribute it and/or modify
+	it under the terms of the GNU General Public License as published by
+	the Free Software Foundation; either version 2 of the License, or
+	(at your option) any later version.
+	This program is distributed in the hope that it will be useful,
+	but WITHOUT ANY WARRANTY; without even the implied warranty of
+	MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+	GNU General Public License for more details.
+	You should have received a copy of the GNU General Public License along
+	with this program; if not, write to the Free Software Foundation, Inc.,
+	51 Franklin Street, Fifth Floor, Boston, MA 02110-1301 USA.
+
+*****************************/
+
+package com.vistamaresoft.jpdfi;
+
+import java.util.ArrayList;
+
+import de.intarsys.pdf.pd.PDPage;
+import de.intarsys.pdf.pd.PDPageNode;
+import de.intarsys.pdf.pd.PDPageTree;
+
+/******************
+	CLASS JPDIPageTreeBuilder
+*******************
+
+Adds pages to a document page tree as a balanced tree, rather than all as kids of the root: pages
+are grouped into intermediate nodes of up to fanOut kids, these into nodes of up to fanOut nodes
+and so on, so that any page is reached in a logarithmic number of steps and no node has more than
+fanOut kids.
+
+Pages are kept aside until a node is full; each full node is added at once to the level above and
+/Count is kept up to date by the page tree itself as nodes are added. finish() adds what is still
+kept aside under the root, and shall be called after the last page and before saving. */
+
+public class JPDIPageTreeBuilder
+{
+// PUBLIC DEFINITIONS
+
+public static final int		DEFAULT_FAN_OUT	= 32;
+
+// FIELDS
+
+private PDPageTree							root;
+private int									fanOut;		// < 2 = all pages directly under the root
+private ArrayList<ArrayList<PDPageNode>>	levels;		// nodes not in a node yet, by level (0 = pages)
+
+/******************
+	C'tor
+*******************
+
+Parameters:	root:	the root of the page tree, usually empty
+			fanOut:	the max. no. of kids of each node; < 2 = a flat tree */
+
+public JPDIPageTreeBuilder(PDPageTree root, int fanOut)
+{
+	this.root	= root;
+	this.fanOut	= fanOut;
+	levels		= new ArrayList<ArrayList<PDPageNode>>();
+}
+
+/******************
+	Add a page
+*******************/
+
+public void addPage(PDPage page)
+{
+	if (fanOut < 2)
+		root.addNode(page);
+	else
+		add(0, page);
+}
+
+private void add(int level, PDPageNode node)
+{
+	if (level == levels.size())
+		levels.add(new ArrayList<PDPageNode>(fanOut));
+	ArrayList<PDPageNode>	nodes	= levels.get(level);
+	nodes.add(node);
+	if (nodes.size() == fanOut)
+		add(level + 1, newNode(nodes));
+}
+
+/* Returns a new intermediate node with the given kids, emptying the kid list. */
+
+private PDPageTree newNode(ArrayList<PDPageNode> kids)
+{
+	PDPageTree	node	= (PDPageTree) PDPageTree.META.createNew();
+	for (PDPageNode kid : kids)
+		node.addNode(kid);
+	kids.clear();
+	return node;
+}
+
+/******************
+	Finish
+*******************
+
+Adds the pages and the nodes not yet in a node to the tree: at each level, the last partial group is
+gathered into a node of the level above; the top level goes directly under the root.
+
+Parameters:	none
+Returns:	none */
+
+public void finish()
+{
+	for (int level = 0; level < levels.size(); level++)
+	{
+		ArrayList<PDPageNode>	nodes	= levels.get(level);
+		if (level == levels.size() - 1)
+		{
+			for (PDPageNode node : nodes)
+				root.addNode(node);
+			nodes.clear();
+		}
+		else if (!nodes.isEmpty())
+			add(level + 1, newNode(nodes));
+	}
+	levels.clear();
+}
+
+}
@@ -0,0 +1,298 @@
+/****************************
+	j P D F i  -  A Java application to apply an imposition to a PDF document.
+
+	JPDIPlanCache.java - A cache of computed imposition plans, in memory and on disk
+
+	Created by : Maurizio M. Gavioli 2026-10-18
+
+	This program is free software; you can redistribute it and/or modify
+	it under the terms of the GNU General Public License as published by
+	the Free Software Foundation; either version 2 of the License, or
+	(at your option) any later version.
+	This program is distributed in the hope that it will be useful,
+	but WITHOUT ANY WARRANTY; without even the implied warranty of
+	MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+	GNU General Public License for more details.
+	You should have received a copy of the GNU General Public License along
+	with this program; if not, write to the Free Software Foundation, Inc.,
+	51 Franklin Street, Fifth Floor, Boston, MA 02110-1301 USA.
+
+*****************************/
+
+package com.vistamaresoft.jpdfi;
+
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.Arrays;
+import java.util.BitSet;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.TreeSet;
+
+/******************
+	CLASS JPDIPlanCache
+*******************
+
+Keeps the imposition plans computed by JPDImposition.setFormat(), in their binary form, keyed by a
+hash of the parameters they were computed from, so that a plan already computed (in this run or in
+a previous one) is read back rather than computed again.
+
+Plans are kept in two tiers:
+- in memory, up to maxMemoryBytes, the least recently used dropped first; as there is one cache per
+  directory for the whole process (see forDir()), all the jobs of a batch share it;
+- on disk, one file per plan in the cache directory, up to maxDiskBytes in total, the least recently
+  used (by file time) deleted first. Each file starts with a magic number and the PLAN_VERSION of the
+  planning code which wrote it: files of other versions are deleted when met.
+Files are written to a temporary file and then renamed, so that several processes may share the same
+directory. The class is thread-safe. */
+
+public class JPDIPlanCache
+{
+// PUBLIC DEFINITIONS
+
+public static final long	DEFAULT_MAX_DISK_BYTES		= 64L << 20;
+public static final long	DEFAULT_MAX_MEMORY_BYTES	= 16L << 20;
+public static final String	FILE_EXT					= ".plan";
+
+// PRIVATE DEFINITIONS
+
+private static final int	MAGIC	= 0x4A504450;		// "JPDP"
+
+// one cache per directory, for the whole process
+private static final HashMap<File, JPDIPlanCache>	caches	= new HashMap<File, JPDIPlanCache>();
+
+// FIELDS
+
+private File								dir;
+private long								maxDiskBytes;
+private long								maxMemoryBytes;
+private LinkedHashMap<String, byte[]>		memory;			// in access order
+private long								memoryBytes;
+private int									numOfHits;
+private int									numOfMisses;
+
+/******************
+	C'tor
+*******************/
+
+private JPDIPlanCache(File dir)
+{
+	this.dir		= dir;
+	maxDiskBytes	= DEFAULT_MAX_DISK_BYTES;
+	maxMemoryBytes	= DEFAULT_MAX_MEMORY_BYTES;
+	memory			= new LinkedHashMap<String, byte[]>(16, 0.75f, true);
+	memoryBytes		= 0;
+}
+
+/* Returns the cache using a directory, creating it (and the directory) if needed.
+
+Parameters:	dirName:	the directory name
+Returns:	the cache | null if the directory cannot be created */
+
+public static JPDIPlanCache forDir(String dirName)
+{
+	File	dir	= new File(dirName).getAbsoluteFile();
+	synchronized (caches)
+	{
+		JPDIPlanCache	cache	= caches.get(dir);
+		if (cache != null)
+			return cache;
+		if (!dir.isDirectory() && !dir.mkdirs())
+		{
+			System.err.println("Cannot create the plan cache directory " + dirName + ".");
+			return null;
+		}
+		cache	= new JPDIPlanCache(dir);
+		caches.put(dir, cache);
+		return cache;
+	}
+}
+
+/******************
+	Getters / Setters
+*******************/
+
+public synchronized int	numOfHits()							{ return numOfHits;					}
+public synchronized int	numOfMisses()						{ return numOfMisses;				}
+
+public synchronized void setMaxDiskBytes(long maxBytes)		{ maxDiskBytes = Math.max(maxBytes, 0);		}
+public synchronized void setMaxMemoryBytes(long maxBytes)	{ maxMemoryBytes = Math.max(maxBytes, 0);	}
+
+/******************
+	Plan key
+*******************
+
+Returns the key of the plan computed from a set of parameters: a hash of their canonical text form.
+The parameters shall be the ones actually used by the planning (max. sheets per signature already
+adjusted to the format, the break after the last page already in the signature breaks).
+
+Parameters:	as JPDImposition.setFormat(), with fold-outs as a set of page indices
+Returns:	the key, as hexadecimal digits */
+
+public static String planKey(JPDImposition.Format format, int formatSubParam, int maxSheetsPerSign,
+		int numOfPages, TreeSet<Integer> signBreakList, BitSet foldOuts)
+{
+	String	params	= format.name() + " " + formatSubParam + " " + maxSheetsPerSign + " " + numOfPages
+			+ " " + signBreakList + " " + foldOuts;
+	byte[]	hash;
+	try {
+		hash	= MessageDigest.getInstance("SHA-256").digest(params.getBytes(StandardCharsets.UTF_8));
+	}
+	catch (NoSuchAlgorithmException e) {
+		throw new IllegalStateException("SHA-256 not available", e);
+	}
+	StringBuilder	key	= new StringBuilder(hash.length * 2);
+	for (byte b : hash)
+		key.append(Character.forDigit((b >> 4) & 0xF, 16)).append(Character.forDigit(b & 0xF, 16));
+	return key.toString();
+}
+
+/******************
+	Get a plan
+*******************
+
+Parameters:	key:	the plan key
+Returns:	the plan binary form | null if not in the cache */
+
+public synchronized byte[] get(String key)
+{
+	byte[]	data	= memory.get(key);
+	if (data == null)
+	{
+		data	= readFile(key);
+		if (data != null)
+			putInMemory(key, data);
+	}
+	if (data != null)
+		numOfHits++;
+	else
+		numOfMisses++;
+	return data;
+}
+
+private byte[] readFile(String key)
+{
+	File	file	= new File(dir, key + FILE_EXT);
+	if (!file.isFile())
+		return null;
+	try (DataInputStream in = new DataInputStream(new FileInputStream(file))) {
+		if (in.readInt() == MAGIC && in.readInt() == JPDImposition.PLAN_VERSION)
+		{
+			int		length	= in.readInt();
+			if (length < 0 || length > file.length())
+				return null;
+			byte[]	data	= new byte[length];
+			in.readFully(data);
+			file.setLastModified(System.currentTimeMillis());	// recently used
+			return data;
+		}
+	}
+	catch (IOException e) {
+		System.err.println("Error reading the cached plan " + file.getPath() + ": " + e.getMessage());
+		return null;
+	}
+	// written by another planning code version: delete it, now that it is closed
+	file.delete();
+	return null;
+}
+
+/******************
+	Put a plan
+*******************
+
+Parameters:	key:	the plan key
+			data:	the plan binary form
+Returns:	none */
+
+public synchronized void put(String key, byte[] data)
+{
+	putInMemory(key, data);
+	writeFile(key, data);
+}
+
+private void putInMemory(String key, byte[] data)
+{
+	if (data.length > maxMemoryBytes)
+		return;
+	byte[]	old	= memory.put(key, data);
+	if (old != null)
+		memoryBytes	-= old.length;
+	memoryBytes	+= data.length;
+	Iterator<Map.Entry<String, byte[]>>	iter	= memory.entrySet().iterator();
+	while (memoryBytes > maxMemoryBytes && iter.hasNext())
+	{
+		memoryBytes	-= iter.next().getValue().length;
+		iter.remove();
+	}
+}
+
+private void writeFile(String key, byte[] data)
+{
+	if (data.length + 12 > maxDiskBytes)
+		return;
+	File	file	= new File(dir, key + FILE_EXT);
+	File	temp	= null;
+	try {
+		temp	= File.createTempFile(key, ".tmp", dir);
+		try (DataOutputStream out = new DataOutputStream(new FileOutputStream(temp))) {
+			out.writeInt(MAGIC);
+			out.writeInt(JPDImposition.PLAN_VERSION);
+			out.writeInt(data.length);
+			out.write(data);
+		}
+		if (!temp.renameTo(file))
+		{
+			file.delete();
+			if (!temp.renameTo(file))
+				throw new IOException("cannot rename " + temp.getName());
+		}
+	}
+	catch (IOException e) {
+		System.err.println("Error writing the cached plan " + file.getPath() + ": " + e.getMessage());
+		if (temp != null)
+			temp.delete();
+		return;
+	}
+	evict();
+}
+
+/* Deletes the least recently used plan files, until they take no more than maxDiskBytes. */
+
+private void evict()
+{
+	File[]	files	= dir.listFiles();
+	if (files == null)
+		return;
+	long	total	= 0;
+	for (File file : files)
+		if (file.getName().endsWith(FILE_EXT))
+			total	+= file.length();
+	if (total <= maxDiskBytes)
+		return;
+	Arrays.sort(files, new Comparator<File>()
+	{
+		public int compare(File f1, File f2)
+		{
+			return Long.compare(f1.lastModified(), f2.lastModified());
+		}
+	});
+	for (int i = 0; i < files.length && total > maxDiskBytes; i++)
+		if (files[i].getName().endsWith(FILE_EXT))
+		{
+			long	length	= files[i].length();
+			if (files[i].delete())
+				total	-= length;
+		}
+}
+
+}
@@ -0,0 +1,282 @@
+/****************************
+	j P D F i  -  A Java application to apply an imposition to a PDF document.
+
+	JPDIPreflight.java - Writes the plan of an imposition as JSON, without imposing it
+
+	Created by : Maurizio M. Gavioli 2026-10-18
+
+	This program is free software; you can redistribute it and/or modify
+	it under the terms of the GNU General Public License as published by
+	the Free Software Foundation; either version 2 of the License, or
+	(at your option) any later version.
+	This program is distributed in the hope that it will be useful,
+	but WITHOUT ANY WARRANTY; without even the implied warranty of
+	MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+	GNU General Public License for more details.
+	You should have received a copy of the GNU General Public License along
+	with this program; if not, write to the Free Software Foundation, Inc.,
+	51 Franklin Street, Fifth Floor, Boston, MA 02110-1301 USA.
+
+*****************************/
+
+package com.vistamaresoft.jpdfi;
+
+import java.io.PrintStream;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.TreeSet;
+
+/******************
+	CLASS JPDIPreflight
+*******************
+
+Describes, as JSON, where an imposition places each source page, from nothing more than the page
+count and the media box of each input and the computed plan: for each signature, its sheets, for
+each sheet its front and back sides, for each side its slots (rows x columns), each with the source
+page placed in it (or none, for a blank slot), its rotation, its offsets (as for fold-outs) and the
+origin of the page on the side. Pages placed out of sequence (as the page opposite a fold-out),
+which get a dest. page of their own, are listed separately for each signature.
+
+The media box of an input is the one of its first page used: as in the imposition, it gives the
+size of the sheets of the signatures starting in that input, unless a page size is set. */
+
+public class JPDIPreflight
+{
+// PRIVATE DEFINITIONS
+
+private class JPDIPreflightInput
+{
+	String		fileName;
+	int			numOfPages;			// the pages used
+	int			fromPage;			// the first page used (0-based)
+	float[]		mediaBox;			// llx, lly, urx, ury; null if unknown
+}
+
+// FIELDS
+
+private ArrayList<JPDIPreflightInput>	inputs;
+private int								totPages;
+
+/******************
+	C'tor
+*******************/
+
+public JPDIPreflight()
+{
+	inputs		= new ArrayList<JPDIPreflightInput>();
+	totPages	= 0;
+}
+
+/******************
+	Add an input
+*******************
+
+Parameters:	fileName:	the source document
+			numOfPages:	the no. of pages used from it
+			fromPage:	the first page used (0-based)
+			mediaBox:	the media box of that page (llx, lly, urx, ury); null if unknown
+Returns:	none */
+
+public void addInput(String fileName, int numOfPages, int fromPage, float[] mediaBox)
+{
+	JPDIPreflightInput	input	= new JPDIPreflightInput();
+	input.fileName		= fileName;
+	input.numOfPages	= numOfPages;
+	input.fromPage		= fromPage;
+	input.mediaBox		= mediaBox;
+	inputs.add(input);
+	totPages			+= numOfPages;
+}
+
+/******************
+	Write the plan
+*******************
+
+Parameters:	out:		where to write to
+			impo:		the imposition, whose format shall already be set for the inputs
+			foldOuts:	the fold-out pages
+			pageSizeX:	the dest. page (cell) width set by parameter; 0 = from the source pages
+			pageSizeY:	the same for the height
+Returns:	none */
+
+public void write(PrintStream out, JPDImposition impo, TreeSet<Integer> foldOuts,
+		double pageSizeX, double pageSizeY)
+{
+	int		numOfCols	= impo.numOfCols();
+	int		numOfRows	= impo.numOfRows();
+	out.println("{");
+	out.println("\"format\": " + jsonString(JPDImposition.formatValToString(impo.format())) + ",");
+	out.println("\"sourcePages\": " + totPages + ",");
+	out.println("\"columns\": " + numOfCols + ",");
+	out.println("\"rows\": " + numOfRows + ",");
+	out.println("\"foldOuts\": " + foldOuts + ",");
+	out.println("\"inputs\": [");
+	for (int i = 0; i < inputs.size(); i++)
+	{
+		JPDIPreflightInput	input	= inputs.get(i);
+		out.print("  {\"file\": " + jsonString(input.fileName) + ", \"pages\": " + input.numOfPages
+				+ ", \"fromPage\": " + (input.fromPage + 1) + ", \"mediaBox\": " + box(input.mediaBox) + "}");
+		out.println(i < inputs.size() - 1 ? "," : "");
+	}
+	out.println("],");
+	out.println("\"signatures\": [");
+	for (int signNo = 0; signNo < impo.numOfSignatures(); signNo++)
+	{
+		writeSignature(out, impo, signNo, pageSizeX, pageSizeY);
+		out.println(signNo < impo.numOfSignatures() - 1 ? "," : "");
+	}
+	out.println("]");
+	out.println("}");
+}
+
+private void writeSignature(PrintStream out, JPDImposition impo, int signNo, double pageSizeX,
+		double pageSizeY)
+{
+	int			numOfCols		= impo.numOfCols();
+	int			numOfRows		= impo.numOfRows();
+	int			numOfSrcPages	= impo.numOfSourcePagesPerSignature(signNo);
+	int			numOfDestPages	= impo.numOfDestPagesPerSignature(signNo);
+	int			firstPage		= impo.signatureFirstPage(signNo);
+	// the source page in each slot, by dest. page, row and col.; -1 = blank
+	int[][][]	slots			= new int[numOfDestPages][numOfRows][numOfCols];
+	for (int[][] page : slots)
+		for (int[] row : page)
+			Arrays.fill(row, -1);
+	ArrayList<Integer>	singlePages	= new ArrayList<Integer>();
+	for (int i = 0; i < numOfSrcPages; i++)
+	{
+		int	destPage	= impo.pageDestPage(i, signNo);
+		if (firstPage + i >= totPages || destPage == JPDImposition.NO_PAGE)
+			continue;
+		if (destPage == JPDImposition.OUT_OF_SEQUENCE_PAGE)
+			singlePages.add(i);
+		else
+			slots[destPage][impo.pageDestRow(i, signNo)][impo.pageDestCol(i, signNo)]	= i;
+	}
+
+	// the sheet size comes from the input of the first page, as in the imposition
+	float[]		box			= firstPage < totPages ? input(firstPage).mediaBox : null;
+	double		cellWidth	= pageSizeX > 0.0 ? pageSizeX : box != null ? box[2] - box[0] : 0.0;
+	double		cellHeight	= pageSizeY > 0.0 ? pageSizeY : box != null ? box[3] - box[1] : 0.0;
+	int			numOfBlanks	= 0;
+	StringBuilder	sheets	= new StringBuilder();
+	for (int destPage = 0; destPage < numOfDestPages; destPage++)
+	{
+		// dest. pages are the front and the back of each sheet in turn
+		if ((destPage & 1) == 0)
+			sheets.append(destPage > 0 ? "]},\n" : "").append("    {\"sheet\": ").append(destPage / 2)
+				.append(", \"sides\": [\n");
+		else
+			sheets.append(",\n");
+		sheets.append("      {\"side\": \"").append((destPage & 1) == 0 ? "front" : "back")
+			.append("\", \"slots\": [");
+		for (int row = 0; row < numOfRows; row++)
+			for (int col = 0; col < numOfCols; col++)
+			{
+				int	i	= slots[destPage][row][col];
+				sheets.append(row + col > 0 ? ",\n" : "\n").append("        {\"row\": ").append(row)
+					.append(", \"col\": ").append(col);
+				if (i < 0)
+				{
+					numOfBlanks++;
+					sheets.append(", \"page\": null}");
+					continue;
+				}
+				sheets.append(", ").append(page(firstPage + i))
+					.append(", \"rotation\": ").append(impo.pageDestRotation(i, signNo))
+					.append(", \"xOffset\": ").append(num(impo.pageDestOffsetX(i, signNo, 0.0)))
+					.append(", \"yOffset\": ").append(num(impo.pageDestOffsetY(i, signNo, 0.0)))
+					.append(", \"originX\": ").append(num(impo.pageDestOffsetX(i, signNo, cellWidth)))
+					.append(", \"originY\": ").append(num(impo.pageDestOffsetY(i, signNo, cellHeight)))
+					.append(glueTo(impo.pageDestGlueTo(i, signNo))).append("}");
+			}
+		sheets.append("]}");
+	}
+	if (numOfDestPages > 0)
+		sheets.append("]}\n");
+
+	out.println("  {\"signature\": " + signNo + ", \"firstPage\": " + (firstPage + 1)
+			+ ", \"sourcePages\": " + Math.min(numOfSrcPages, Math.max(totPages - firstPage, 0))
+			+ ", \"sheets\": " + (numOfDestPages + 1) / 2 + ", \"blankSlots\": " + numOfBlanks + ",");
+	out.println("  \"sheetSize\": [" + num(cellWidth * numOfCols) + ", " + num(cellHeight * numOfRows) + "],");
+	out.print("  \"singlePages\": [");
+	for (int j = 0; j < singlePages.size(); j++)
+	{
+		int	i	= singlePages.get(j);
+		out.print((j > 0 ? ", " : "") + "{" + page(firstPage + i) + glueTo(impo.pageDestGlueTo(i, signNo))
+				+ "}");
+	}
+	out.println("],");
+	out.print("  \"sheetList\": [\n" + sheets + "  ]}");
+}
+
+/******************
+	Helpers
+*******************/
+
+/* Returns the input providing a page of the whole source page sequence. */
+
+private JPDIPreflightInput input(int pageNo)
+{
+	for (JPDIPreflightInput input : inputs)
+	{
+		if (pageNo < input.numOfPages)
+			return input;
+		pageNo	-= input.numOfPages;
+	}
+	return null;
+}
+
+/* Returns the JSON fields describing a page of the whole source page sequence: its sequence no.,
+its input and its page no. in the input (both 1-based). */
+
+private String page(int pageNo)
+{
+	int		inPageNo	= pageNo;
+	for (JPDIPreflightInput input : inputs)
+	{
+		if (inPageNo < input.numOfPages)
+			return "\"page\": " + (pageNo + 1) + ", \"file\": " + jsonString(input.fileName)
+					+ ", \"filePage\": " + (input.fromPage + inPageNo + 1);
+		inPageNo	-= input.numOfPages;
+	}
+	return "\"page\": " + (pageNo + 1);
+}
+
+/* Returns a number with at most 2 decimals; String.format() would take most of the time. */
+
+private static String num(double val)
+{
+	double	rounded	= Math.round(val * 100.0) / 100.0;
+	return rounded == (long)rounded ? Long.toString((long)rounded) : Double.toString(rounded);
+}
+
+private static String glueTo(int glueTo)
+{
+	return glueTo == JPDImposition.NO_PAGE ? "" : ", \"glueTo\": " + (glueTo + 1);
+}
+
+private static String box(float[] box)
+{
+	if (box == null)
+		return "null";
+	return "[" + num(box[0]) + ", " + num(box[1]) + ", " + num(box[2]) + ", " + num(box[3]) + "]";
+}
+
+private static String jsonString(String str)
+{
+	StringBuilder	json	= new StringBuilder(str.length() + 2).append('"');
+	for (int i = 0; i < str.length(); i++)
+	{
+		char	c	= str.charAt(i);
+		if (c == '"' || c == '\\')
+			json.append('\\').append(c);
+		else if (c < 0x20)
+			json.append(String.format("\\u%04x", (int)c));
+		else
+			json.append(c);
+	}
+	return json.append('"').toString();
+}
+
+}
@@ -0,0 +1,903 @@
+/****************************
+	j P D F i  -  A Java application to apply an imposition to a PDF document.
+
+	JPDIProbe.java - Reads the page count and the default media box of a PDF file without opening it
+
+	Created by : Maurizio M. Gavioli 2026-10-18
+
+	This program is free software; you can redistribute it and/or modify
+	it under the terms of the GNU General Public License as published by
+	the Free Software Foundation; either version 2 of the License, or
+	(at your option) any later version.
+	This program is distributed in the hope that it will be useful,
+	but WITHOUT ANY WARRANTY; without even the implied warranty of
+	MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+	GNU General Public License for more details.
+	You should have received a copy of the GNU General Public License along
+	with this program; if not, write to the Free Software Foundation, Inc.,
+	51 Franklin Street, Fifth Floor, Boston, MA 02110-1301 USA.
+
+*****************************/
+
+package com.vistamaresoft.jpdfi;
+
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.zip.DataFormatException;
+import java.util.zip.Inflater;
+
+/******************
+	CLASS JPDIProbe
+*******************
+
+Reads the page count and the default media box (the one of the root of the page tree, if any) of a
+PDF file with a handful of small reads: the end of the file for the cross-reference position, the
+cross-reference sections (tables or streams, following /Prev and /XRefStm) up to the entries needed,
+the catalog and the root of the page tree. Nothing else of the file is read or parsed, and no
+PDDocument is created.
+
+The results are cached by file path, and re-used as long as the modification time and the size of
+the file do not change. Whatever the probe cannot handle (a damaged or unusual file, a catalog in an
+encrypted object stream, a filter other than Flate for an object or cross-reference stream...) makes
+it return null: the caller is then expected to open the document the usual way. The class is
+thread-safe. */
+
+public class JPDIProbe
+{
+// PUBLIC DEFINITIONS
+
+public static class JPDIProbeInfo
+{
+	public final int		numOfPages;
+	public final float[]	mediaBox;		// llx, lly, urx, ury (normalized); null if the root has none
+	final long				lastModified;
+	final long				length;
+
+	JPDIProbeInfo(int numOfPages, float[] mediaBox, long lastModified, long length)
+	{
+		this.numOfPages		= numOfPages;
+		this.mediaBox		= mediaBox;
+		this.lastModified	= lastModified;
+		this.length			= length;
+	}
+}
+
+// PRIVATE DEFINITIONS
+
+private static final int	TAIL_SIZE		= 1024;		// the bytes at the end searched for startxref
+private static final int	READ_SIZE		= 4096;		// the initial size of an object read
+private static final int	MAX_READ_SIZE	= 4 << 20;	// the max. size of an object read
+private static final int	XREF_ENTRY_SIZE	= 20;		// the size of a cross-reference table entry
+private static final int	MAX_SECTIONS	= 256;		// against /Prev loops
+
+// the results, by absolute file path
+private static final ConcurrentHashMap<String, JPDIProbeInfo>	cache	=
+		new ConcurrentHashMap<String, JPDIProbeInfo>();
+
+// a reference to an indirect object
+private static class JPDIRef
+{
+	int		num;
+	int		gen;
+}
+
+// a cross-reference section: a table (its sub-sections) or a stream (its decoded entries)
+private static class JPDIXRefSection
+{
+	int[]	first;			// the first object no. of each sub-section
+	int[]	count;			// the no. of entries of each sub-section
+	long[]	pos;			// table: the file position of the first entry of each sub-section
+	int[]	row;			// stream: the index of the first entry of each sub-section
+	byte[]	data;			// stream: the decoded entries
+	int[]	w;				// stream: the widths of the entry fields
+}
+
+// thrown when the data read end before the object parsed
+private static class JPDIShortData extends IOException
+{
+	private static final long serialVersionUID = 1L;
+}
+
+// FIELDS
+
+private RandomAccessFile			file;
+private long						fileLength;
+private ArrayList<JPDIXRefSection>	sections;		// newest first
+private boolean						encrypted;
+
+/******************
+	C'tor
+*******************/
+
+private JPDIProbe(RandomAccessFile file) throws IOException
+{
+	this.file	= file;
+	fileLength	= file.length();
+	sections	= new ArrayList<JPDIXRefSection>();
+	encrypted	= false;
+}
+
+/******************
+	Probe a file
+*******************
+
+Parameters:	fileName:	the PDF file
+Returns:	the page count and the default media box | null if the file cannot be probed */
+
+public static JPDIProbeInfo probe(String fileName)
+{
+	File			f		= new File(fileName).getAbsoluteFile();
+	long			lastMod	= f.lastModified();
+	long			length	= f.length();
+	JPDIProbeInfo	info	= cache.get(f.getPath());
+	if (info != null && info.lastModified == lastMod && info.length == length)
+		return info;
+	try (RandomAccessFile raf = new RandomAccessFile(f, "r")) {
+		info	= new JPDIProbe(raf).probe(lastMod, length);
+	}
+	catch (IOException | RuntimeException e) {
+		info	= null;
+	}
+	if (info != null)
+		cache.put(f.getPath(), info);
+	else
+		cache.remove(f.getPath());
+	return info;
+}
+
+private JPDIProbeInfo probe(long lastMod, long length) throws IOException
+{
+	Map<String, Object>	trailer	= readXRefChain(findStartXRef());
+	if (trailer == null)
+		return null;
+	Map<String, Object>	catalog	= dict(resolve(trailer.get("/Root")));
+	if (catalog == null)
+		return null;
+	Map<String, Object>	pages	= dict(resolve(catalog.get("/Pages")));
+	if (pages == null)
+		return null;
+	Object				count	= resolve(pages.get("/Count"));
+	if (!(count instanceof Number) || ((Number)count).intValue() < 0)
+		return null;
+	float[]				box		= null;
+	Object				boxObj	= resolve(pages.get("/MediaBox"));
+	if (boxObj instanceof List && ((List<?>)boxObj).size() == 4)
+	{
+		box	= new float[4];
+		for (int i = 0; i < 4; i++)
+		{
+			Object	val	= resolve(((List<?>)boxObj).get(i));
+			if (!(val instanceof Number))
+				return null;
+			box[i]	= ((Number)val).floatValue();
+		}
+		// normalize, as CDSRectangle.normalize()
+		box	= new float[] { Math.min(box[0], box[2]), Math.min(box[1], box[3]),
+				Math.max(box[0], box[2]), Math.max(box[1], box[3]) };
+	}
+	return new JPDIProbeInfo(((Number)count).intValue(), box, lastMod, length);
+}
+
+/******************
+	Cross-reference sections
+*******************/
+
+/* Returns the position of the last cross-reference section, from the startxref at the file end. */
+
+private long findStartXRef() throws IOException
+{
+	int		size	= (int)Math.min(TAIL_SIZE, fileLength);
+	byte[]	tail	= read(fileLength - size, size);
+	byte[]	key		= "startxref".getBytes("US-ASCII");
+	for (int i = size - key.length; i >= 0; i--)
+		if (matches(tail, i, key))
+		{
+			Object	pos	= new JPDIParser(tail, i + key.length).next();
+			if (pos instanceof Number)
+				return ((Number)pos).longValue();
+			break;
+		}
+	throw new IOException("no startxref");
+}
+
+/* Reads the cross-reference sections from the newest one back, returning the newest trailer. */
+
+private Map<String, Object> readXRefChain(long pos) throws IOException
+{
+	Map<String, Object>	newest	= null;
+	ArrayList<Long>		todo	= new ArrayList<Long>();
+	todo.add(pos);
+	while (!todo.isEmpty())
+	{
+		if (sections.size() >= MAX_SECTIONS)
+			return null;
+		pos	= todo.remove(0);
+		Map<String, Object>	trailer	= readXRefSection(pos);
+		if (trailer == null)
+			return null;
+		if (newest == null)
+			newest	= trailer;
+		if (trailer.containsKey("/Encrypt"))
+			encrypted	= true;
+		// in hybrid files, the stream of /XRefStm comes before the /Prev sections
+		Object	xrefStm	= trailer.get("/XRefStm");
+		if (xrefStm instanceof Number)
+			todo.add(((Number)xrefStm).longValue());
+		Object	prev	= trailer.get("/Prev");
+		if (prev instanceof Number)
+			todo.add(((Number)prev).longValue());
+	}
+	return newest;
+}
+
+private Map<String, Object> readXRefSection(long pos) throws IOException
+{
+	for (int size = READ_SIZE; ; size *= 2)
+	{
+		int		len		= (int)Math.min(size, fileLength - pos);
+		if (len <= 0)
+			return null;
+		byte[]	data	= read(pos, len);
+		try {
+			JPDIParser	parser	= new JPDIParser(data, 0);
+			Object		first	= parser.next();
+			if ("xref".equals(first))
+				return readXRefTable(pos, data, parser);
+			// an xref stream: "num gen obj << ... >> stream"
+			parser.pos	= 0;
+			return readXRefStream(pos, data, parser);
+		}
+		catch (JPDIShortData e) {
+			if (len < size || size >= MAX_READ_SIZE)
+				return null;
+		}
+	}
+}
+
+private Map<String, Object> readXRefTable(long pos, byte[] data, JPDIParser parser) throws IOException
+{
+	JPDIXRefSection	section	= new JPDIXRefSection();
+	ArrayList<int[]>	subs	= new ArrayList<int[]>();
+	ArrayList<Long>		subPos	= new ArrayList<Long>();
+	while (true)
+	{
+		Object	tok	= parser.next();
+		if ("trailer".equals(tok))
+			break;
+		Object	count	= parser.next();
+		if (!(tok instanceof Integer) || !(count instanceof Integer))
+			return null;
+		// skip the entries without parsing them: they are read only when needed
+		parser.skipWhite();
+		subs.add(new int[] { (Integer)tok, (Integer)count });
+		subPos.add(pos + parser.pos);
+		long	skip	= (long)(Integer)count * XREF_ENTRY_SIZE;
+		if (parser.pos + skip > data.length)
+		{
+			// too many entries to read here: go on reading after them
+			return readTrailerAfter(pos + parser.pos + skip, subs, subPos, section);
+		}
+		parser.pos	+= (int)skip;
+	}
+	setSubSections(section, subs, subPos);
+	sections.add(section);
+	return dict(parser.next());
+}
+
+/* Reads the rest of a cross-reference table (more sub-sections and the trailer) from a position. */
+
+private Map<String, Object> readTrailerAfter(long pos, ArrayList<int[]> subs, ArrayList<Long> subPos,
+		JPDIXRefSection section) throws IOException
+{
+	while (true)
+	{
+		int			len		= (int)Math.min(READ_SIZE, fileLength - pos);
+		if (len <= 0)
+			return null;
+		JPDIParser	parser	= new JPDIParser(read(pos, len), 0);
+		Object		tok		= parser.next();
+		if ("trailer".equals(tok))
+		{
+			setSubSections(section, subs, subPos);
+			sections.add(section);
+			return dict(parser.next());
+		}
+		Object		count	= parser.next();
+		if (!(tok instanceof Integer) || !(count instanceof Integer))
+			return null;
+		parser.skipWhite();
+		subs.add(new int[] { (Integer)tok, (Integer)count });
+		subPos.add(pos + parser.pos);
+		pos	+= parser.pos + (long)(Integer)count * XREF_ENTRY_SIZE;
+	}
+}
+
+private static void setSubSections(JPDIXRefSection section, ArrayList<int[]> subs, ArrayList<Long> subPos)
+{
+	int		n	= subs.size();
+	section.first	= new int[n];
+	section.count	= new int[n];
+	section.pos		= new long[n];
+	for (int i = 0; i < n; i++)
+	{
+		section.first[i]	= subs.get(i)[0];
+		section.count[i]	= subs.get(i)[1];
+		section.pos[i]		= subPos.get(i);
+	}
+}
+
+private Map<String, Object> readXRefStream(long pos, byte[] data, JPDIParser parser) throws IOException
+{
+	parser.next();									// object no.
+	parser.next();									// generation
+	if (!"obj".equals(parser.next()))
+		return null;
+	Map<String, Object>	dict	= dict(parser.next());
+	if (dict == null || !"/XRef".equals(dict.get("/Type")))
+		return null;
+	byte[]				decoded	= streamData(pos, data, parser, dict);
+	Object				wObj	= dict.get("/W");
+	Object				size	= dict.get("/Size");
+	if (decoded == null || !(wObj instanceof List) || ((List<?>)wObj).size() != 3 || !(size instanceof Integer))
+		return null;
+	JPDIXRefSection		section	= new JPDIXRefSection();
+	section.w		= new int[3];
+	int					rowSize	= 0;
+	for (int i = 0; i < 3; i++)
+	{
+		section.w[i]	= ((Number)((List<?>)wObj).get(i)).intValue();
+		rowSize			+= section.w[i];
+	}
+	Object				index	= dict.get("/Index");
+	List<?>				indexList	= index instanceof List ? (List<?>)index
+			: Arrays.asList(0, (Integer)size);
+	int					n		= indexList.size() / 2;
+	section.first	= new int[n];
+	section.count	= new int[n];
+	section.row		= new int[n];
+	int					row		= 0;
+	for (int i = 0; i < n; i++)
+	{
+		section.first[i]	= ((Number)indexList.get(i * 2)).intValue();
+		section.count[i]	= ((Number)indexList.get(i * 2 + 1)).intValue();
+		section.row[i]		= row;
+		row					+= section.count[i];
+	}
+	if ((long)row * rowSize > decoded.length)
+		return null;
+	section.data	= decoded;
+	sections.add(section);
+	return dict;
+}
+
+/******************
+	Objects
+*******************/
+
+/* Returns an object, resolving it if a reference. */
+
+private Object resolve(Object obj) throws IOException
+{
+	for (int depth = 0; obj instanceof JPDIRef; depth++)
+	{
+		if (depth > 8)
+			return null;
+		obj	= readObject(((JPDIRef)obj).num);
+	}
+	return obj;
+}
+
+/* Reads an indirect object, from the newest cross-reference section defining it. */
+
+private Object readObject(int num) throws IOException
+{
+	for (JPDIXRefSection section : sections)
+		for (int i = 0; i < section.first.length; i++)
+		{
+			int		idx	= num - section.first[i];
+			if (idx < 0 || idx >= section.count[i])
+				continue;
+			if (section.data == null)
+			{
+				// a table entry: "oooooooooo ggggg n"
+				JPDIParser	entry	= new JPDIParser(read(section.pos[i] + (long)idx * XREF_ENTRY_SIZE,
+						XREF_ENTRY_SIZE), 0);
+				Object		offset	= entry.next();
+				entry.next();
+				Object		type	= entry.next();
+				if (!(offset instanceof Number) || !"n".equals(type))
+					return null;
+				return readObjectAt(((Number)offset).longValue(), num);
+			}
+			int		row		= (section.row[i] + idx) * (section.w[0] + section.w[1] + section.w[2]);
+			long	type	= section.w[0] == 0 ? 1 : field(section.data, row, section.w[0]);
+			long	f2		= field(section.data, row + section.w[0], section.w[1]);
+			long	f3		= field(section.data, row + section.w[0] + section.w[1], section.w[2]);
+			if (type == 1)
+				return readObjectAt(f2, num);
+			if (type == 2 && !encrypted)
+				return readFromObjStm((int)f2, (int)f3, num);
+			return null;
+		}
+	return null;
+}
+
+private Object readObjectAt(long pos, int num) throws IOException
+{
+	for (int size = READ_SIZE; ; size *= 2)
+	{
+		int		len		= (int)Math.min(size, fileLength - pos);
+		if (len <= 0)
+			return null;
+		try {
+			JPDIParser	parser	= new JPDIParser(read(pos, len), 0);
+			Object		objNum	= parser.next();
+			parser.next();
+			if (!(objNum instanceof Integer) || (Integer)objNum != num || !"obj".equals(parser.next()))
+				return null;
+			return parser.next();
+		}
+		catch (JPDIShortData e) {
+			if (len < size || size >= MAX_READ_SIZE)
+				return null;
+		}
+	}
+}
+
+/* Reads an object from an object stream. */
+
+private Object readFromObjStm(int stmNum, int index, int num) throws IOException
+{
+	long		pos		= -1;
+	for (JPDIXRefSection section : sections)
+	{
+		pos	= objectPos(section, stmNum);
+		if (pos != -1)
+			break;
+	}
+	if (pos < 0)
+		return null;
+	for (int size = READ_SIZE; ; size *= 2)
+	{
+		int		len		= (int)Math.min(size, fileLength - pos);
+		if (len <= 0)
+			return null;
+		byte[]	data	= read(pos, len);
+		try {
+			JPDIParser			parser	= new JPDIParser(data, 0);
+			parser.next();
+			parser.next();
+			if (!"obj".equals(parser.next()))
+				return null;
+			Map<String, Object>	dict	= dict(parser.next());
+			if (dict == null || !"/ObjStm".equals(dict.get("/Type")))
+				return null;
+			Object				first	= dict.get("/First");
+			byte[]				decoded	= streamData(pos, data, parser, dict);
+			if (decoded == null || !(first instanceof Integer))
+				return null;
+			// the header: pairs of object no. and offset from /First
+			JPDIParser			objs	= new JPDIParser(decoded, 0);
+			for (int i = 0; i <= index; i++)
+			{
+				Object	objNum	= objs.nextNumber();
+				Object	offset	= objs.nextNumber();
+				if (i == index)
+				{
+					if (!(objNum instanceof Integer) || (Integer)objNum != num || !(offset instanceof Integer))
+						return null;
+					objs.pos	= (Integer)first + (Integer)offset;
+					return objs.next();
+				}
+			}
+			return null;
+		}
+		catch (JPDIShortData e) {
+			if (len < size || size >= MAX_READ_SIZE)
+				return null;
+		}
+	}
+}
+
+/* Returns the file position of an object from a section, -1 if not in it or not at a position. */
+
+private long objectPos(JPDIXRefSection section, int num) throws IOException
+{
+	for (int i = 0; i < section.first.length; i++)
+	{
+		int		idx	= num - section.first[i];
+		if (idx < 0 || idx >= section.count[i])
+			continue;
+		if (section.data == null)
+		{
+			JPDIParser	entry	= new JPDIParser(read(section.pos[i] + (long)idx * XREF_ENTRY_SIZE,
+					XREF_ENTRY_SIZE), 0);
+			Object		offset	= entry.next();
+			entry.next();
+			return offset instanceof Number && "n".equals(entry.next()) ? ((Number)offset).longValue() : -2;
+		}
+		int		row		= (section.row[i] + idx) * (section.w[0] + section.w[1] + section.w[2]);
+		long	type	= section.w[0] == 0 ? 1 : field(section.data, row, section.w[0]);
+		return type == 1 ? field(section.data, row + section.w[0], section.w[1]) : -2;
+	}
+	return -1;
+}
+
+/* Returns the decoded data of a stream whose dictionary has just been parsed. */
+
+private byte[] streamData(long pos, byte[] data, JPDIParser parser, Map<String, Object> dict)
+		throws IOException
+{
+	if (!"stream".equals(parser.next()))
+		return null;
+	// the keyword is followed by CR LF or LF
+	if (parser.pos < data.length && data[parser.pos] == '\r')
+		parser.pos++;
+	if (parser.pos < data.length && data[parser.pos] == '\n')
+		parser.pos++;
+	Object	lengthObj	= dict.get("/Length");
+	int		length;
+	if (lengthObj instanceof Integer)
+		length	= (Integer)lengthObj;
+	else
+	{
+		// an indirect length: the data end at "endstream"
+		byte[]	key		= "endstream".getBytes("US-ASCII");
+		length	= -1;
+		for (int i = parser.pos; i <= data.length - key.length; i++)
+			if (matches(data, i, key))
+			{
+				length	= i - parser.pos;
+				break;
+			}
+		if (length < 0)
+			throw new JPDIShortData();
+	}
+	if (parser.pos + length > data.length)
+		throw new JPDIShortData();
+	byte[]	encoded	= Arrays.copyOfRange(data, parser.pos, parser.pos + length);
+	Object	filter	= dict.get("/Filter");
+	if (filter instanceof List && ((List<?>)filter).size() == 1)
+		filter	= ((List<?>)filter).get(0);
+	if (filter == null)
+		return encoded;
+	if (!"/FlateDecode".equals(filter))
+		return null;
+	byte[]	decoded	= inflate(encoded);
+	Object	parms	= dict.get("/DecodeParms");
+	if (parms instanceof List && ((List<?>)parms).size() == 1)
+		parms	= ((List<?>)parms).get(0);
+	if (parms instanceof Map)
+	{
+		Object	predictor	= ((Map<?, ?>)parms).get("/Predictor");
+		Object	columns		= ((Map<?, ?>)parms).get("/Columns");
+		if (predictor instanceof Integer && (Integer)predictor >= 10)
+			return unpredict(decoded, columns instanceof Integer ? (Integer)columns : 1);
+		if (predictor instanceof Integer && (Integer)predictor != 1)
+			return null;
+	}
+	return decoded;
+}
+
+/******************
+	Helpers
+*******************/
+
+private byte[] read(long pos, int len) throws IOException
+{
+	if (pos < 0 || len < 0 || pos + len > fileLength)
+		throw new IOException("read beyond the end of the file");
+	byte[]	data	= new byte[len];
+	file.seek(pos);
+	file.readFully(data);
+	return data;
+}
+
+private static boolean matches(byte[] data, int pos, byte[] key)
+{
+	for (int i = 0; i < key.length; i++)
+		if (data[pos + i] != key[i])
+			return false;
+	return true;
+}
+
+private static long field(byte[] data, int pos, int width)
+{
+	long	val	= 0;
+	for (int i = 0; i < width; i++)
+		val	= (val << 8) | (data[pos + i] & 0xFF);
+	return val;
+}
+
+@SuppressWarnings("unchecked")
+private static Map<String, Object> dict(Object obj)
+{
+	return obj instanceof Map ? (Map<String, Object>)obj : null;
+}
+
+private static byte[] inflate(byte[] data) throws IOException
+{
+	Inflater				inflater	= new Inflater();
+	ByteArrayOutputStream	out			= new ByteArrayOutputStream(data.length * 4);
+	byte[]					buffer		= new byte[8192];
+	try {
+		inflater.setInput(data);
+		while (!inflater.finished())
+		{
+			int	n	= inflater.inflate(buffer);
+			if (n == 0 && (inflater.needsInput() || inflater.needsDictionary()))
+				break;
+			out.write(buffer, 0, n);
+		}
+	}
+	catch (DataFormatException e) {
+		throw new IOException(e.getMessage());
+	}
+	finally {
+		inflater.end();
+	}
+	return out.toByteArray();
+}
+
+/* Reverses the PNG predictors (one colour component of 8 bits, as in cross-reference streams). */
+
+private static byte[] unpredict(byte[] data, int columns)
+{
+	int		rowSize	= columns + 1;
+	int		numRows	= data.length / rowSize;
+	byte[]	out		= new byte[numRows * columns];
+	for (int r = 0; r < numRows; r++)
+	{
+		int		type	= data[r * rowSize];
+		int		src		= r * rowSize + 1;
+		int		dst		= r * columns;
+		for (int c = 0; c < columns; c++)
+		{
+			int	raw		= data[src + c] & 0xFF;
+			int	left	= c > 0 ? out[dst + c - 1] & 0xFF : 0;
+			int	up		= r > 0 ? out[dst - columns + c] & 0xFF : 0;
+			int	upLeft	= r > 0 && c > 0 ? out[dst - columns + c - 1] & 0xFF : 0;
+			int	val;
+			switch (type)
+			{
+			case 1:		val	= raw + left;								break;
+			case 2:		val	= raw + up;									break;
+			case 3:		val	= raw + ((left + up) >> 1);					break;
+			case 4:		val	= raw + paeth(left, up, upLeft);			break;
+			default:	val	= raw;										break;
+			}
+			out[dst + c]	= (byte)val;
+		}
+	}
+	return out;
+}
+
+private static int paeth(int a, int b, int c)
+{
+	int	p	= a + b - c;
+	int	pa	= Math.abs(p - a);
+	int	pb	= Math.abs(p - b);
+	int	pc	= Math.abs(p - c);
+	return pa <= pb && pa <= pc ? a : pb <= pc ? b : c;
+}
+
+/******************
+	CLASS JPDIParser
+*******************
+
+A minimal parser of PDF objects from a byte buffer: dictionaries (as Map with the keys as names),
+arrays (as List), names (as String with the leading '/'), numbers (as Integer, Long or Double),
+references (as JPDIRef), booleans, null and keywords (as String without '/'); strings are skipped and
+returned as empty byte arrays. Reaching the end of the buffer throws JPDIShortData. */
+
+private static class JPDIParser
+{
+	byte[]	data;
+	int		pos;
+
+	JPDIParser(byte[] data, int pos)
+	{
+		this.data	= data;
+		this.pos	= pos;
+	}
+
+	Object next() throws IOException
+	{
+		skipWhite();
+		int		c	= data[pos] & 0xFF;
+		switch (c)
+		{
+		case '<':
+			if (peek(1) == '<')
+			{
+				pos	+= 2;
+				HashMap<String, Object>	dict	= new HashMap<String, Object>();
+				while (true)
+				{
+					skipWhite();
+					if (data[pos] == '>')
+					{
+						if (peek(1) != '>')
+							throw new IOException("bad dictionary end");
+						pos	+= 2;
+						return dict;
+					}
+					Object	key	= next();
+					if (!(key instanceof String) || !((String)key).startsWith("/"))
+						throw new IOException("bad dictionary key");
+					dict.put((String)key, next());
+				}
+			}
+			// hex string
+			while (pos < data.length && data[pos] != '>')
+				pos++;
+			if (pos++ >= data.length)
+				throw new JPDIShortData();
+			return new byte[0];
+		case '[':
+			pos++;
+			ArrayList<Object>	array	= new ArrayList<Object>();
+			while (true)
+			{
+				skipWhite();
+				if (data[pos] == ']')
+				{
+					pos++;
+					return array;
+				}
+				array.add(next());
+			}
+		case '(':
+			skipString();
+			return new byte[0];
+		case '/':
+			int		start	= pos++;
+			while (pos < data.length && !isDelimiter(data[pos]))
+				pos++;
+			if (pos >= data.length)
+				throw new JPDIShortData();
+			return new String(data, start, pos - start, "ISO-8859-1");
+		}
+		if (c == '+' || c == '-' || c == '.' || (c >= '0' && c <= '9'))
+		{
+			Object	num	= number();
+			if (num instanceof Integer)
+			{
+				// "num gen R" is a reference
+				int		save	= pos;
+				try {
+					skipWhite();
+					if (data[pos] >= '0' && data[pos] <= '9')
+					{
+						Object	gen	= number();
+						skipWhite();
+						if (gen instanceof Integer && data[pos] == 'R' && (pos + 1 >= data.length
+								|| isDelimiter(data[pos + 1])))
+						{
+							pos++;
+							JPDIRef	ref	= new JPDIRef();
+							ref.num	= (Integer)num;
+							ref.gen	= (Integer)gen;
+							return ref;
+						}
+					}
+				}
+				catch (JPDIShortData e) {
+					// at the end of the data: not a reference (e.g. startxref value)
+				}
+				pos		= save;
+			}
+			return num;
+		}
+		// a keyword
+		int		start	= pos;
+		while (pos < data.length && !isDelimiter(data[pos]))
+			pos++;
+		if (pos >= data.length)
+			throw new JPDIShortData();			// the keyword may go on
+		if (pos == start)
+			throw new IOException("unexpected character");
+		String	keyword	= new String(data, start, pos - start, "ISO-8859-1");
+		switch (keyword)
+		{
+		case "true":	return Boolean.TRUE;
+		case "false":	return Boolean.FALSE;
+		case "null":	return null;
+		}
+		return keyword;
+	}
+
+	Object nextNumber() throws IOException
+	{
+		skipWhite();
+		return number();
+	}
+
+	void skipWhite() throws JPDIShortData
+	{
+		while (true)
+		{
+			if (pos >= data.length)
+				throw new JPDIShortData();
+			byte	b	= data[pos];
+			if (b == '%')
+				while (pos < data.length && data[pos] != '\n' && data[pos] != '\r')
+					pos++;
+			else if (b == ' ' || b == '\n' || b == '\r' || b == '\t' || b == '\f' || b == 0)
+				pos++;
+			else
+				return;
+		}
+	}
+
+	private Object number() throws IOException
+	{
+		int		start	= pos;
+		boolean	real	= false;
+		while (pos < data.length && !isDelimiter(data[pos]))
+		{
+			if (data[pos] == '.')
+				real	= true;
+			pos++;
+		}
+		if (pos >= data.length)
+			throw new JPDIShortData();			// the number may go on
+		String	str		= new String(data, start, pos - start, "ISO-8859-1");
+		try {
+			if (real)
+				return Double.valueOf(str);
+			long	val	= Long.parseLong(str.startsWith("+") ? str.substring(1) : str);
+			if (val >= Integer.MIN_VALUE && val <= Integer.MAX_VALUE)
+				return (int)val;
+			return val;
+		}
+		catch (NumberFormatException e) {
+			throw new IOException("bad number " + str);
+		}
+	}
+
+	private void skipString() throws JPDIShortData
+	{
+		int		depth	= 0;
+		while (true)
+		{
+			if (pos >= data.length)
+				throw new JPDIShortData();
+			byte	b	= data[pos++];
+			if (b == '\\')
+				pos++;
+			else if (b == '(')
+				depth++;
+			else if (b == ')' && --depth == 0)
+				return;
+		}
+	}
+
+	private int peek(int offset) throws JPDIShortData
+	{
+		if (pos + offset >= data.length)
+			throw new JPDIShortData();
+		return data[pos + offset];
+	}
+
+	private static boolean isDelimiter(byte b)
+	{
+		switch (b)
+		{
+		case ' ': case '\n': case '\r': case '\t': case '\f': case 0:
+		case '(': case ')': case '<': case '>': case '[': case ']': case '{': case '}': case '/': case '%':
+			return true;
+		}
+		return false;
+	}
+}
+
+}
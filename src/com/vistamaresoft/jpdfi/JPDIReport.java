@@ -0,0 +1,228 @@
+/****************************
+	j P D F i  -  A Java application to apply an imposition to a PDF document.
+
+	JPDIReport.java - Collects the timings and the counters of a run
+
+	Created by : Maurizio M. Gavioli 2026-10-18
+
+	This program is free software; you can redistribute it and/or modify
+	it under the terms of the GNU General Public License as published by
+	the Free Software Foundation; either version 2 of the License, or
+	(at your option) any later version.
+	This program is distributed in the hope that it will be useful,
+	but WITHOUT ANY WARRANTY; without even the implied warranty of
+	MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+	GNU General Public License for more details.
+	You should have received a copy of the GNU General Public License along
+	with this program; if not, write to the Free Software Foundation, Inc.,
+	51 Franklin Street, Fifth Floor, Boston, MA 02110-1301 USA.
+
+*****************************/
+
+package com.vistamaresoft.jpdfi;
+
+import java.io.PrintStream;
+import java.lang.management.GarbageCollectorMXBean;
+import java.lang.management.ManagementFactory;
+import java.lang.management.ThreadMXBean;
+import java.util.Locale;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/******************
+	CLASS JPDIReport
+*******************
+
+Collects, for a run, the wall time, the CPU time and the bytes allocated by each stage, a few
+counters and the garbage collections occurred, and writes them as JSON or as a short summary.
+
+Stages are timed by the thread running them, between begin() and end(): times and allocations of
+stages run by several threads at once (compose, merge, compress) are summed over all the threads,
+and may exceed the wall time of the run. Stages may nest: "params" includes the "open" of the source
+documents listed in the parameter file, "compose" includes "merge" and "compress".
+
+The report is thread-safe. DISABLED is a report which does not collect anything, at almost no cost. */
+
+public class JPDIReport
+{
+// PUBLIC DEFINITIONS
+
+public enum Stage
+{
+	params, open, plan, compose, merge, compress, copy, save
+}
+
+public enum Counter
+{
+	pagesPlaced, resourcesMerged, renames, deepCopies, outputBytes, duplicates, dedupBytes
+}
+
+public static final JPDIReport	DISABLED	= new JPDIReport(false);
+
+// FIELDS
+
+private boolean			enabled;
+private long			startNanos;
+private long			startGcMs;
+private long			startGcCount;
+private AtomicLongArray	wallNanos;		// by stage
+private AtomicLongArray	cpuNanos;
+private AtomicLongArray	allocBytes;		// -1 = not supported
+private AtomicLongArray	calls;
+private AtomicLongArray	counters;		// by counter
+
+/******************
+	C'tors
+*******************/
+
+public JPDIReport()
+{
+	this(true);
+}
+
+private JPDIReport(boolean enabled)
+{
+	this.enabled	= enabled;
+	startNanos		= System.nanoTime();
+	startGcMs		= gcMs();
+	startGcCount	= gcCount();
+	wallNanos		= new AtomicLongArray(Stage.values().length);
+	cpuNanos		= new AtomicLongArray(Stage.values().length);
+	allocBytes		= new AtomicLongArray(Stage.values().length);
+	calls			= new AtomicLongArray(Stage.values().length);
+	counters		= new AtomicLongArray(Counter.values().length);
+}
+
+/******************
+	Getters
+*******************/
+
+public boolean	enabled()								{ return enabled;						}
+public long		counter(Counter counter)				{ return counters.get(counter.ordinal());	}
+
+/******************
+	Stage timing
+*******************
+
+begin() marks the start of a stage in the current thread and returns the mark to pass to end(),
+called in the same thread at the end of the stage; when disabled, begin() returns null and end()
+does nothing. */
+
+public long[] begin(Stage stage)
+{
+	if (!enabled)
+		return null;
+	return new long[] { System.nanoTime(), threadCpuNanos(), threadAllocBytes() };
+}
+
+public void end(Stage stage, long[] mark)
+{
+	if (mark == null)
+		return;
+	int		idx		= stage.ordinal();
+	long	alloc	= threadAllocBytes();
+	wallNanos.addAndGet(idx, System.nanoTime() - mark[0]);
+	cpuNanos.addAndGet(idx, threadCpuNanos() - mark[1]);
+	if (alloc < 0 || mark[2] < 0)
+		allocBytes.set(idx, -1);
+	else if (allocBytes.get(idx) >= 0)
+		allocBytes.addAndGet(idx, alloc - mark[2]);
+	calls.incrementAndGet(idx);
+}
+
+/******************
+	Counters
+*******************/
+
+public void count(Counter counter, long delta)
+{
+	if (enabled && delta != 0)
+		counters.addAndGet(counter.ordinal(), delta);
+}
+
+/******************
+	Write the report
+*******************
+
+writeJson() writes the whole report as a JSON object, writeSummary() as a few lines of text.
+
+Parameters:	out:	where to write to
+Returns:	none */
+
+public void writeJson(PrintStream out)
+{
+	out.println("{");
+	out.printf(Locale.ROOT, "\"wallMs\": %.3f,\n", (System.nanoTime() - startNanos) / 1e6);
+	out.printf("\"gc\": {\"collections\": %d, \"pauseMs\": %d},\n", gcCount() - startGcCount,
+			gcMs() - startGcMs);
+	out.println("\"stages\": {");
+	Stage[]	stages	= Stage.values();
+	for (int i = 0; i < stages.length; i++)
+	{
+		out.printf(Locale.ROOT, "  \"%s\": {\"calls\": %d, \"wallMs\": %.3f, \"cpuMs\": %.3f, \"allocBytes\": %d}%s\n",
+				stages[i].name(), calls.get(i), wallNanos.get(i) / 1e6, cpuNanos.get(i) / 1e6,
+				allocBytes.get(i), i < stages.length - 1 ? "," : "");
+	}
+	out.println("},\n\"counters\": {");
+	Counter[]	counterList	= Counter.values();
+	for (int i = 0; i < counterList.length; i++)
+		out.printf("  \"%s\": %d%s\n", counterList[i].name(), counters.get(i),
+				i < counterList.length - 1 ? "," : "");
+	out.println("}\n}");
+}
+
+public void writeSummary(PrintStream out)
+{
+	out.printf(Locale.ROOT, "Run: %.1f ms wall, %d GC (%d ms paused)\n",
+			(System.nanoTime() - startNanos) / 1e6, gcCount() - startGcCount, gcMs() - startGcMs);
+	out.println("stage\tcalls\twall ms\tCPU ms\talloc MB");
+	Stage[]	stages	= Stage.values();
+	for (int i = 0; i < stages.length; i++)
+		if (calls.get(i) > 0)
+			out.printf(Locale.ROOT, "%s\t%d\t%.1f\t%.1f\t%s\n", stages[i].name(), calls.get(i),
+					wallNanos.get(i) / 1e6, cpuNanos.get(i) / 1e6, allocBytes.get(i) < 0 ? "n/a"
+					: String.format(Locale.ROOT, "%.1f", allocBytes.get(i) / (double)(1 << 20)));
+	Counter[]	counterList	= Counter.values();
+	for (int i = 0; i < counterList.length; i++)
+		out.println(counterList[i].name() + ": " + counters.get(i));
+}
+
+/******************
+	JVM figures
+*******************/
+
+private static long threadCpuNanos()
+{
+	ThreadMXBean	bean	= ManagementFactory.getThreadMXBean();
+	return bean.isCurrentThreadCpuTimeSupported() ? bean.getCurrentThreadCpuTime() : 0;
+}
+
+/* Returns the bytes allocated so far by the current thread | -1 = not supported by this JVM. */
+
+private static long threadAllocBytes()
+{
+	ThreadMXBean	bean	= ManagementFactory.getThreadMXBean();
+	if (!(bean instanceof com.sun.management.ThreadMXBean))
+		return -1;
+	com.sun.management.ThreadMXBean		sunBean	= (com.sun.management.ThreadMXBean)bean;
+	if (!sunBean.isThreadAllocatedMemorySupported() || !sunBean.isThreadAllocatedMemoryEnabled())
+		return -1;
+	return sunBean.getThreadAllocatedBytes(Thread.currentThread().getId());
+}
+
+private static long gcMs()
+{
+	long	total	= 0;
+	for (GarbageCollectorMXBean bean : ManagementFactory.getGarbageCollectorMXBeans())
+		total	+= Math.max(bean.getCollectionTime(), 0);
+	return total;
+}
+
+private static long gcCount()
+{
+	long	total	= 0;
+	for (GarbageCollectorMXBean bean : ManagementFactory.getGarbageCollectorMXBeans())
+		total	+= Math.max(bean.getCollectionCount(), 0);
+	return total;
+}
+
+}
@@ -21,14 +21,14 @@
 
 package com.vistamaresoft.jpdfi;
 
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
 import java.util.HashMap;
+import java.util.IdentityHashMap;
 import java.util.Iterator;
-import java.util.Map;
 //import java.util.Observable;
 //import java.util.Observer;
 
-import de.intarsys.pdf.content.CSContent;
-import de.intarsys.pdf.content.CSOperation;
 import de.intarsys.pdf.cos.COSArray;
 import de.intarsys.pdf.cos.COSCompositeObject;
 import de.intarsys.pdf.cos.COSDictionary;
@@ -43,10 +43,23 @@ import de.intarsys.pdf.pd.PDResources;
 
 public class JPDIResourceMerger /*implements Observer*/
 {
+// PRIVATE DEFINITIONS
+
+private static final COSName			CN_XObject	= COSName.constant("XObject");
+
 // FIELDS
-protected int							uniqueId;
-protected HashMap<COSName, COSObject>[]	pageMap;	// map of resources used in each destination page
-protected COSDictionary[]				pageRes;	// dictionary of resources for each destination page
+protected int										uniqueId;
+protected HashMap<String, COSObject>[]				nameMap;	// resource used by each name, for each dest. page
+protected IdentityHashMap<COSObject, COSName>[]		objMap;		// name of each resource, for each dest. page
+protected HashMap<ByteBuffer, COSName>[]			hashMap;	// name of each resource by its hash, if given
+protected COSDictionary[]							pageRes;	// dictionary of resources for each dest. page
+protected IdentityHashMap<COSObject, ByteBuffer>	resHashes;	// the hash of each shared resource; null = none
+protected ArrayList<COSObject>						duplicates;	// the resources merged as identical ones
+protected int										numOfMerged;	// the resources merged so far
+protected int										numOfRenamed;	// the operands renamed so far
+protected int										eventSignNo;	// the source of the next merge, for JFR events
+protected String									eventSrcDoc;
+protected int										eventSrcPageNo;
 
 /******************
 	C'tor
@@ -55,9 +68,44 @@ protected COSDictionary[]				pageRes;	// dictionary of resources for each destin
 public JPDIResourceMerger(int numOfDestPages)
 {
 	uniqueId		= 1;
+	numOfMerged		= 0;
+	numOfRenamed	= 0;
+	resHashes		= null;
+	duplicates		= new ArrayList<COSObject>();
 	setNumOfDestPages(numOfDestPages);
 }
 
+/******************
+	Getters
+*******************/
+
+public int	numOfMerged()								{ return numOfMerged;				}
+public int	numOfRenamed()								{ return numOfRenamed;				}
+
+/* The resources merged as an identical resource already in the same dest. page, and not added. */
+
+public ArrayList<COSObject>	duplicates()				{ return duplicates;				}
+
+/* Sets the content hashes of the shared resources to merge (see JPDIDedup.hash()): with them, a
+resource identical to one already in a dest. page, even if from another document, is merged as that
+resource. The hashes are computed beforehand, as the merger may run in any thread while JPDIDedup
+may not. null = none (the default). */
+
+public void setResourceHashes(IdentityHashMap<COSObject, ByteBuffer> resHashes)
+{
+	this.resHashes	= resHashes;
+}
+
+/* Sets the signature and the source page the next pages merged come from, only to be recorded
+in the JFR events of the merges; pageNo is 0-based. */
+
+public void setEventSource(int signNo, String docName, int pageNo)
+{
+	eventSignNo		= signNo;
+	eventSrcDoc		= docName;
+	eventSrcPageNo	= pageNo;
+}
+
 /******************
 	Set the number of destination pages
 ******************
@@ -72,11 +120,15 @@ Returns:	true = success | false = failure */
 public boolean setNumOfDestPages(int numOfDestPages)
 {
 	releaseDestPages();
-	pageMap			= (HashMap<COSName, COSObject>[])new HashMap[numOfDestPages];
+	nameMap			= (HashMap<String, COSObject>[])new HashMap[numOfDestPages];
+	objMap			= (IdentityHashMap<COSObject, COSName>[])new IdentityHashMap[numOfDestPages];
+	hashMap			= (HashMap<ByteBuffer, COSName>[])new HashMap[numOfDestPages];
 	pageRes			= new COSDictionary[numOfDestPages];
 	for (int i = 0; i < numOfDestPages; i++)
 	{
-		pageMap[i]	= new HashMap<COSName, COSObject>();
+		nameMap[i]	= new HashMap<String, COSObject>();
+		objMap[i]	= new IdentityHashMap<COSObject, COSName>();
+		hashMap[i]	= new HashMap<ByteBuffer, COSName>();
 		pageRes[i]	= PDResources.META.createNew().cosGetDict();
 	}
 	return true;
@@ -93,11 +145,23 @@ Returns:	none */
 
 public void releaseDestPages()
 {
-	if (pageMap != null)
+	if (nameMap != null)
+	{
+		for (int i = 0; i < nameMap.length; i++)
+			nameMap[i] = null;
+		nameMap = null;
+	}
+	if (objMap != null)
+	{
+		for (int i = 0; i < objMap.length; i++)
+			objMap[i] = null;
+		objMap = null;
+	}
+	if (hashMap != null)
 	{
-		for (int i = 0; i < pageMap.length; i++)
-			pageMap[i] = null;
-		pageMap = null;
+		for (int i = 0; i < hashMap.length; i++)
+			hashMap[i] = null;
+		hashMap = null;
 	}
 	if (pageRes != null)
 	{
@@ -111,24 +175,41 @@ public void releaseDestPages()
 	Merge resources of a source page into a destination page
 ******************
 
+Merges the resources of a source page and adds its contents to the contents of the dest. page: the
+content streams themselves if no resource has been renamed by the merge, otherwise a copy renaming
+them on the fly (see JPDIContentWriter); the source page is not changed.
+
 Parameters:	destPageIdx:	the index of the destination page to merge into
 			srcPage:		the source page to merge from
-Returns:	true = success | false failure */
+			destContent:	the contents of the destination page
+Returns:	true = success | false failure (the contents are copied anyway, without renames) */
 
-public boolean merge(int destPageIdx, PDPage srcPage)
+public boolean merge(int destPageIdx, PDPage srcPage, JPDIContentWriter destContent)
 {
+	JPDIEvents.JPDIMergeEvent	event		= new JPDIEvents.JPDIMergeEvent();
+	int							oldMerged	= numOfMerged;
+	int							oldRenamed	= numOfRenamed;
+	event.begin();
 	HashMap<COSName, COSName>	renameList	= merge(destPageIdx, srcPage.getResources());
-	if (renameList == null)
-		return false;
-	// update in the source page contents all the COSName which need to be changed
-	if (renameList.size() > 0)
-		renameInPage(srcPage, renameList);
-	return true;
+	// add the source page contents, changing all the COSName which need to be changed
+	numOfRenamed	+= destContent.copy(srcPage.cosGetField(PDPage.DK_Contents), renameList);
+	event.end();
+	if (event.shouldCommit())
+	{
+		event.signatureNo		= eventSignNo;
+		event.sourceDocument	= eventSrcDoc;
+		event.sourcePageNo		= eventSrcPageNo + 1;
+		event.destPageNo		= destPageIdx;
+		event.resourcesMerged	= numOfMerged - oldMerged;
+		event.renames			= numOfRenamed - oldRenamed;
+		event.commit();
+	}
+	return renameList != null;
 }
 
 public HashMap<COSName, COSName> merge(int destPageIdx, PDResources srcRes)
 {
-	if (destPageIdx < 0 || destPageIdx > pageMap.length)
+	if (destPageIdx < 0 || destPageIdx >= pageRes.length)
 		return null;
 
 	HashMap<COSName, COSName>		renameList	= new HashMap<COSName, COSName>();
@@ -159,7 +240,8 @@ public HashMap<COSName, COSName> merge(int destPageIdx, PDResources srcRes)
 				while (srcTableIter.hasNext())
 				{
 					COSDictionary.Entry	res	= srcTableIter.next();
-					pageMap[destPageIdx].put((COSName)res.getKey(), (COSObject)res.getValue());
+					putResource(destPageIdx, (COSName)res.getKey(), (COSObject)res.getValue());
+					numOfMerged++;
 				}
 			}
 		}
@@ -180,22 +262,14 @@ public HashMap<COSName, COSName> merge(int destPageIdx, PDResources srcRes)
 					COSDictionary.Entry	res			= srcTableIter.next();
 					COSName				resName		= (COSName)res.getKey();
 					COSObject			resValue	= (COSObject)res.getValue();
-					COSName				dstPageName;
+					numOfMerged++;
 					// look in PAGE MAP for this object, retrieving its name if object found
-//					COSName dstPageName	= pageMap[destPageIdx].get(resValue);
-					boolean				objIsUsed	= pageMap[destPageIdx].containsValue(resValue);
-					// check if PAGE MAP already uses this name for an object
-					boolean				nameIsUsed	= false;
-					for(COSName name : pageMap[destPageIdx].keySet())
-						if (name.stringValue().equals(resName.stringValue()) )
-						{
-							nameIsUsed = true;
-							break;
-						}
+					COSName				dstPageName	= nameOf(destPageIdx, resValue);
 					// if page doesn't contain this object, add it to map and to dictionary
-					if (!objIsUsed)
+					if (dstPageName == null)
 					{
-						if (nameIsUsed)
+						// if PAGE MAP already uses this name for another object, use a new name
+						if (nameMap[destPageIdx].containsKey(resName.stringValue()))
 						{
 							dstPageName = COSName.create(uniqueNameString());
 							renameList.put(resName, dstPageName);
@@ -203,18 +277,11 @@ public HashMap<COSName, COSName> merge(int destPageIdx, PDResources srcRes)
 						else
 							dstPageName = resName;
 						dstTableDict.basicPutSilent(dstPageName, resValue);
-						pageMap[destPageIdx].put(dstPageName, resValue);
+						putResource(destPageIdx, dstPageName, resValue);
 					}
 					// if page already contains this object, check its name
 					else
 					{
-						dstPageName = COSName.create("");
-						for(Map.Entry<COSName, COSObject> entry : pageMap[destPageIdx].entrySet())
-							if (entry.getValue() == resValue)
-							{
-								dstPageName = entry.getKey();
-								break;
-							}
 						// if the dest. page knows the object under a different name
 						// the name in the source page shall be changed into the dest. page name
 						if (!dstPageName.stringValue().equals(resName.stringValue()))
@@ -254,49 +321,101 @@ public HashMap<COSName, COSName> merge(int destPageIdx, PDResources srcRes)
 }
 
 /******************
-	Get page resources
+	Merge a single XObject into a destination page
 ******************
 
-Parameters:	destPageIdx:	the index of the destination page to get resources for
-Returns:	a COSDictionary with the page accumulated resources */
+Adds an XObject to the resources of a destination page, under the given name; used to place whole
+source pages as Form XObjects, whose names are already unique within the destination document.
 
-public final COSDictionary getResources(int destPageIdx)
+Parameters:	destPageIdx:	the index of the destination page to merge into
+			name:			the resource name of the XObject
+			xObject:		the XObject itself
+Returns:	true = success | false failure */
+
+public boolean mergeXObject(int destPageIdx, COSName name, COSObject xObject)
 {
-	return pageRes[destPageIdx];
+	if (destPageIdx < 0 || destPageIdx >= pageRes.length)
+		return false;
+
+	COSDictionary	dstTableDict;
+	if (pageRes[destPageIdx].containsKey(CN_XObject))
+		dstTableDict	= (COSDictionary)pageRes[destPageIdx].get(CN_XObject);
+	else
+	{
+		dstTableDict	= COSDictionary.create();
+		pageRes[destPageIdx].basicPutSilent(CN_XObject, dstTableDict);
+	}
+	dstTableDict.basicPutSilent(name, xObject);
+	putResource(destPageIdx, name, xObject);
+	numOfMerged++;
+	return true;
 }
 
 /******************
-	Rename page contents
+	Record a resource in the page map
 ******************
 
-Scans the given page contents and renames all the operand COSName's in renameList.
+Records that, in the given destination page, a name refers to a resource object and vice versa.
+As in a plain name => object map, a name re-used for another object forgets the previous object;
+an object known under several names keeps the first name it was recorded with.
 
-Parameters:	page:		the page to work on
-			renameList:	a list of COSName to rename
+Parameters:	destPageIdx:	the index of the destination page
+			name:			the resource name
+			obj:			the resource object
 Returns:	none */
 
-protected void renameInPage(PDPage page, HashMap<COSName, COSName>renameList)
+protected void putResource(int destPageIdx, COSName name, COSObject obj)
 {
-	CSContent	content		= page.getContentStream();
-	int			numOfOps	= content.size();
-	// iterate on operations
-	for (int i = 0; i < numOfOps; i++)
+	COSObject	oldObj	= nameMap[destPageIdx].put(name.stringValue(), obj);
+	if (oldObj != null && oldObj != obj)
 	{
-		CSOperation	op				= content.getOperation(i);
-		int			numOfOperands	= op.operandSize();
-		// for each operation, iterate on operands
-		for (int j = 0; j < numOfOperands; j++)
-		{
-			COSObject	operand = op.getOperand(j);
-			if (operand instanceof COSName)					// we all deal with COSName operands
-			{
-				COSName	newName = renameList.get(operand);	// is this COSName in the rename list?
-				// if in the rename list, set this operand to the new COSName
-				if (newName != null)
-					op.setOperand(j, newName);
-			}
-		}
+		COSName	oldName	= objMap[destPageIdx].get(oldObj);
+		if (oldName != null && oldName.stringValue().equals(name.stringValue()))
+			objMap[destPageIdx].remove(oldObj);
+		ByteBuffer	oldHash	= resourceHash(oldObj);
+		if (oldHash != null && name.equals(hashMap[destPageIdx].get(oldHash)))
+			hashMap[destPageIdx].remove(oldHash);
 	}
+	if (!objMap[destPageIdx].containsKey(obj))
+		objMap[destPageIdx].put(obj, name);
+	ByteBuffer	hash	= resourceHash(obj);
+	if (hash != null && !hashMap[destPageIdx].containsKey(hash))
+		hashMap[destPageIdx].put(hash, name);
+}
+
+/* Returns the name a dest. page knows a resource by or, with hashes, a resource identical to it by;
+null if none. */
+
+protected COSName nameOf(int destPageIdx, COSObject obj)
+{
+	COSName		name	= objMap[destPageIdx].get(obj);
+	if (name != null)
+		return name;
+	ByteBuffer	hash	= resourceHash(obj);
+	if (hash == null || (name = hashMap[destPageIdx].get(hash)) == null)
+		return null;
+	duplicates.add(obj);
+	return name;
+}
+
+/* Returns the content hash of a shared resource, as set with setResourceHashes(); null if no hash
+was given for it. */
+
+protected ByteBuffer resourceHash(COSObject obj)
+{
+	return resHashes != null ? resHashes.get(obj) : null;
+}
+
+/******************
+	Get page resources
+******************
+
+Parameters:	destPageIdx:	the index of the destination page to get resources for
+Returns:	a COSDictionary with the page accumulated resources */
+
+public final COSDictionary getResources(int destPageIdx)
+{
+	return pageRes[destPageIdx];
 }
 
 /******************
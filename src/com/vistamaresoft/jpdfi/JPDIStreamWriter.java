@@ -0,0 +1,823 @@
+/****************************
+	j P D F i  -  A Java application to apply an imposition to a PDF document.
+
+	JPDIStreamWriter.java - Writes a destination PDF one page at a time
+
+	Created by : Maurizio M. Gavioli 2026-10-18
+
+	This program is free software; you can redistribute it and/or modify
+	it under the terms of the GNU General Public License as published by
+	the Free Software Foundation; either version 2 of the License, or
+	(at your option) any later version.
+	This program is distributed in the hope that it will be useful,
+	but WITHOUT ANY WARRANTY; without even the implied warranty of
+	MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+	GNU General Public License for more details.
+	You should have received a copy of the GNU General Public License along
+	with this program; if not, write to the Free Software Foundation, Inc.,
+	51 Franklin Street, Fifth Floor, Boston, MA 02110-1301 USA.
+
+*****************************/
+
+package com.vistamaresoft.jpdfi;
+
+import java.io.BufferedOutputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.IdentityHashMap;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Locale;
+import java.util.zip.DeflaterOutputStream;
+
+import de.intarsys.pdf.cos.COSArray;
+import de.intarsys.pdf.cos.COSBoolean;
+import de.intarsys.pdf.cos.COSDictionary;
+import de.intarsys.pdf.cos.COSDocument;
+import de.intarsys.pdf.cos.COSIndirectObject;
+import de.intarsys.pdf.cos.COSInteger;
+import de.intarsys.pdf.cos.COSName;
+import de.intarsys.pdf.cos.COSNumber;
+import de.intarsys.pdf.cos.COSObject;
+import de.intarsys.pdf.cos.COSStream;
+import de.intarsys.pdf.cos.COSString;
+import de.intarsys.pdf.pd.PDPage;
+
+/******************
+	CLASS JPDIStreamWriter
+*******************
+
+Writes a PDF file page by page: each page is serialized, together with any object it reaches which
+has not been written yet, as soon as it is handed to the writer; the page tree, the catalog and the
+cross-reference table are written at the end.
+
+Objects already written are remembered only if indirect (i.e. shared: fonts, images, page forms...),
+to write them once and refer to them afterwards; anything else is forgotten once written, so that
+the memory used does not grow with the number of pages. Shared objects of a source document are
+remembered by their object no. in it, not to keep them (and their document) alive, until
+evictDocument() is called for it; shared objects of no document, until forget() is called for
+them. Pages are also remembered, stripped of their contents and resources, for anything
+(bookmarks, typically) referring to them.
+
+Optionally (PDF 1.5 and later), objects other than streams are packed into compressed object
+streams, up to a maximum no. of objects each, and the cross-reference table is written as a
+compressed cross-reference stream: as imposition creates many small dictionaries (pages, resources,
+fonts...), this takes much less room than writing each of them as a separate object.
+
+Write errors do not throw: the first one is kept and reported by close(). */
+
+public class JPDIStreamWriter
+{
+// PRIVATE DEFINITIONS
+
+private static final int		CATALOG_OBJ_NO		= 1;
+private static final int		PAGE_TREE_OBJ_NO	= 2;
+private static final COSName	CN_Length			= COSName.constant("Length");
+private static final COSName	CN_Pages			= COSName.constant("Pages");
+private static final COSName	CN_Parent			= COSName.constant("Parent");
+private static final COSName	CN_Type				= COSName.constant("Type");
+private static final String		DELIMITERS			= "()<>[]{}/%#";
+private static final char[]		HEX_DIGITS			= "0123456789ABCDEF".toCharArray();
+private static final int		MAX_OBJSTM_SIZE		= 0xFFFF;	// as the index in xref streams has 2 bytes
+
+// A node of the page tree, as written at the end
+
+private static class JPDIPageTreeNode
+{
+	int				objNo;
+	int				count;			// the pages below it
+	List<Integer>	kids;			// the object nos. of its kids
+}
+
+// FIELDS
+
+private OutputStream						out;
+private long								position;		// the current offset into the file
+private IOException							error;			// the first write error, if any
+private ArrayList<Long>						offsets;		// the offset (or the index into its object stream)
+															// of each object, by object no.
+private ArrayList<Integer>					objStmNos;		// the object stream of each object; 0 = none
+private boolean								versionAllowsObjStm;
+private int									objStmSize;		// max. objects per object stream; 0 = none
+private int									objStmNo;		// the object stream being filled; 0 = none
+private int									objStmCount;	// the objects in it
+private StringBuilder						objStmHeader;	// their object nos. and offsets
+private ByteArrayOutputStream				objStmData;		// their data
+private boolean								toObjStm;		// whether the current object goes into it
+private IdentityHashMap<COSObject, Integer>	objNums;		// the object no. of objects of no document
+private IdentityHashMap<COSDocument, HashMap<Integer, Integer>>	docObjNums;	// of source objects,
+															// by document and object no. in it
+private HashMap<ByteBuffer, Integer>		hashObjNums;	// with dedup, of the first object with each hash
+private ArrayDeque<COSObject>				queue;			// objects numbered but not yet written
+private IdentityHashMap<COSObject, Boolean>	writing;		// direct objects being written (loop guard)
+private ArrayList<Integer>					kids;			// the pages, in order
+private ArrayList<Integer>					trailingKids;	// the pages to add after all the others
+private int									fanOut;			// max. kids per page tree node; < 2 = flat tree
+private ArrayList<Integer>					leaves;			// the lowest page tree nodes, for kids
+private ArrayList<Integer>					trailingLeaves;	// and for trailingKids
+private ArrayList<ArrayList<Integer>>		placedKids;		// the pages placed by placeTrailingPages(),
+private ArrayList<ArrayList<Integer>>		placedLeaves;	// in order, and their lowest nodes
+private JPDIDedup							dedup;			// shares identical objects; null = no dedup
+
+/******************
+	C'tor
+*******************
+
+Creates the file and writes the PDF header.
+
+Parameters:	fileName:	the file to write
+			version:	the PDF version to write in the header (e.g. "1.7") */
+
+public JPDIStreamWriter(String fileName, String version) throws IOException
+{
+	out				= new BufferedOutputStream(new FileOutputStream(fileName), 1 << 16);
+	position		= 0;
+	error			= null;
+	offsets			= new ArrayList<Long>();
+	objStmNos		= new ArrayList<Integer>();
+	objStmSize		= 0;
+	objStmNo		= 0;
+	objStmCount		= 0;
+	objStmHeader	= new StringBuilder();
+	objStmData		= new ByteArrayOutputStream();
+	toObjStm		= false;
+	objNums			= new IdentityHashMap<COSObject, Integer>();
+	docObjNums		= new IdentityHashMap<COSDocument, HashMap<Integer, Integer>>();
+	hashObjNums		= new HashMap<ByteBuffer, Integer>();
+	queue			= new ArrayDeque<COSObject>();
+	writing			= new IdentityHashMap<COSObject, Boolean>();
+	kids			= new ArrayList<Integer>();
+	trailingKids	= new ArrayList<Integer>();
+	fanOut			= 0;
+	leaves			= new ArrayList<Integer>();
+	trailingLeaves	= new ArrayList<Integer>();
+	placedKids		= new ArrayList<ArrayList<Integer>>();
+	placedLeaves	= new ArrayList<ArrayList<Integer>>();
+	dedup			= null;
+	// object 0 is the head of the free list; catalog and page tree have fixed numbers
+	reserveObjNo();
+	reserveObjNo();					// CATALOG_OBJ_NO
+	reserveObjNo();					// PAGE_TREE_OBJ_NO
+	versionAllowsObjStm	= version.compareTo("1.5") >= 0;
+	write("%PDF-" + version + "\n");
+	write(new byte[] { '%', (byte)0xE2, (byte)0xE3, (byte)0xCF, (byte)0xD3, '\n' });
+}
+
+/******************
+	Setters
+*******************/
+
+/* Sets the object sharing identical objects; the writer shall then be used by the same thread
+as the dedup. null = no dedup (the default). */
+
+public void setDedup(JPDIDedup dedup)		{ this.dedup = dedup;	}
+
+/* Sets the max. no. of kids of each page tree node: pages are arranged in a balanced tree, so that any
+page is reached in a logarithmic no. of steps; < 2 = all pages directly under the root (the default).
+To be called before writing any page. */
+
+public void setFanOut(int fanOut)			{ this.fanOut = fanOut;	}
+
+/* Sets the max. no. of objects packed into each object stream; 0 = no object streams (the default).
+Object streams require PDF 1.5: with an earlier version in the header, objects are written as
+separate objects, with a cross-reference table, as usual.
+
+Parameters:	objStmSize:	the max. no. of objects per object stream
+Returns:	true = object streams are used | false = object streams are not used */
+
+public boolean setObjStmSize(int objStmSize)
+{
+	if (!versionAllowsObjStm || objStmSize < 1)
+	{
+		this.objStmSize	= 0;
+		return false;
+	}
+	this.objStmSize	= objStmSize < MAX_OBJSTM_SIZE ? objStmSize : MAX_OBJSTM_SIZE;
+	return true;
+}
+
+/******************
+	Write pages
+*******************
+
+Writes a page and anything it reaches not yet written; writePage() adds the page after the pages
+already written, writeTrailingPage() after all the pages written with writePage() up to the next
+placeTrailingPages() (or to the end), in the order they are written.
+
+After this call, the page no longer has any contents or resources.
+
+Parameters:	page:	the page to write
+Returns:	none */
+
+public void writePage(PDPage page)
+{
+	writePage(page, kids, leaves);
+}
+
+public void writeTrailingPage(PDPage page)
+{
+	writePage(page, trailingKids, trailingLeaves);
+}
+
+private void writePage(PDPage page, ArrayList<Integer> kidList, ArrayList<Integer> leafList)
+{
+	COSDictionary	pageDict	= page.cosGetDict();
+	if (error == null)
+	{
+		Integer			objNo	= objNoOf(pageDict);
+		if (objNo == null)
+		{
+			objNo = reserveObjNo();
+			putObjNo(pageDict, objNo);
+		}
+		// with a balanced tree, a new lowest node every fanOut pages
+		int	parentNo	= PAGE_TREE_OBJ_NO;
+		if (fanOut >= 2)
+		{
+			if (kidList.size() % fanOut == 0)
+				leafList.add(reserveObjNo());
+			parentNo	= leafList.get(leafList.size() - 1);
+		}
+		try {
+			beginObject(objNo);
+			write("<<");
+			writeEntries(pageDict, CN_Parent);
+			write("/Parent " + parentNo + " 0 R>>");
+			endObject();
+			writeQueue();
+		}
+		catch (IOException e) {
+			error = e;
+		}
+		kidList.add(objNo);
+	}
+	// the page is only kept for references to it: drop what can be large
+	pageDict.remove(PDPage.DK_Contents);
+	pageDict.remove(PDPage.DK_Resources);
+}
+
+/* Places the pages written so far with writeTrailingPage() right after those written so far with
+writePage(): any page written afterwards, with either, follows them (e.g. the pages of appended
+documents, which follow the single pages of the imposition). */
+
+public void placeTrailingPages()
+{
+	placedKids.add(kids);
+	placedLeaves.add(leaves);
+	placedKids.add(trailingKids);
+	placedLeaves.add(trailingLeaves);
+	kids			= new ArrayList<Integer>();
+	leaves			= new ArrayList<Integer>();
+	trailingKids	= new ArrayList<Integer>();
+	trailingLeaves	= new ArrayList<Integer>();
+}
+
+/******************
+	Close
+*******************
+
+Writes the page tree, the catalog, the cross-reference table and the trailer and closes the file.
+
+Parameters:	catalog:	a dictionary with any additional catalog entry (/Outlines, /PageLabels...),
+						or null; its /Type and /Pages entries, if any, are ignored
+Returns:	none
+Throws:		IOException with the first error occurred while writing, if any */
+
+public void close(COSDictionary catalog) throws IOException
+{
+	try {
+		if (error != null)
+			throw error;
+		// CATALOG
+		beginObject(CATALOG_OBJ_NO);
+		write("<</Type/Catalog/Pages " + PAGE_TREE_OBJ_NO + " 0 R");
+		if (catalog != null)
+		{
+			@SuppressWarnings("unchecked")
+			Iterator<COSDictionary.Entry>	iter	= catalog.entryIterator();
+			while (iter.hasNext())
+			{
+				COSDictionary.Entry	entry	= iter.next();
+				COSName				key		= (COSName)entry.getKey();
+				if (key.equals(CN_Type) || key.equals(CN_Pages))
+					continue;
+				writeName(key);
+				// catalog entries, usually referring to trees, are better as separate objects
+				COSObject			value	= (COSObject)entry.getValue();
+				if (value instanceof COSDictionary || value instanceof COSArray)
+					write(" " + reference(value) + " 0 R");
+				else
+					writeValue(value, false);
+			}
+		}
+		write(">>");
+		endObject();
+		writeQueue();
+		writePageTree();
+		writeObjStm();
+		if (objStmSize > 0)
+		{
+			writeXRefStream();
+			return;
+		}
+		// CROSS-REFERENCE TABLE AND TRAILER
+		long	xrefPos	= position;
+		write("xref\n0 " + offsets.size() + "\n");
+		write("0000000000 65535 f\r\n");
+		for (int objNo = 1; objNo < offsets.size(); objNo++)
+		{
+			long	offset	= offsets.get(objNo);
+			if (offset < 0)					// never written (it should not happen): mark as free
+				write("0000000000 00001 f\r\n");
+			else
+				write(String.format(Locale.ROOT, "%010d 00000 n\r\n", offset));
+		}
+		write("trailer\n<</Size " + offsets.size() + "/Root " + CATALOG_OBJ_NO + " 0 R>>\n");
+		write("startxref\n" + xrefPos + "\n%%EOF\n");
+	}
+	finally {
+		objNums.clear();
+		docObjNums.clear();
+		hashObjNums.clear();
+		queue.clear();
+		out.close();
+	}
+}
+
+/******************
+	Abort
+*******************
+
+Closes the file without completing it, after a failure; the file is left incomplete.
+
+Parameters:	none
+Returns:	none */
+
+public void abort()
+{
+	objNums.clear();
+	docObjNums.clear();
+	hashObjNums.clear();
+	queue.clear();
+	try {
+		out.close();
+	}
+	catch (IOException e) {
+		// nothing to do: the file is being abandoned anyway
+	}
+}
+
+/******************
+	Page tree
+*******************
+
+Writes the page tree: flat, with all the pages under the root, or balanced, from the lowest nodes
+(already numbered, as the pages refer to them) up, each level grouping up to fanOut nodes of the
+level below, until the root can hold all the nodes of the top level. */
+
+private void writePageTree() throws IOException
+{
+	placeTrailingPages();
+	int		totCount	= 0;
+	for (ArrayList<Integer> pageList : placedKids)
+		totCount	+= pageList.size();
+	if (fanOut < 2)
+	{
+		ArrayList<Integer>	all	= new ArrayList<Integer>(totCount);
+		for (ArrayList<Integer> pageList : placedKids)
+			all.addAll(pageList);
+		writePageTreeNode(PAGE_TREE_OBJ_NO, 0, totCount, all);
+		return;
+	}
+	// the pages already point to their lowest nodes: keep each page list grouped on its own
+	ArrayList<JPDIPageTreeNode>	nodes	= new ArrayList<JPDIPageTreeNode>();
+	for (int i = 0; i < placedKids.size(); i++)
+		addLeaves(nodes, placedLeaves.get(i), placedKids.get(i));
+	while (nodes.size() > fanOut)
+	{
+		ArrayList<JPDIPageTreeNode>	parents	= new ArrayList<JPDIPageTreeNode>();
+		for (int i = 0; i < nodes.size(); i += fanOut)
+		{
+			JPDIPageTreeNode	parent	= new JPDIPageTreeNode();
+			parent.objNo	= reserveObjNo();
+			parent.kids		= new ArrayList<Integer>();
+			for (JPDIPageTreeNode node : nodes.subList(i, Math.min(i + fanOut, nodes.size())))
+			{
+				writePageTreeNode(node.objNo, parent.objNo, node.count, node.kids);
+				parent.kids.add(node.objNo);
+				parent.count	+= node.count;
+			}
+			parents.add(parent);
+		}
+		nodes	= parents;
+	}
+	ArrayList<Integer>	rootKids	= new ArrayList<Integer>();
+	for (JPDIPageTreeNode node : nodes)
+	{
+		writePageTreeNode(node.objNo, PAGE_TREE_OBJ_NO, node.count, node.kids);
+		rootKids.add(node.objNo);
+	}
+	writePageTreeNode(PAGE_TREE_OBJ_NO, 0, totCount, rootKids);
+}
+
+/* Adds the lowest nodes for a page list, each holding fanOut pages (the last one, possibly fewer). */
+
+private void addLeaves(ArrayList<JPDIPageTreeNode> nodes, ArrayList<Integer> leafList,
+		ArrayList<Integer> pageList)
+{
+	for (int i = 0; i < leafList.size(); i++)
+	{
+		JPDIPageTreeNode	node	= new JPDIPageTreeNode();
+		node.objNo	= leafList.get(i);
+		node.kids	= pageList.subList(i * fanOut, Math.min((i + 1) * fanOut, pageList.size()));
+		node.count	= node.kids.size();
+		nodes.add(node);
+	}
+}
+
+/* Writes a page tree node; parentNo = 0 for the root. */
+
+private void writePageTreeNode(int objNo, int parentNo, int count, List<Integer> kidList)
+		throws IOException
+{
+	beginObject(objNo);
+	write("<</Type/Pages");
+	if (parentNo > 0)
+		write("/Parent " + parentNo + " 0 R");
+	write("/Count " + count + "/Kids[");
+	for (Integer kid : kidList)
+		write(kid + " 0 R ");
+	write("]>>");
+	endObject();
+}
+
+/******************
+	Evict a document
+*******************
+
+Forgets the object nos. of the objects of a source document, once no page of it remains to write;
+objects of it met again would be written again.
+
+Parameters:	doc:	the source document
+Returns:	none */
+
+public void evictDocument(COSDocument doc)
+{
+	docObjNums.remove(doc);
+}
+
+/******************
+	Forget an object
+*******************
+
+Forgets the object no. of a shared object of no document (a page form, typically) already written,
+once nothing written afterwards refers to it: such objects are otherwise remembered until close(),
+as they have no document to evict. Objects queued by a page are all written with it, so any object
+reached by the pages written so far can be forgotten.
+
+Parameters:	obj:	the object
+Returns:	none */
+
+public void forget(COSObject obj)
+{
+	if (sourceRef(obj) == null)
+		objNums.remove(obj);
+}
+
+/******************
+	Object numbering
+*******************/
+
+private int reserveObjNo()
+{
+	offsets.add(-1L);
+	objStmNos.add(0);
+	return offsets.size() - 1;
+}
+
+/* Returns the object no. of an object, numbering it and queuing it for writing if needed. */
+
+private int reference(COSObject obj)
+{
+	Integer		objNo	= objNoOf(obj);
+	if (objNo != null)
+		return objNo;
+	// identical shared objects get the same object no., whatever document they come from
+	ByteBuffer	hash	= null;
+	if (dedup != null && obj.isIndirect())
+	{
+		byte[]	bytes	= dedup.hash(obj);
+		if (bytes != null)
+		{
+			hash	= ByteBuffer.wrap(bytes);
+			objNo	= hashObjNums.get(hash);
+		}
+	}
+	if (objNo != null)
+		dedup.countDuplicate(obj);
+	else
+	{
+		objNo = reserveObjNo();
+		if (hash != null)
+			hashObjNums.put(hash, objNo);
+		queue.add(obj);
+	}
+	putObjNo(obj, objNo);
+	return objNo;
+}
+
+/* Returns the object no. given to an object | null if none yet. */
+
+private Integer objNoOf(COSObject obj)
+{
+	COSIndirectObject	ref		= sourceRef(obj);
+	if (ref == null)
+		return objNums.get(obj);
+	HashMap<Integer, Integer>	nums	= docObjNums.get(ref.getDoc());
+	return nums != null ? nums.get(ref.getObjectNumber()) : null;
+}
+
+private void putObjNo(COSObject obj, int objNo)
+{
+	COSIndirectObject	ref		= sourceRef(obj);
+	if (ref == null)
+	{
+		objNums.put(obj, objNo);
+		return;
+	}
+	HashMap<Integer, Integer>	nums	= docObjNums.get(ref.getDoc());
+	if (nums == null)
+	{
+		nums	= new HashMap<Integer, Integer>();
+		docObjNums.put(ref.getDoc(), nums);
+	}
+	nums.put(ref.getObjectNumber(), objNo);
+}
+
+/* Returns the reference to a shared object of a document | null for any other object. */
+
+private static COSIndirectObject sourceRef(COSObject obj)
+{
+	Object	container	= obj.getContainer();
+	if (!(container instanceof COSIndirectObject) || ((COSIndirectObject)container).getDoc() == null)
+		return null;
+	return (COSIndirectObject)container;
+}
+
+/* Writes all the queued objects, and the objects they queue in turn. */
+
+private void writeQueue() throws IOException
+{
+	while (!queue.isEmpty())
+	{
+		COSObject	obj		= queue.remove();
+		beginObject(objNoOf(obj), !(obj instanceof COSStream));
+		writeValue(obj, true);
+		endObject();
+		// only shared (indirect) objects are remembered
+		if (!obj.isIndirect())
+			objNums.remove(obj);
+	}
+}
+
+/******************
+	Object serialization
+*******************/
+
+private void beginObject(int objNo) throws IOException
+{
+	beginObject(objNo, true);
+}
+
+/* Starts writing an object: into the current object stream, if object streams are used and the
+object can go into one (streams cannot), or else into the file. */
+
+private void beginObject(int objNo, boolean compressible) throws IOException
+{
+	toObjStm	= compressible && objStmSize > 0;
+	if (!toObjStm)
+	{
+		offsets.set(objNo, position);
+		write(objNo + " 0 obj\n");
+		return;
+	}
+	if (objStmNo == 0)
+		objStmNo	= reserveObjNo();
+	offsets.set(objNo, (long)objStmCount);
+	objStmNos.set(objNo, objStmNo);
+	objStmHeader.append(objNo).append(' ').append(objStmData.size()).append(' ');
+}
+
+private void endObject() throws IOException
+{
+	if (!toObjStm)
+	{
+		write("\nendobj\n");
+		return;
+	}
+	write("\n");
+	toObjStm	= false;
+	if (++objStmCount >= objStmSize)
+		writeObjStm();
+}
+
+/******************
+	Object and cross-reference streams
+*******************/
+
+/* Writes the current object stream, if any object has gone into it. */
+
+private void writeObjStm() throws IOException
+{
+	if (objStmCount == 0)
+		return;
+	byte[]	header	= objStmHeader.toString().getBytes(StandardCharsets.ISO_8859_1);
+	ByteArrayOutputStream	data	= new ByteArrayOutputStream(header.length + objStmData.size());
+	data.write(header);
+	objStmData.writeTo(data);
+	beginObject(objStmNo, false);
+	writeDeflatedStream("/Type/ObjStm/N " + objStmCount + "/First " + header.length, data.toByteArray());
+	endObject();
+	objStmNo		= 0;
+	objStmCount		= 0;
+	objStmHeader.setLength(0);
+	objStmData.reset();
+}
+
+/* Writes the cross-reference stream, which also acts as the trailer, and the file end. */
+
+private void writeXRefStream() throws IOException
+{
+	int		xrefNo	= reserveObjNo();
+	long	xrefPos	= position;
+	offsets.set(xrefNo, xrefPos);
+	// each entry: type (1 byte), offset or object stream no., generation or index (2 bytes)
+	int		width	= xrefPos > 0xFFFFFFFFL ? 8 : 4;
+	int		size	= offsets.size();
+	byte[]	entries	= new byte[size * (width + 3)];
+	int		pos		= 0;
+	for (int objNo = 0; objNo < size; objNo++)
+	{
+		long	offset	= offsets.get(objNo);
+		int		stmNo	= objStmNos.get(objNo);
+		int		type	= stmNo > 0 ? 2 : (offset < 0 || objNo == 0 ? 0 : 1);
+		long	field2	= type == 2 ? stmNo : (type == 1 ? offset : 0);
+		int		field3	= type == 2 ? (int)offset : (objNo == 0 ? 0xFFFF : (type == 0 ? 1 : 0));
+		entries[pos++]	= (byte)type;
+		for (int i = width - 1; i >= 0; i--)
+			entries[pos++]	= (byte)(field2 >> (i * 8));
+		entries[pos++]	= (byte)(field3 >> 8);
+		entries[pos++]	= (byte)field3;
+	}
+	beginObject(xrefNo, false);
+	writeDeflatedStream("/Type/XRef/Size " + size + "/W[1 " + width + " 2]/Root " + CATALOG_OBJ_NO
+			+ " 0 R", entries);
+	endObject();
+	write("startxref\n" + xrefPos + "\n%%EOF\n");
+}
+
+/* Writes a Flate-compressed stream, with the given dictionary entries in addition to the filter
+and the length ones. */
+
+private void writeDeflatedStream(String entries, byte[] bytes) throws IOException
+{
+	ByteArrayOutputStream	deflated	= new ByteArrayOutputStream(bytes.length / 4 + 64);
+	DeflaterOutputStream	deflater	= new DeflaterOutputStream(deflated);
+	deflater.write(bytes);
+	deflater.close();
+	write("<<" + entries + "/Filter/FlateDecode/Length " + deflated.size() + ">>\nstream\n");
+	write(deflated.toByteArray());
+	write("\nendstream");
+}
+
+/* Writes an object; if not direct, shared objects and streams are written as references. */
+
+private void writeValue(COSObject obj, boolean direct) throws IOException
+{
+	if (!direct && (obj instanceof COSStream || obj.isIndirect() || objNums.containsKey(obj)
+			|| writing.containsKey(obj)))
+	{
+		write(" " + reference(obj) + " 0 R");
+		return;
+	}
+	if (obj instanceof COSName)
+		writeName((COSName)obj);
+	else if (obj instanceof COSInteger)
+		write(" " + ((COSInteger)obj).intValue());
+	else if (obj instanceof COSNumber)
+		write(" " + formatNumber(((COSNumber)obj).floatValue()));
+	else if (obj instanceof COSBoolean)
+		write(((COSBoolean)obj).booleanValue() ? " true" : " false");
+	else if (obj instanceof COSString)
+		writeString(((COSString)obj).byteValue());
+	else if (obj instanceof COSArray)
+	{
+		writing.put(obj, Boolean.TRUE);
+		write("[");
+		for (COSObject item : (COSArray)obj)
+			writeValue(item, false);
+		write("]");
+		writing.remove(obj);
+	}
+	else if (obj instanceof COSStream)
+	{
+		COSStream	stream	= (COSStream)obj;
+		byte[]		bytes	= stream.getEncodedBytes();
+		write("<<");
+		writeEntries(stream.getDict(), CN_Length);
+		write("/Length " + bytes.length + ">>\nstream\n");
+		write(bytes);
+		write("\nendstream");
+	}
+	else if (obj instanceof COSDictionary)
+	{
+		writing.put(obj, Boolean.TRUE);
+		write("<<");
+		writeEntries((COSDictionary)obj, null);
+		write(">>");
+		writing.remove(obj);
+	}
+	else
+		write(" null");
+}
+
+/* Writes the entries of a dictionary, except the entry with the skip key, if any. */
+
+private void writeEntries(COSDictionary dict, COSName skip) throws IOException
+{
+	@SuppressWarnings("unchecked")
+	Iterator<COSDictionary.Entry>	iter	= dict.entryIterator();
+	while (iter.hasNext())
+	{
+		COSDictionary.Entry	entry	= iter.next();
+		COSName				key		= (COSName)entry.getKey();
+		if (skip != null && key.equals(skip))
+			continue;
+		writeName(key);
+		writeValue((COSObject)entry.getValue(), false);
+	}
+}
+
+private void writeName(COSName name) throws IOException
+{
+	StringBuilder	str		= new StringBuilder("/");
+	for (byte b : name.byteValue())
+	{
+		int		c	= b & 0xFF;
+		if (c < 0x21 || c > 0x7E || DELIMITERS.indexOf(c) >= 0)
+			str.append('#').append(HEX_DIGITS[c >> 4]).append(HEX_DIGITS[c & 0x0F]);
+		else
+			str.append((char)c);
+	}
+	write(str.toString());
+}
+
+private void writeString(byte[] bytes) throws IOException
+{
+	StringBuilder	str		= new StringBuilder(bytes.length * 2 + 2);
+	str.append('<');
+	for (byte b : bytes)
+		str.append(HEX_DIGITS[(b >> 4) & 0x0F]).append(HEX_DIGITS[b & 0x0F]);
+	str.append('>');
+	write(str.toString());
+}
+
+private static String formatNumber(float value)
+{
+	if (value == (long)value)
+		return Long.toString((long)value);
+	String	str		= String.format(Locale.ROOT, "%.5f", value);
+	int		end		= str.length();
+	while (str.charAt(end-1) == '0')
+		end--;
+	return str.substring(0, end);
+}
+
+/******************
+	Low level output
+*******************/
+
+private void write(String str) throws IOException
+{
+	write(str.getBytes(StandardCharsets.ISO_8859_1));
+}
+
+private void write(byte[] bytes) throws IOException
+{
+	if (toObjStm)
+	{
+		objStmData.write(bytes);
+		return;
+	}
+	out.write(bytes);
+	position += bytes.length;
+}
+
+}
@@ -21,7 +21,16 @@
 
 package com.vistamaresoft.jpdfi;
 
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
 import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.BitSet;
+import java.util.HashMap;
+import java.util.IdentityHashMap;
 import java.util.TreeSet;
 
 /******************
@@ -36,6 +45,9 @@ public static final int		DEFAULT_SHEETS_PER_SIGN	= 5;
 public static final double	MM2PDF					= 72 / 25.4;	// to convert mm to PDF default units (1/72 inch)
 public static final int		OUT_OF_SEQUENCE_PAGE	= -1;
 public static final int		NO_PAGE					= -2;
+// the version of the planning code: to be increased whenever a change in it changes the plans it
+// computes, so that the plans cached by a previous version are discarded
+public static final int		PLAN_VERSION			= 1;
 
 public enum Format
 {
@@ -74,6 +86,202 @@ private class JPDIPageImpoData implements Cloneable
 	}
 }
 
+/******************
+	CLASS JPDISlotIndex
+*******************
+
+While a booklet signature is being built, indexes its pages by destination slot (dest. page and
+column), to find which pages already take a slot without scanning the whole signature. Each slot
+has a list of the signature pages in it, in page order: the first page is the one taking the slot,
+any other is only there temporarily, while the fold-out logic moves pages around. */
+
+private class JPDISlotIndex
+{
+	private int[]	first	= new int[64];		// by slot, the first page in it; -1 = none
+	private int[]	next	= new int[64];		// by page, the next page in the same slot; -1 = none
+
+	void clear()
+	{
+		Arrays.fill(first, -1);
+	}
+
+	/* Returns the first page placed in a slot | -1 = none. */
+
+	int firstPage(int destPage, int col)
+	{
+		int	slot	= destPage * 2 + col;
+		return slot < first.length ? first[slot] : -1;
+	}
+
+	/* Adds / removes a page to / from a slot; pages out of sequence are not indexed. */
+
+	void add(int pageNo, JPDIPageImpoData pid)
+	{
+		if (pid.destPage < 0)
+			return;
+		int	slot	= pid.destPage * 2 + pid.col;
+		if (slot >= first.length)
+		{
+			int	oldLength	= first.length;
+			first	= Arrays.copyOf(first, Math.max(slot + 1, oldLength * 2));
+			Arrays.fill(first, oldLength, first.length, -1);
+		}
+		if (pageNo >= next.length)
+			next	= Arrays.copyOf(next, Math.max(pageNo + 1, next.length * 2));
+		// keep the list in page order
+		int	prev	= -1;
+		int	curr	= first[slot];
+		while (curr != -1 && curr < pageNo)
+		{
+			prev	= curr;
+			curr	= next[curr];
+		}
+		next[pageNo]	= curr;
+		if (prev == -1)
+			first[slot]	= pageNo;
+		else
+			next[prev]	= pageNo;
+	}
+
+	void remove(int pageNo, JPDIPageImpoData pid)
+	{
+		if (pid.destPage < 0)
+			return;
+		int	slot	= pid.destPage * 2 + pid.col;
+		int	prev	= -1;
+		int	curr	= first[slot];
+		while (curr != -1 && curr != pageNo)
+		{
+			prev	= curr;
+			curr	= next[curr];
+		}
+		if (curr == -1)
+			return;
+		if (prev == -1)
+			first[slot]	= next[curr];
+		else
+			next[prev]	= next[curr];
+	}
+}
+
+/******************
+	CLASS JPDISignPlan
+*******************
+
+The compiled plan of a signature: for each source page, where and how to place it, in flat arrays.
+A plan is immutable once built and can be shared by all the signatures with the same shape; for
+this reason, glue-to pages are relative to the first page of the signature. */
+
+public static final class JPDISignPlan
+{
+	final int		numOfSrcPages;
+	final int		numOfDestPages;
+	final int[]		destPage;		// as in JPDIPageImpoData
+	final int[]		row;
+	final int[]		col;
+	final int[]		rotation;
+	final int[]		glueTo;			// relative to the signature first page; NO_PAGE = no glue to
+	final double[]	xOffset;
+	final double[]	yOffset;
+	final double[]	matrix;			// 6 values x page: the rotation (4) and the offset in cells (2)
+	private final int	hash;
+
+	// the plan as read back from its binary form (see writePlan())
+	private JPDISignPlan(int numOfDestPages, int[] destPage, int[] row, int[] col, int[] rotation,
+			int[] glueTo, double[] xOffset, double[] yOffset)
+	{
+		int	numOfSrcPages		= destPage.length;
+		this.numOfSrcPages		= numOfSrcPages;
+		this.numOfDestPages		= numOfDestPages;
+		this.destPage	= destPage;
+		this.row		= row;
+		this.col		= col;
+		this.rotation	= rotation;
+		this.glueTo		= glueTo;
+		this.xOffset	= xOffset;
+		this.yOffset	= yOffset;
+		matrix			= new double[numOfSrcPages * 6];
+		for (int i = 0; i < numOfSrcPages; i++)
+			setMatrix(matrix, i, rotation[i], col[i], row[i]);
+		hash			= hash(numOfDestPages, destPage, col, row, glueTo, xOffset);
+	}
+
+	private JPDISignPlan(ArrayList<JPDIPageImpoData> signImpoData, int firstPage, int numOfDestPages)
+	{
+		int	numOfSrcPages		= signImpoData.size();
+		this.numOfSrcPages		= numOfSrcPages;
+		this.numOfDestPages		= numOfDestPages;
+		destPage	= new int[numOfSrcPages];
+		row			= new int[numOfSrcPages];
+		col			= new int[numOfSrcPages];
+		rotation	= new int[numOfSrcPages];
+		glueTo		= new int[numOfSrcPages];
+		xOffset		= new double[numOfSrcPages];
+		yOffset		= new double[numOfSrcPages];
+		matrix		= new double[numOfSrcPages * 6];
+		for (int i = 0; i < numOfSrcPages; i++)
+		{
+			JPDIPageImpoData	pid	= signImpoData.get(i);
+			destPage[i]	= pid.destPage;
+			row[i]		= pid.row;
+			col[i]		= pid.col;
+			rotation[i]	= pid.rotation;
+			glueTo[i]	= pid.glueTo == NO_PAGE ? NO_PAGE : pid.glueTo - firstPage;
+			xOffset[i]	= pid.xOffset;
+			yOffset[i]	= pid.yOffset;
+			setMatrix(matrix, i, pid.rotation, pid.col, pid.row);
+		}
+		hash		= hash(numOfDestPages, destPage, col, row, glueTo, xOffset);
+	}
+
+	private static void setMatrix(double[] matrix, int i, int rotation, int col, int row)
+	{
+		// if page is upside down, add an extra col and row of offset,
+		// to compensate the rotation around the bottom left corner
+		double	rot	= rotation * Math.PI / 180.0;
+		matrix[i*6]		= Math.cos(rot);
+		matrix[i*6+1]	= Math.sin(rot);
+		matrix[i*6+2]	= -Math.sin(rot);
+		matrix[i*6+3]	= Math.cos(rot);
+		matrix[i*6+4]	= col + (rotation > 0 ? 1 : 0);
+		matrix[i*6+5]	= row + (rotation > 0 ? 1 : 0);
+	}
+
+	private static int hash(int numOfDestPages, int[] destPage, int[] col, int[] row, int[] glueTo,
+			double[] xOffset)
+	{
+		int	h	= numOfDestPages;
+		h	= 31 * h + Arrays.hashCode(destPage);
+		h	= 31 * h + Arrays.hashCode(col);
+		h	= 31 * h + Arrays.hashCode(row);
+		h	= 31 * h + Arrays.hashCode(glueTo);
+		h	= 31 * h + Arrays.hashCode(xOffset);
+		return h;
+	}
+
+	public int	numOfSrcPages()						{ return numOfSrcPages;		}
+	public int	numOfDestPages()					{ return numOfDestPages;	}
+	public int	destPage(int srcPageNo)				{ return destPage[srcPageNo];	}
+
+	@Override
+	public int hashCode()							{ return hash;				}
+
+	@Override
+	public boolean equals(Object obj)
+	{
+		if (this == obj)
+			return true;
+		if (!(obj instanceof JPDISignPlan))
+			return false;
+		JPDISignPlan	other	= (JPDISignPlan)obj;
+		return hash == other.hash && numOfDestPages == other.numOfDestPages
+				&& Arrays.equals(destPage, other.destPage) && Arrays.equals(row, other.row)
+				&& Arrays.equals(col, other.col) && Arrays.equals(rotation, other.rotation)
+				&& Arrays.equals(glueTo, other.glueTo) && Arrays.equals(xOffset, other.xOffset)
+				&& Arrays.equals(yOffset, other.yOffset);
+	}
+}
+
 // pre-built arrays defining the destination row and column for each of the source pages
 // making up a signature in non-booklet formats (data for booklets are easier to compute)
 private static final int[][] prebuiltRowData =
@@ -100,9 +308,20 @@ private static final int[][] prebuiltColData =
 private Format	format				= Format.booklet;
 private int		formatSubParam		= 0;
 private int		maxSheetsPerSign	= DEFAULT_SHEETS_PER_SIGN;	// max num. of sheets per signature
-// for each source page of each signature, define where and how to place it into the destination
-private ArrayList<ArrayList<JPDIPageImpoData>>	pageImpoData;
+private int		numOfCols			= 2;
+private int		numOfRows			= 1;
+// for each signature, the plan defining where and how to place each source page into the destination
+// (signatures with the same shape share the same plan) and the first document page of the signature
+private JPDISignPlan[]	signPlans	= new JPDISignPlan[0];
+private int[]			signFirstPage	= new int[0];
+// plans being built by setFormat()
+private ArrayList<JPDISignPlan>	newPlans;
+private ArrayList<Integer>		newFirstPages;
+private HashMap<JPDISignPlan, JPDISignPlan>	planTemplates;
+private BitSet			foldOuts;			// the fold-out pages
+private JPDISlotIndex	slotIndex;			// the slots taken in the booklet signature being built
 private ArrayList<Integer>	sheetsPerSign;		// how many sheets each signature has
+private JPDIPlanCache	planCache;			// where to look for plans already computed; null = none
 
 /******************
 	Default C'tor
@@ -117,7 +336,11 @@ public JPDImposition()
 *******************/
 
 public Format	format()			{ return format;	}
-public int 		numOfCols()
+public int 		numOfCols()			{ return numOfCols;	}
+public int		numOfRows()			{ return numOfRows;	}
+public int		numOfSignatures()	{ return signPlans.length;	}
+
+private static int numOfCols(Format format)
 {
 	switch (format)
 	{
@@ -132,7 +355,7 @@ public int 		numOfCols()
 		return 2;
 	}
 }
-public int numOfRows()
+private static int numOfRows(Format format)
 {
 	switch (format)
 	{
@@ -149,6 +372,7 @@ public int numOfRows()
 	}
 }
 public int maxSheetsPerSignature()				{ return maxSheetsPerSign;	}
+public void setPlanCache(JPDIPlanCache planCache)	{ this.planCache = planCache;	}
 
 public void setFormat(Format format, int formatSubParam, int maxSheetsPerSign,
 		int numOfPages, TreeSet<Integer>signBreakList, TreeSet<Integer>foldOutList)
@@ -157,8 +381,17 @@ public void setFormat(Format format, int formatSubParam, int maxSheetsPerSign,
 	this.format				= format;
 	this.formatSubParam		= formatSubParam;
 	this.maxSheetsPerSign	= maxSheetsPerSign;
-	pageImpoData			= new ArrayList<ArrayList<JPDIPageImpoData>>();
+	numOfCols				= numOfCols(format);
+	numOfRows				= numOfRows(format);
+	newPlans				= new ArrayList<JPDISignPlan>();
+	newFirstPages			= new ArrayList<Integer>();
+	planTemplates			= new HashMap<JPDISignPlan, JPDISignPlan>();
 	sheetsPerSign			= new ArrayList<Integer>();
+	foldOuts				= new BitSet(numOfPages);
+	for (Integer foldOut : foldOutList)
+		if (foldOut >= 0)
+			foldOuts.set(foldOut);
+	slotIndex				= new JPDISlotIndex();
 	if (format != Format.booklet)
 		maxSheetsPerSign = 1;
 	if (maxSheetsPerSign < 1)
@@ -166,29 +399,165 @@ public void setFormat(Format format, int formatSubParam, int maxSheetsPerSign,
 	// make sure there is a signature break after the last page
 	if (signBreakList.size() == 0 || !signBreakList.contains(numOfPages))
 		signBreakList.add(numOfPages);
-	// iterate on signature breaks, creating a sequence of impositions
-	int currSignNo	= 0;
-	int	fromPage 	= 0;
-	for (Integer toPage : signBreakList)
+	// the same parameters always give the same plan: look for it in the cache, if any
+	String	planKey	= planCache != null ? JPDIPlanCache.planKey(format, formatSubParam, maxSheetsPerSign,
+			numOfPages, signBreakList, foldOuts) : null;
+	if (planKey == null || !readPlan(planCache.get(planKey)))
 	{
-		currSignNo = applyFormat(currSignNo, fromPage, toPage, foldOutList);
-		fromPage = toPage;
+		// iterate on signature breaks, creating a sequence of impositions
+		int currSignNo	= 0;
+		int	fromPage 	= 0;
+		for (Integer toPage : signBreakList)
+		{
+			currSignNo = applyFormat(currSignNo, fromPage, toPage);
+			fromPage = toPage;
+		}
+		// compile the plan: from now on, it is only read and can be shared among threads
+		JPDISignPlan[]	plans		= newPlans.toArray(new JPDISignPlan[newPlans.size()]);
+		int[]			firstPages	= new int[plans.length];
+		for (int i = 0; i < plans.length; i++)
+			firstPages[i]	= newFirstPages.get(i);
+		signPlans				= plans;
+		signFirstPage			= firstPages;
+		if (planKey != null)
+			planCache.put(planKey, writePlan());
+	}
+	newPlans				= null;
+	newFirstPages			= null;
+	planTemplates			= null;
+	sheetsPerSign			= null;
+	foldOuts				= null;
+	slotIndex				= null;
+}
+
+/******************
+	Binary form of the plan
+*******************
+
+writePlan() returns the compiled plan in a compact binary form: each distinct signature plan once,
+then the plan and the first page of each signature; readPlan() sets the compiled plan from its
+binary form, leaving it unchanged if the data are missing or malformed.
+
+Parameters:	data:	the binary form (readPlan() only); may be null
+Returns:	the binary form (writePlan()) | true = plan set, false = no valid data (readPlan()) */
+
+private byte[] writePlan()
+{
+	IdentityHashMap<JPDISignPlan, Integer>	planIdx	= new IdentityHashMap<JPDISignPlan, Integer>();
+	ArrayList<JPDISignPlan>					plans	= new ArrayList<JPDISignPlan>();
+	for (JPDISignPlan plan : signPlans)
+		if (!planIdx.containsKey(plan))
+		{
+			planIdx.put(plan, plans.size());
+			plans.add(plan);
+		}
+	ByteArrayOutputStream	bytes	= new ByteArrayOutputStream();
+	DataOutputStream		out		= new DataOutputStream(bytes);
+	try {
+		out.writeInt(plans.size());
+		for (JPDISignPlan plan : plans)
+		{
+			out.writeInt(plan.numOfSrcPages);
+			out.writeInt(plan.numOfDestPages);
+			for (int i = 0; i < plan.numOfSrcPages; i++)
+			{
+				out.writeInt(plan.destPage[i]);
+				out.writeInt(plan.row[i]);
+				out.writeInt(plan.col[i]);
+				out.writeShort(plan.rotation[i]);
+				out.writeInt(plan.glueTo[i]);
+				out.writeDouble(plan.xOffset[i]);
+				out.writeDouble(plan.yOffset[i]);
+			}
+		}
+		out.writeInt(signPlans.length);
+		for (int i = 0; i < signPlans.length; i++)
+		{
+			out.writeInt(planIdx.get(signPlans[i]));
+			out.writeInt(signFirstPage[i]);
+		}
+		out.close();
+	}
+	catch (IOException e) {				// cannot happen with an in-memory stream
+		throw new IllegalStateException(e);
+	}
+	return bytes.toByteArray();
+}
+
+private boolean readPlan(byte[] data)
+{
+	if (data == null)
+		return false;
+	DataInputStream	in	= new DataInputStream(new ByteArrayInputStream(data));
+	try {
+		int				numOfPlans	= in.readInt();
+		if (numOfPlans < 0 || numOfPlans > data.length)
+			return false;
+		JPDISignPlan[]	plans		= new JPDISignPlan[numOfPlans];
+		for (int p = 0; p < numOfPlans; p++)
+		{
+			int			numOfSrcPages	= in.readInt();
+			int			numOfDestPages	= in.readInt();
+			if (numOfSrcPages < 0 || numOfSrcPages > data.length || numOfDestPages < 0)
+				return false;
+			int[]		destPage	= new int[numOfSrcPages];
+			int[]		row			= new int[numOfSrcPages];
+			int[]		col			= new int[numOfSrcPages];
+			int[]		rotation	= new int[numOfSrcPages];
+			int[]		glueTo		= new int[numOfSrcPages];
+			double[]	xOffset		= new double[numOfSrcPages];
+			double[]	yOffset		= new double[numOfSrcPages];
+			for (int i = 0; i < numOfSrcPages; i++)
+			{
+				destPage[i]	= in.readInt();
+				row[i]		= in.readInt();
+				col[i]		= in.readInt();
+				rotation[i]	= in.readShort();
+				glueTo[i]	= in.readInt();
+				xOffset[i]	= in.readDouble();
+				yOffset[i]	= in.readDouble();
+			}
+			plans[p]	= new JPDISignPlan(numOfDestPages, destPage, row, col, rotation, glueTo,
+					xOffset, yOffset);
+		}
+		int				numOfSigns	= in.readInt();
+		if (numOfSigns < 0 || numOfSigns > data.length)
+			return false;
+		JPDISignPlan[]	newSignPlans	= new JPDISignPlan[numOfSigns];
+		int[]			firstPages		= new int[numOfSigns];
+		for (int i = 0; i < numOfSigns; i++)
+		{
+			int	idx			= in.readInt();
+			if (idx < 0 || idx >= numOfPlans)
+				return false;
+			newSignPlans[i]	= plans[idx];
+			firstPages[i]	= in.readInt();
+		}
+		if (in.available() > 0)
+			return false;
+		signPlans		= newSignPlans;
+		signFirstPage	= firstPages;
+		return true;
+	}
+	catch (IOException e) {				// truncated data
+		return false;
 	}
 }
 
-private int applyFormat(int currSignNo, int fromPage, int toPage, TreeSet<Integer>foldOutList)
+private int applyFormat(int currSignNo, int fromPage, int toPage)
 		throws CloneNotSupportedException
 {
 	int		docPageNo	= fromPage;				// the current document page no. (0-based)
-	formatSetup(fromPage, toPage, foldOutList);
+	formatSetup(fromPage, toPage);
 
-	// initialize pageImpoData for each page of each signature according to format
+	// initialize the impo data for each page of each signature according to format
 	while (docPageNo < toPage)
 	{
 		int maxDestPage		= 0;
-		int	numOfSrcPages	= sheetsPerSign.get(currSignNo) * numOfCols()* numOfRows() * 2;
+		int	numOfSrcPages	= sheetsPerSign.get(currSignNo) * numOfCols * numOfRows * 2;
+		int	firstPage		= docPageNo;
 		ArrayList<JPDIPageImpoData>	signImpoData = new ArrayList<JPDIPageImpoData>(numOfSrcPages);
-		pageImpoData.add(signImpoData);
+		slotIndex.clear();
 		for (int currPageNo = 0; docPageNo < toPage && currPageNo < numOfSrcPages; currPageNo++)
 		{
 			JPDIPageImpoData	pid	= new JPDIPageImpoData();
@@ -197,7 +566,7 @@ private int applyFormat(int currSignNo, int fromPage, int toPage, TreeSet<Intege
 			signImpoData.add(pid);
 
 			// BOOKLET FOLD-OUT SPECIAL CASE
-			if (format == Format.booklet && foldOutList.contains(docPageNo))
+			if (format == Format.booklet && foldOuts.get(docPageNo))
 			{
 				// we deal here with 4 different pages:
 				// 1st: the front page of the leaf the fold-out is attached to ('base leaf', previous page, pid1)
@@ -217,6 +586,7 @@ private int applyFormat(int currSignNo, int fromPage, int toPage, TreeSet<Intege
 					pid1.col		= 0;				// first column
 					pid1.destPage	= (++maxDestPage);	// of a new page
 					pid1.row		= 0;				// booklet only has 1 row
+					slotIndex.add(currArrSize-2, pid1);
 					hasSingleOpposite	= false;		// opposite is not a single page
 					// 2nd page is second of the new dest. page
 					pid.col			= 1;
@@ -230,7 +600,9 @@ private int applyFormat(int currSignNo, int fromPage, int toPage, TreeSet<Intege
 					pid.destPage	= pid1.destPage;
 					pid.rotation	= pid1.rotation;
 					pid.row			= pid1.row;
+					slotIndex.remove(currArrSize-2, pid1);
 					pid1.col		= 1 - pid.col;		// move 1st page in the 'other' column
+					slotIndex.add(currArrSize-2, pid1);
 				}
 				pid1.xOffset	= FOLDOUT_XOFFSET;		// shift 1st page slightly to the right
 				// 'next page' is +1 while 'going up' the signature (front leaves) and 1st page is on even dest. page
@@ -241,19 +613,20 @@ private int applyFormat(int currSignNo, int fromPage, int toPage, TreeSet<Intege
 				// (unless we are dealing with a double fold-out)
 				if (nextPageOffset == -1 && hasSingleOpposite)
 				{
-					for (int i = 0; i < signImpoData.size()-2; i++)
+					int	i	= slotIndex.firstPage(pid1.destPage, pid1.col);
+					if (i != -1 && i < currArrSize-2)
 					{
 						JPDIPageImpoData oppPid = signImpoData.get(i);
-						if (oppPid.destPage == pid1.destPage && oppPid.col == pid1.col)
-						{
-							oppPid.destPage					= OUT_OF_SEQUENCE_PAGE;
-//							oppPid.row						= docPageNo - 1;		// glue to pid1
-							oppPid.glueTo					= docPageNo - 1;		// glue to pid1
-							signImpoData.get(i-1).destPage	= OUT_OF_SEQUENCE_PAGE;
-							break;
-						}
+						JPDIPageImpoData prevPid = signImpoData.get(i-1);
+						slotIndex.remove(i, oppPid);
+						slotIndex.remove(i-1, prevPid);
+						oppPid.destPage					= OUT_OF_SEQUENCE_PAGE;
+//						oppPid.row						= docPageNo - 1;		// glue to pid1
+						oppPid.glueTo					= docPageNo - 1;		// glue to pid1
+						prevPid.destPage				= OUT_OF_SEQUENCE_PAGE;
 					}
 				}
+				slotIndex.add(currArrSize-1, pid);
 //				currPageNo++;		// NO: fold-out pages do not count for imposition
 				docPageNo++;
 				if (pid.destPage > maxDestPage)
@@ -267,6 +640,7 @@ private int applyFormat(int currSignNo, int fromPage, int toPage, TreeSet<Intege
 					pid3.destPage	= pid1.destPage + nextPageOffset;
 					// and on the other side of 2nd page: set symmetrical x offset
 					pid3.xOffset	= -pid.xOffset;
+					slotIndex.add(currArrSize, pid3);
 //					currPageNo++;		// NO: fold-out pages do not count for imposition
 					docPageNo++;
 					if (pid3.destPage > maxDestPage)
@@ -280,6 +654,7 @@ private int applyFormat(int currSignNo, int fromPage, int toPage, TreeSet<Intege
 						pid4.destPage	= pid.destPage + nextPageOffset;
 						// and on the other side of 1st page: set symmetrical x offset
 						pid4.xOffset	= -pid1.xOffset;
+						slotIndex.add(currArrSize+1, pid4);
 						docPageNo++;
 					}
 				}
@@ -313,18 +688,19 @@ private int applyFormat(int currSignNo, int fromPage, int toPage, TreeSet<Intege
 			// BOOKLET FOLD-OUT SPECIAL CASE:
 			// is this a page of the leaf to be glued to a fold-out?
 			if (format == Format.booklet)
+			{
 				// if the place of this page is already taken by a previous page
 				// this is the page opposite to a fold-out: mark as out-of-sequence
-				for (int i = 0; i <= signImpoData.size()-2; i++)
-					if (signImpoData.get(i).destPage == pid.destPage
-							&& signImpoData.get(i).col == pid.col)
-					{
-						// if this is the back page (destination page is odd), note page to glue to
-						if ((pid.destPage & 1) == 1)
-							pid.glueTo	= docPageNo - signImpoData.size() + i + 1;
-						pid.destPage	= OUT_OF_SEQUENCE_PAGE;
-						break;
-					}
+				int	i	= slotIndex.firstPage(pid.destPage, pid.col);
+				if (i != -1)
+				{
+					// if this is the back page (destination page is odd), note page to glue to
+					if ((pid.destPage & 1) == 1)
+						pid.glueTo	= docPageNo - signImpoData.size() + i + 1;
+					pid.destPage	= OUT_OF_SEQUENCE_PAGE;
+				}
+				slotIndex.add(signImpoData.size()-1, pid);
+			}
 
 			if (pid.destPage > maxDestPage)
 				maxDestPage = pid.destPage;
@@ -332,6 +708,14 @@ private int applyFormat(int currSignNo, int fromPage, int toPage, TreeSet<Intege
 		}
 		// set actual number of signature sheets
 		sheetsPerSign.set(currSignNo, ((maxDestPage + 2) & 0xFFFE) / 2 );
+		// compile the signature data, re-using an identical plan, if any
+		JPDISignPlan	plan		= new JPDISignPlan(signImpoData, firstPage,
+				sheetsPerSign.get(currSignNo) * 2);
+		JPDISignPlan	template	= planTemplates.get(plan);
+		if (template == null)
+			planTemplates.put(plan, template = plan);
+		newPlans.add(template);
+		newFirstPages.add(firstPage);
 		currSignNo++;
 	}
 	return currSignNo;
@@ -343,20 +727,15 @@ private int applyFormat(int currSignNo, int fromPage, int toPage, TreeSet<Intege
 
 Sets arrays up for application of imposition. */
 
-private void formatSetup(int fromPage, int toPage, TreeSet<Integer>foldOutList)
+private void formatSetup(int fromPage, int toPage)
 {
-	int		numOfCols, numOfRows;
-
-	// set number of rows and columns according to format
-	numOfCols = numOfCols();
-	numOfRows = numOfRows();
 	// compute some helper values
 	int	pagesPerSheet	= numOfCols * numOfRows * 2;
 	int	numOfSheetPages	= toPage - fromPage;
 	// if booklet, exclude fold-out pages from pages usable for sheets
 	if (format == Format.booklet)
-		for (Integer foldOut : foldOutList)
-			if (foldOut >= fromPage && foldOut < toPage)
+		for (int foldOut = foldOuts.nextSetBit(fromPage);
+				foldOut >= 0 && foldOut < toPage; foldOut = foldOuts.nextSetBit(foldOut + 1))
 			{
 				if (foldOut < toPage-1)		// if fold-out is not the last page
 					numOfSheetPages -= 2;	//	it takes 2 pages away from reckon
@@ -382,16 +761,16 @@ private void formatSetup(int fromPage, int toPage, TreeSet<Integer>foldOutList)
 
 public int	numOfSourcePagesPerSignature(int signNo)
 {
-	if (signNo < 0 || signNo > pageImpoData.size() - 1)
+	if (signNo < 0 || signNo > signPlans.length - 1)
 		return 0;
-	return pageImpoData.get(signNo).size();
+	return signPlans[signNo].numOfSrcPages;
 }
 
 public int numOfDestPagesPerSignature(int signNo)
 {
-	if (signNo < 0 || signNo > sheetsPerSign.size() - 1)
+	if (signNo < 0 || signNo > signPlans.length - 1)
 		return 0;
-	return sheetsPerSign.get(signNo) * 2;
+	return signPlans[signNo].numOfDestPages;
 }
 
 /******************
@@ -400,49 +779,83 @@ public int numOfDestPagesPerSignature(int signNo)
 
 public int pageDestPage(int srcPageNo, int signNo)
 {
-	if (srcPageNo < 0 || srcPageNo > pageImpoData.get(signNo).size()-1)
+	JPDISignPlan	plan	= signPlans[signNo];
+	if (srcPageNo < 0 || srcPageNo > plan.numOfSrcPages-1)
 		return NO_PAGE;
-	return pageImpoData.get(signNo).get(srcPageNo).destPage;
+	return plan.destPage[srcPageNo];
 }
 public int pageDestRow(int srcPageNo, int signNo)
 {
-	if (srcPageNo < 0 || srcPageNo > pageImpoData.get(signNo).size()-1)
+	JPDISignPlan	plan	= signPlans[signNo];
+	if (srcPageNo < 0 || srcPageNo > plan.numOfSrcPages-1)
 		srcPageNo = 0;
-	return pageImpoData.get(signNo).get(srcPageNo).row;
+	return plan.row[srcPageNo];
 }
 public int pageDestCol(int srcPageNo, int signNo)
 {
-	if (srcPageNo < 0 || srcPageNo > pageImpoData.get(signNo).size()-1)
+	JPDISignPlan	plan	= signPlans[signNo];
+	if (srcPageNo < 0 || srcPageNo > plan.numOfSrcPages-1)
 		srcPageNo = 0;
-	return pageImpoData.get(signNo).get(srcPageNo).col;
+	return plan.col[srcPageNo];
 }
 // Rotation: if page is upside down, add an extra col and row of offset,
 // to compensate the rotation around the bottom left corner
 public double pageDestOffsetX(int srcPageNo, int signNo, double srcPageWidth)
 {
-	if (srcPageNo < 0 || srcPageNo > pageImpoData.get(signNo).size()-1)
+	JPDISignPlan	plan	= signPlans[signNo];
+	if (srcPageNo < 0 || srcPageNo > plan.numOfSrcPages-1)
 		srcPageNo = 0;
-	JPDIPageImpoData pid = pageImpoData.get(signNo).get(srcPageNo);
-	return srcPageWidth * pid.col + (pid.rotation > 0 ? srcPageWidth : 0.0) + pid.xOffset;
+	return srcPageWidth * plan.matrix[srcPageNo*6+4] + plan.xOffset[srcPageNo];
 }
 public double pageDestOffsetY(int srcPageNo, int signNo, double srcPageHeight)
 {
-	if (srcPageNo < 0 || srcPageNo > pageImpoData.get(signNo).size()-1)
+	JPDISignPlan	plan	= signPlans[signNo];
+	if (srcPageNo < 0 || srcPageNo > plan.numOfSrcPages-1)
 		srcPageNo = 0;
-	JPDIPageImpoData pid = pageImpoData.get(signNo).get(srcPageNo);
-	return srcPageHeight * pid.row + (pid.rotation > 0 ? srcPageHeight : 0.0) + pid.yOffset;
+	return srcPageHeight * plan.matrix[srcPageNo*6+5] + plan.yOffset[srcPageNo];
 }
 public int pageDestRotation(int srcPageNo, int signNo)
 {
-	if (srcPageNo < 0 || srcPageNo > pageImpoData.get(signNo).size()-1)
+	JPDISignPlan	plan	= signPlans[signNo];
+	if (srcPageNo < 0 || srcPageNo > plan.numOfSrcPages-1)
 		srcPageNo = 0;
-	return pageImpoData.get(signNo).get(srcPageNo).rotation;
+	return plan.rotation[srcPageNo];
 }
 public int pageDestGlueTo(int srcPageNo, int signNo)
 {
-	if (srcPageNo < 0 || srcPageNo > pageImpoData.get(signNo).size()-1)
+	JPDISignPlan	plan	= signPlans[signNo];
+	if (srcPageNo < 0 || srcPageNo > plan.numOfSrcPages-1)
 		srcPageNo = 0;
-	return pageImpoData.get(signNo).get(srcPageNo).glueTo;
+	int	glueTo	= plan.glueTo[srcPageNo];
+	return glueTo == NO_PAGE ? NO_PAGE : glueTo + signFirstPage[signNo];
+}
+
+/******************
+	Bulk getters
+*******************/
+
+public JPDISignPlan signaturePlan(int signNo)		{ return signPlans[signNo];	}
+public int signatureFirstPage(int signNo)			{ return signFirstPage[signNo];	}
+
+/* Returns the placement of all the source pages of a signature, as 6 values for each page: the
+a, b, c, d, e, f values of the transformation matrix (as in the PDF 'cm' operator) placing the page
+in its destination cell, with cells of the given size.
+
+Parameters:	signNo:			the signature
+			srcPageWidth:	the width of a destination cell
+			srcPageHeight:	the height of a destination cell
+Returns:	the placements, in source page order */
+
+public double[] pagePlacements(int signNo, double srcPageWidth, double srcPageHeight)
+{
+	JPDISignPlan	plan		= signPlans[signNo];
+	double[]		placements	= plan.matrix.clone();
+	for (int i = 0; i < plan.numOfSrcPages; i++)
+	{
+		placements[i*6+4]	= srcPageWidth  * placements[i*6+4] + plan.xOffset[i];
+		placements[i*6+5]	= srcPageHeight * placements[i*6+5] + plan.yOffset[i];
+	}
+	return placements;
 }
 
 /******************
@@ -22,6 +22,10 @@
 package com.vistamaresoft.jpdfi;
 
 import com.vistamaresoft.jpdfi.JPDIDocument;
+import java.io.BufferedOutputStream;
+import java.io.FileNotFoundException;
+import java.io.FileOutputStream;
+import java.io.PrintStream;
 import java.util.HashMap;
 
 /******************
@@ -43,8 +47,18 @@ public class Main
 			System.err.println("Unknown option '" + wrongOption + ".\n");
 		if (!wrongOption.isEmpty() || !parsed)
 			usage();
-		
+
+		// batch mode: run all the jobs in the manifest and exit
+		if (options.get("b") != null)
+			System.exit(runBatch(options.get("b"), options.get("j")) ? 0 : 1);
+
 		JPDIDocument	outDoc	= new JPDIDocument();
+		JPDIReport		report	= null;
+		if (options.get("r") != null)
+		{
+			report	= new JPDIReport();
+			outDoc.setReport(report);
+		}
 		// set provided options into the document
 		if (options.get("i") != null)
 			outDoc.addSourceFileName(options.get("i"));
@@ -58,9 +72,75 @@ public class Main
 		if (options.get("l") != null)
 			if (!outDoc.readParamFile(options.get("l")))
 				System.exit(1);
+		// preflight: only write the plan
+		if (options.get("p") != null)
+			System.exit(preflight(outDoc, options.get("p")) ? 0 : 1);
 		System.out.println(outDoc.inputFileNames() + " => " + outDoc.outputFileName() + "\n");
-		if (outDoc.impose())
-			outDoc.save();
+		if (outDoc.impose() && outDoc.save() && outDoc.numOfDuplicates() > 0)
+			System.out.println("Shared " + outDoc.numOfDuplicates() + " duplicate objects, about "
+					+ (outDoc.dedupBytesSaved() >> 10) + " KB saved.");
+		if (report != null)
+			writeReport(report, options.get("r"));
+	}
+
+	/* Writes the plan of the imposition as JSON, to the standard output if fileName is "stdout", to the
+	fileName file otherwise. */
+
+	protected static boolean preflight(JPDIDocument doc, String fileName)
+	{
+		if (fileName.equals("stdout"))
+			return doc.preflight(System.out);
+		try {
+			PrintStream	out		= new PrintStream(new BufferedOutputStream(new FileOutputStream(fileName)));
+			boolean		result	= doc.preflight(out);
+			out.close();
+			return result;
+		} catch (FileNotFoundException e) {
+			System.err.println("Error writing the plan file '" + fileName + "': " + e.getMessage());
+			return false;
+		}
+	}
+
+	/* Writes the run report: as a summary to the standard error if fileName is "stderr", as JSON to
+	the fileName file otherwise. */
+
+	protected static void writeReport(JPDIReport report, String fileName)
+	{
+		if (fileName.equals("stderr"))
+		{
+			report.writeSummary(System.err);
+			return;
+		}
+		try {
+			PrintStream	out	= new PrintStream(fileName);
+			report.writeJson(out);
+			out.close();
+		} catch (FileNotFoundException e) {
+			System.err.println("Error writing the report file '" + fileName + "': " + e.getMessage());
+		}
+	}
+
+	/******************
+		Batch mode
+	*******************/
+
+	protected static boolean runBatch(String manifest, String numOfWorkersStr)
+	{
+		JPDIBatch	batch	= new JPDIBatch();
+		if (numOfWorkersStr != null)
+		{
+			try {
+				batch.setNumOfWorkers(Integer.parseInt(numOfWorkersStr));
+			} catch (NumberFormatException e) {
+				System.err.println("Wrong number of workers '" + numOfWorkersStr + "'.");
+				return false;
+			}
+		}
+		if (!batch.readManifest(manifest))
+			return false;
+		boolean	result	= batch.run();
+		batch.printSummary(System.out);
+		return result;
 	}
 
 	/******************
@@ -69,7 +149,7 @@ public class Main
 
 	protected static boolean parseCL(String[] args)
 	{
-		final String	acceptedOptions = "fhliosv";
+		final String	acceptedOptions = "bfhijloprsv";
 		boolean			isOption	= false;				// true when expecting a string for an option
 		char			lastOption	= '\0';
 		options = new HashMap<String, String>();
@@ -133,7 +213,11 @@ public class Main
 				"-s sheetsPerSignature\tthe max no. of sheets a signature may have\n" +
 				"-l filename\tan XML parameter file with additional parameters\n" +
 				"-i filename\tthe input PDF file name\n" +
-				"-o filename\tthe output PDF file name\n");
+				"-o filename\tthe output PDF file name\n" +
+				"-p filename\tonly write the imposition plan as JSON to filename (\"stdout\" = to the standard output)\n" +
+				"-r filename\twrite a performance report of the run as JSON to filename (\"stderr\" = a summary to the standard error)\n" +
+				"-b filename\ta manifest listing parameter files, one per line, to run as a batch\n" +
+				"-j workers\tthe no. of batch jobs to run at the same time (default: one per processor)\n");
 	}
 	/******************
 		Usage